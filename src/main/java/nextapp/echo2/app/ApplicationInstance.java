@@ -34,6 +34,7 @@ import java.beans.PropertyChangeSupport;
 import java.io.Serializable;
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -64,6 +65,12 @@ implements Serializable {
      */ 
     private static final ThreadLocal activeInstance = new ThreadLocal();
     
+    /**
+     * Maximum number of <code>ResolvedStyle</code>s cached per application,
+     * bounding the cache in applications which create many shared styles.
+     */
+    private static final int MAXIMUM_RESOLVED_STYLES = 256;
+    
     /**
      * Generates a system-level identifier (an identifier which is unique to all
      * <code>ApplicationInstance</code>s).
@@ -137,6 +144,14 @@ implements Serializable {
      */
     private HashMap taskQueueMap;
     
+    /**
+     * Count of tasks enqueued over the lifetime of the instance, used by
+     * <code>waitForQueuedTasks()</code> to detect tasks enqueued while
+     * <code>hasQueuedTasks()</code> is being evaluated.  Guarded by
+     * <code>taskQueueMap</code>.
+     */
+    private int enqueuedTaskCount;
+    
     /**
      * Fires property change events for the instance object.
      */
@@ -158,6 +173,21 @@ implements Serializable {
      * The <code>StyleSheet</code> used by the application.
      */
     private StyleSheet styleSheet;
+    
+    /**
+     * Cache of <code>ResolvedStyle</code>s, keyed by lists containing
+     * component class, style name, and shared style.
+     * This object is lazily instantiated, and is cleared when it exceeds
+     * <code>MAXIMUM_RESOLVED_STYLES</code> entries.
+     */
+    private transient Map resolvedStyleMap;
+    
+    /**
+     * Flag indicating whether <code>ResolvedStyle</code>s may be used, i.e.,
+     * that neither <code>getStyle()</code> nor <code>getStyleSheet()</code>
+     * is overridden.  Lazily determined, null if not yet determined.
+     */
+    private transient Boolean styleResolutionEnabled;
 
     /**
      * Collection of modal components, the last index representing the current
@@ -302,6 +332,8 @@ implements Serializable {
                 taskQueueMap.put(taskQueue, taskList);
             }
             taskList.add(task);
+            ++enqueuedTaskCount;
+            taskQueueMap.notifyAll();
         }
     }
     
@@ -436,6 +468,42 @@ implements Serializable {
         }
     }
     
+    /**
+     * Retrieves the <code>ResolvedStyle</code> for the specified component
+     * class, style name, and shared style, creating it if necessary.
+     * 
+     * @param componentClass the component <code>Class</code>
+     * @param styleName the component's specified style name
+     * @param sharedStyle the component's shared style
+     * @return the <code>ResolvedStyle</code>, or null if the application's
+     *         <code>StyleSheet</code> does not support style resolution, or
+     *         if <code>getStyle()</code> or <code>getStyleSheet()</code> is
+     *         overridden, in which case styles must be retrieved via
+     *         <code>getStyle()</code>
+     */
+    ResolvedStyle getResolvedStyle(Class componentClass, String styleName, Style sharedStyle) {
+        if (!isStyleResolutionEnabled()) {
+            return null;
+        }
+        StyleSheet styleSheet = getStyleSheet();
+        if (!ResolvedStyle.isSupported(styleSheet)) {
+            return null;
+        }
+        if (resolvedStyleMap == null) {
+            resolvedStyleMap = new HashMap();
+        }
+        Object key = Arrays.asList(new Object[]{componentClass, styleName, sharedStyle});
+        ResolvedStyle resolvedStyle = (ResolvedStyle) resolvedStyleMap.get(key);
+        if (resolvedStyle == null || !resolvedStyle.isValid(styleSheet)) {
+            if (resolvedStyleMap.size() >= MAXIMUM_RESOLVED_STYLES) {
+                resolvedStyleMap.clear();
+            }
+            resolvedStyle = new ResolvedStyle(styleSheet, componentClass, styleName, sharedStyle);
+            resolvedStyleMap.put(key, resolvedStyle);
+        }
+        return resolvedStyle;
+    }
+    
     /**
      * Returns the application-wide <code>StyleSheet</code>, if present.
      * 
@@ -493,6 +561,69 @@ implements Serializable {
         return false;
     }
     
+    /**
+     * Blocks the calling thread until a task is queued in any of the task
+     * queues associated with this <code>ApplicationInstance</code> or the
+     * specified timeout elapses.  Queued tasks are detected by invoking
+     * <code>hasQueuedTasks()</code>, which is evaluated without holding any 
+     * lock of this instance and is re-evaluated whenever a task is enqueued.
+     * <p>
+     * This method is not invoked by a user-interface thread, it is intended
+     * to be used by containers to hold a client's poll request open until 
+     * the server has changes to push to it.
+     * 
+     * @param timeout the maximum time to wait, in milliseconds
+     * @return true if any tasks are queued
+     * @throws InterruptedException if the calling thread is interrupted 
+     *         while waiting
+     */
+    public boolean waitForQueuedTasks(long timeout) 
+    throws InterruptedException {
+        long endTime = System.currentTimeMillis() + timeout;
+        while (true) {
+            int count;
+            synchronized (taskQueueMap) {
+                count = enqueuedTaskCount;
+            }
+            if (hasQueuedTasks()) {
+                return true;
+            }
+            long remaining = endTime - System.currentTimeMillis();
+            if (remaining <= 0) {
+                return false;
+            }
+            synchronized (taskQueueMap) {
+                if (count == enqueuedTaskCount) {
+                    taskQueueMap.wait(remaining);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Determines whether <code>ResolvedStyle</code>s may be used to resolve
+     * styles, i.e., whether neither <code>getStyle()</code> nor 
+     * <code>getStyleSheet()</code> is overridden by the application.
+     * 
+     * @return true if <code>ResolvedStyle</code>s may be used
+     */
+    private boolean isStyleResolutionEnabled() {
+        if (styleResolutionEnabled == null) {
+            try {
+                Class applicationClass = getClass();
+                boolean enabled = applicationClass.getMethod("getStyle", new Class[]{Class.class, String.class})
+                        .getDeclaringClass() == ApplicationInstance.class
+                        && applicationClass.getMethod("getStyleSheet", new Class[0])
+                        .getDeclaringClass() == ApplicationInstance.class;
+                styleResolutionEnabled = Boolean.valueOf(enabled);
+            } catch (NoSuchMethodException ex) {
+                // Should not occur.
+                throw new RuntimeException("Style accessor not found.", ex);
+            }
+        }
+        return styleResolutionEnabled.booleanValue();
+    }
+    
     /**
      * Determines if the given component is modal (i.e., that only components
      * below it in the hierarchy should be enabled).
@@ -771,6 +902,7 @@ implements Serializable {
      */
     public void setStyleSheet(StyleSheet styleSheet) {
         this.styleSheet = styleSheet;
+        resolvedStyleMap = null;
         updateManager.getServerUpdateManager().processFullRefresh();
     }
 
@@ -44,6 +44,14 @@ import java.io.ObjectOutputStream;
  * a <code>java.awt.Image</code>.
  * Note that the JVM running the Echo Application Container will require 
  * access to a graphics context for the Java AWT to function.
+ * <p>
+ * References to equal <code>java.awt.Image</code>s are equal, such that 
+ * the encoded form of an image used by multiple sessions may be shared.
+ * Changes made to an image after it has been rendered will thus not 
+ * necessarily be reflected on the client: a modified image should be
+ * rendered via a new <code>java.awt.Image</code>.  References created
+ * without an image (whose derived classes provide the image by overriding
+ * <code>getImage()</code>) are equal only to themselves.
  */
 public class AwtImageReference 
 implements ImageReference {
@@ -79,14 +87,14 @@ implements ImageReference {
      * @see java.lang.Object#equals(java.lang.Object)
      */
     public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
         if (!(o instanceof AwtImageReference)) {
             return false;
         }
         AwtImageReference that = (AwtImageReference) o;
-        if (!(this.image == that.image || (this.image != null && this.image.equals(that.image)))) {
-            return false;
-        }
-        return true;
+        return this.image != null && this.image.equals(that.image);
     }
 
     /**
@@ -138,6 +146,13 @@ implements ImageReference {
         }
     }
 
+    /**
+     * @see java.lang.Object#hashCode()
+     */
+    public int hashCode() {
+        return image == null ? System.identityHashCode(this) : image.hashCode();
+    }
+
     /**
      * @see java.io.Serializable
      */
@@ -254,6 +254,19 @@ implements RenderIdSupport, Serializable {
     /** Name of style to use from application style sheet */
     private String styleName;
     
+    /**
+     * Cached array of <strong>visible</strong> child <code>Component</code>s.
+     * This object is lazily instantiated, and is discarded when a child is 
+     * added, removed, or has its visibility state changed.
+     */
+    private transient Component[] visibleChildren;
+    
+    /** 
+     * Resolved shared/style sheet style, cached to accelerate 
+     * <code>getRenderProperty()</code>.
+     */
+    private transient ResolvedStyle resolvedStyle;
+    
     /**
      * Creates a new <code>Component</code>.
      */
@@ -314,6 +327,7 @@ implements RenderIdSupport, Serializable {
 
         // Connect child to parent.
         c.parent = this;
+        visibleChildren = null;
         if (n == -1) {
             children.add(c);
         } else {
@@ -879,6 +893,17 @@ implements RenderIdSupport, Serializable {
         if (propertyValue != null) {
             return propertyValue;
         }
+        if (applicationInstance != null) {
+            ResolvedStyle resolvedStyle = this.resolvedStyle;
+            if (resolvedStyle == null || !resolvedStyle.isValid(applicationInstance.getStyleSheet())) {
+                resolvedStyle = applicationInstance.getResolvedStyle(getClass(), styleName, sharedStyle);
+                this.resolvedStyle = resolvedStyle;
+            }
+            if (resolvedStyle != null) {
+                propertyValue = resolvedStyle.getProperty(propertyName);
+                return propertyValue == null ? defaultValue : propertyValue;
+            }
+        }
         if (sharedStyle != null) {
             propertyValue = sharedStyle.getProperty(propertyName);
             if (propertyValue != null) {
@@ -930,28 +955,21 @@ implements RenderIdSupport, Serializable {
     /**
      * Returns the <code>n</code>th immediate <strong>visible</strong> 
      * child <code>Component</code>.
+     * <p>
+     * Together with <code>getVisibleComponentCount()</code>, this method 
+     * may be used to iterate the visible children without allocating
+     * objects.
      *
      * @param n the index of the <code>Component</code> to retrieve
      * @return the <code>Component</code> at index <code>n</code>
      * @throws IndexOutOfBoundsException when the index is invalid
      */
     public final Component getVisibleComponent(int n) {
-        if (children == null) {
+        Component[] visibleChildren = getVisibleChildren();
+        if (n < 0 || n >= visibleChildren.length) {
             throw new IndexOutOfBoundsException(Integer.toString(n));
         }
-        int visibleComponentCount = 0;
-        Component component = null;
-        Iterator it = children.iterator();
-        while (visibleComponentCount <= n) {
-            if (!it.hasNext()) {
-              throw new IndexOutOfBoundsException(Integer.toString(n));
-            }
-            component = (Component) it.next();
-            if (component.isVisible()) {
-                ++visibleComponentCount;
-            }
-        }
-        return component;
+        return visibleChildren[n];
     }
 
     /**
@@ -962,19 +980,7 @@ implements RenderIdSupport, Serializable {
      *         <code>Component</code>s
      */
     public final int getVisibleComponentCount() {
-        if (children == null) {
-            return 0;
-        } else {
-            int visibleComponentCount = 0;
-            Iterator it = children.iterator();
-            while (it.hasNext()) {
-                Component component = (Component) it.next();
-                if (component.isVisible()) {
-                    ++visibleComponentCount;
-                }
-            }
-            return visibleComponentCount;
-        }
+        return getVisibleChildren().length;
     }
     
     /**
@@ -985,19 +991,41 @@ implements RenderIdSupport, Serializable {
      *         <code>Component</code>s
      */
     public final Component[] getVisibleComponents() {
-        if (children == null) {
-            return EMPTY_COMPONENT_ARRAY;
-        } else {
-            Iterator it = children.iterator();
-            List visibleChildList = new ArrayList();
-            while (it.hasNext()) {
-                Component component = (Component) it.next();
-                if (component.isVisible()) {
-                    visibleChildList.add(component);
+        Component[] visibleChildren = getVisibleChildren();
+        return visibleChildren.length == 0 ? EMPTY_COMPONENT_ARRAY : visibleChildren.clone();
+    }
+    
+    /**
+     * Returns the cached array of <strong>visible</strong> immediate child 
+     * <code>Component</code>s, creating it if necessary.
+     * The returned array must not be modified.
+     * 
+     * @return the visible child <code>Component</code>s
+     */
+    private Component[] getVisibleChildren() {
+        if (visibleChildren == null) {
+            if (children == null) {
+                visibleChildren = EMPTY_COMPONENT_ARRAY;
+            } else {
+                int size = children.size();
+                int visibleComponentCount = 0;
+                for (int i = 0; i < size; ++i) {
+                    if (((Component) children.get(i)).isVisible()) {
+                        ++visibleComponentCount;
+                    }
+                }
+                Component[] newVisibleChildren = new Component[visibleComponentCount];
+                int visibleIndex = 0;
+                for (int i = 0; i < size; ++i) {
+                    Component component = (Component) children.get(i);
+                    if (component.isVisible()) {
+                        newVisibleChildren[visibleIndex++] = component;
+                    }
                 }
+                visibleChildren = newVisibleChildren;
             }
-            return (Component[]) visibleChildList.toArray(new Component[visibleChildList.size()]);
         }
+        return visibleChildren;
     }
     
     /**
@@ -1271,6 +1299,7 @@ implements RenderIdSupport, Serializable {
         // Dissolve references between parent and child.
         children.remove(c);
         c.parent = null;
+        visibleChildren = null;
 
         // Notify PropertyChangeListeners of change.
         firePropertyChange(CHILDREN_CHANGED_PROPERTY, c, null);
@@ -1510,6 +1539,7 @@ implements RenderIdSupport, Serializable {
     public void setStyle(Style newValue) {
         Style oldValue = sharedStyle;
         sharedStyle = newValue;
+        resolvedStyle = null;
         firePropertyChange(STYLE_CHANGED_PROPERTY, oldValue, newValue);
     }
     
@@ -1525,6 +1555,7 @@ implements RenderIdSupport, Serializable {
     public void setStyleName(String newValue) {
         String oldValue = styleName;
         styleName = newValue;
+        resolvedStyle = null;
         firePropertyChange(STYLE_NAME_CHANGED_PROPERTY, oldValue, newValue);
     }
     
@@ -1538,6 +1569,9 @@ implements RenderIdSupport, Serializable {
         boolean oldValue = (flags & FLAG_VISIBLE) != 0;
         if (oldValue != newValue) {
             flags ^= FLAG_VISIBLE; // Toggle FLAG_VISIBLE bit.
+            if (parent != null) {
+                parent.visibleChildren = null;
+            }
             firePropertyChange(VISIBLE_CHANGED_PROPERTY, new Boolean(oldValue), new Boolean(newValue));
         }
     }
@@ -1590,20 +1624,11 @@ implements RenderIdSupport, Serializable {
         if (!c.isVisible()) {
             return -1;
         }
-        if (children == null) {
-            return -1;
-        }
-        int visibleIndex = 0;
-        Iterator it = children.iterator();
-        while (it.hasNext()) {
-            Component component = (Component) it.next();
-            if (!component.isVisible()) {
-                continue;
-            }
-            if (component.equals(c)) {
-                return visibleIndex;
+        Component[] visibleChildren = getVisibleChildren();
+        for (int i = 0; i < visibleChildren.length; ++i) {
+            if (visibleChildren[i].equals(c)) {
+                return i;
             }
-            ++visibleIndex;
         }
         return -1;
     }
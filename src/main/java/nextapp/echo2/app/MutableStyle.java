@@ -31,8 +31,7 @@ package nextapp.echo2.app;
 
 import java.io.Serializable;
 import java.util.Iterator;
-import java.util.SortedMap;
-import java.util.TreeMap;
+import java.util.NoSuchElementException;
 
 /**
  * A <code>Style</code> implementation which may be modified.
@@ -48,8 +47,16 @@ implements Style {
     
     private static final int GROW_RATE = 5 * 2;  // Must be a multiple of 2.
     
+    /**
+     * Number of properties above which property names are located using a
+     * hash index rather than a linear scan of the data array.
+     */
+    private static final int HASH_THRESHOLD = 8;
+    
     private static final Object[] EMPTY = new Object[0];
     
+    private static final int[] EMPTY_INDICES = new int[0];
+    
     /**
      * An <code>Iterator</code> which returns the names of properties which
      * are set in the style.
@@ -85,11 +92,40 @@ implements Style {
     
     /**
      * A value object which stores the indexed values of a property. 
+     * Indices are stored in a sorted <code>int</code> array, such that
+     * values may be retrieved without creating <code>Integer</code>s.
      */
     public class IndexedPropertyValue 
     implements Serializable {
 
-        private SortedMap indicesToValues;
+        private int[] indices = EMPTY_INDICES;
+        private Object[] values = EMPTY;
+        private int size = 0;
+        
+        /**
+         * Returns the position of the specified index in the 
+         * <code>indices</code> array, or <code>-(insertion point) - 1</code>
+         * if it is not present.
+         * 
+         * @param index the index
+         * @return the position
+         */
+        private int find(int index) {
+            int low = 0;
+            int high = size - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int midIndex = indices[mid];
+                if (midIndex < index) {
+                    low = mid + 1;
+                } else if (midIndex > index) {
+                    high = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -(low + 1);
+        }
         
         /**
          * Returns the value at the specified index.
@@ -98,11 +134,8 @@ implements Style {
          * @return the value
          */
         public Object getValue(int index) {
-            if (indicesToValues == null) {
-                return null;
-            } else {
-                return indicesToValues.get(new Integer(index));
-            }
+            int position = find(index);
+            return position < 0 ? null : values[position];
         }
         
         /**
@@ -112,7 +145,34 @@ implements Style {
          * @return an iterator over the indices
          */
         public Iterator getIndices() {
-            return indicesToValues.keySet().iterator();
+            return new Iterator() {
+                
+                private int position = 0;
+                
+                /**
+                 * @see java.util.Iterator#hasNext()
+                 */
+                public boolean hasNext() {
+                    return position < size;
+                }
+                
+                /**
+                 * @see java.util.Iterator#next()
+                 */
+                public Object next() {
+                    if (position >= size) {
+                        throw new NoSuchElementException();
+                    }
+                    return new Integer(indices[position++]);
+                }
+                
+                /**
+                 * @see java.util.Iterator#remove()
+                 */
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            };
         }
         
         /**
@@ -122,7 +182,7 @@ implements Style {
          * @return true if a value is set
          */
         public boolean hasValue(int index) {
-            return indicesToValues != null && indicesToValues.containsKey(new Integer(index));
+            return find(index) >= 0;
         }
         
         /**
@@ -131,11 +191,17 @@ implements Style {
          * @param index the index
          */
         private void removeValue(int index) {
-            if (indicesToValues != null) {
-                indicesToValues.remove(new Integer(index));
-                if (indicesToValues.size() == 0) {
-                    indicesToValues = null;
-                }
+            int position = find(index);
+            if (position < 0) {
+                return;
+            }
+            --size;
+            System.arraycopy(indices, position + 1, indices, position, size - position);
+            System.arraycopy(values, position + 1, values, position, size - position);
+            values[size] = null;
+            if (size == 0) {
+                indices = EMPTY_INDICES;
+                values = EMPTY;
             }
         }
         
@@ -146,15 +212,44 @@ implements Style {
          * @param value the new property value
          */
         private void setValue(int index, Object value) {
-            if (indicesToValues == null) {
-                indicesToValues = new TreeMap();
-            } 
-            indicesToValues.put(new Integer(index), value);
+            int position = find(index);
+            if (position >= 0) {
+                values[position] = value;
+                return;
+            }
+            position = -(position + 1);
+            if (size == indices.length) {
+                int capacity = size < 4 ? 4 : size * 2;
+                int[] newIndices = new int[capacity];
+                Object[] newValues = new Object[capacity];
+                System.arraycopy(indices, 0, newIndices, 0, size);
+                System.arraycopy(values, 0, newValues, 0, size);
+                indices = newIndices;
+                values = newValues;
+            }
+            System.arraycopy(indices, position, indices, position + 1, size - position);
+            System.arraycopy(values, position, values, position + 1, size - position);
+            indices[position] = index;
+            values[position] = value;
+            ++size;
         }
     }
     
     private Object[] data = EMPTY;
     int length = 0; // Number of items * 2;
+    
+    /**
+     * Open-addressed hash index of property names, present only when more than
+     * <code>HASH_THRESHOLD</code> properties are set.  Each non-zero element is
+     * one greater than the position of a property name in <code>data</code>.
+     */
+    private int[] hashIndex;
+    
+    /**
+     * Count of modifications made to the style, used to detect changes
+     * to styles whose properties have been cached in a <code>ResolvedStyle</code>.
+     */
+    int modificationCount = 0;
 
     /**
      * Default constructor.
@@ -186,6 +281,21 @@ implements Style {
         }
     }
     
+    /**
+     * Adds the property name at the specified position of <code>data</code>
+     * to the hash index.
+     * 
+     * @param position the position of the property name
+     */
+    private void addToHashIndex(int position) {
+        int mask = hashIndex.length - 1;
+        int slot = spread(data[position].hashCode()) & mask;
+        while (hashIndex[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        hashIndex[slot] = position + 1;
+    }
+    
     /**
      * @see nextapp.echo2.app.Style#getIndexedProperty(java.lang.String, int)
      */
@@ -222,6 +332,36 @@ implements Style {
         return new PropertyNameIterator();
     }
     
+    /**
+     * Returns the position of the specified property name in 
+     * <code>data</code>, or -1 if the property is not set.
+     * 
+     * @param propertyName the name of the property
+     * @return the position of the property name
+     */
+    private int indexOf(String propertyName) {
+        int propertyNameHashCode = propertyName.hashCode();
+        if (hashIndex == null) {
+            for (int i = 0; i < length; i += 2) {
+                if (propertyNameHashCode == data[i].hashCode() && propertyName.equals(data[i])) {
+                    return i;
+                }
+            }
+        } else {
+            int mask = hashIndex.length - 1;
+            int slot = spread(propertyNameHashCode) & mask;
+            int entry;
+            while ((entry = hashIndex[slot]) != 0) {
+                int i = entry - 1;
+                if (propertyNameHashCode == data[i].hashCode() && propertyName.equals(data[i])) {
+                    return i;
+                }
+                slot = (slot + 1) & mask;
+            }
+        }
+        return -1;
+    }
+    
     /**
      * @see nextapp.echo2.app.Style#isIndexedPropertySet(java.lang.String, int)
      */
@@ -237,13 +377,27 @@ implements Style {
      * @see nextapp.echo2.app.Style#isPropertySet(java.lang.String)
      */
     public boolean isPropertySet(String propertyName) {
-        int propertyNameHashCode = propertyName.hashCode();
+        return indexOf(propertyName) != -1;
+    }
+    
+    /**
+     * Creates the hash index if more than <code>HASH_THRESHOLD</code>
+     * properties are set, or discards it otherwise. 
+     */
+    private void rebuildHashIndex() {
+        int size = length / 2;
+        if (size <= HASH_THRESHOLD) {
+            hashIndex = null;
+            return;
+        }
+        int capacity = HASH_THRESHOLD * 4;
+        while (capacity < size * 2) {
+            capacity *= 2;
+        }
+        hashIndex = new int[capacity];
         for (int i = 0; i < length; i += 2) {
-            if (propertyNameHashCode == data[i].hashCode() && propertyName.equals(data[i])) {
-                return true;
-            }
+            addToHashIndex(i);
         }
-        return false;
     }
     
     /**
@@ -258,6 +412,7 @@ implements Style {
             return;
         }
         ((IndexedPropertyValue) value).removeValue(propertyIndex);
+        ++modificationCount;
     }
     
     /**
@@ -266,21 +421,24 @@ implements Style {
      * @param propertyName the name of the property to remove
      */
     public void removeProperty(String propertyName) {
-        int propertyNameHashCode = propertyName.hashCode();
-        for (int i = 0; i < length; i += 2) {
-            if (propertyNameHashCode == data[i].hashCode() && propertyName.equals(data[i])) {
-                data[i] = data[length - 2];
-                data[i + 1] = data[length - 1];
-                data[length - 2] = null;
-                data[length - 1] = null;
-                length -= 2;
-                break;
-            }
+        ++modificationCount;
+        int i = indexOf(propertyName);
+        if (i == -1) {
+            return;
         }
         
+        data[i] = data[length - 2];
+        data[i + 1] = data[length - 1];
+        data[length - 2] = null;
+        data[length - 1] = null;
+        length -= 2;
+        
         if (length == 0) {
             data = EMPTY;
         }
+        
+        // Removal moves the last property, rebuild (or discard) the hash index.
+        rebuildHashIndex();
     }
     
     /**
@@ -290,13 +448,8 @@ implements Style {
      * @return the value of the property
      */
     private Object retrieveProperty(String propertyName) {
-        int propertyNameHashCode = propertyName.hashCode();
-        for (int i = 0; i < length; i += 2) {
-            if (propertyNameHashCode == data[i].hashCode() && propertyName.equals(data[i])) {
-                return data[i + 1];
-            }
-        }
-        return null;
+        int i = indexOf(propertyName);
+        return i == -1 ? null : data[i + 1];
     }
     
     /**
@@ -313,6 +466,7 @@ implements Style {
             setProperty(propertyName, value);
         }
         ((IndexedPropertyValue) value).setValue(propertyIndex, propertyValue);
+        ++modificationCount;
     }
     
     /**
@@ -329,35 +483,36 @@ implements Style {
             return;
         }
         
-        if (data == EMPTY) {
-            data = new Object[GROW_RATE];
+        ++modificationCount;
+        int i = indexOf(propertyName);
+        if (i != -1) {
+            // Found property, overwrite.
+            data[i + 1] = propertyValue;
+            return;
+        }
+        
+        if (length == data.length) {
+            // Array is full: grow array.  Growth is linear for small styles, geometric for large ones.
+            Object[] newData = new Object[length < HASH_THRESHOLD * 2 ? length + GROW_RATE : length * 2];
+            System.arraycopy(data, 0, newData, 0, length);
+            data = newData;
         }
 
-        int propertyNameHashCode = propertyName.hashCode();
-        for (int i = 0; i < data.length; i += 2) {
-            if (data[i] == null) {
-                // Property is not set, space remains to set property.
-                // Add property at end.
-                data[i] = propertyName;
-                data[i + 1] = propertyValue;
-                length += 2;
-                return;
-            }
-            if (propertyNameHashCode == data[i].hashCode() && propertyName.equals(data[i])) {
-                // Found property, overwrite.
-                data[i + 1] = propertyValue;
-                return;
+        // Add property at end.
+        data[length] = propertyName;
+        data[length + 1] = propertyValue;
+        length += 2;
+        
+        if (hashIndex == null) {
+            if (length > HASH_THRESHOLD * 2) {
+                rebuildHashIndex();
             }
+        } else if (length > hashIndex.length) {
+            // Keep hash index load factor at or below 0.5.
+            rebuildHashIndex();
+        } else {
+            addToHashIndex(length - 2);
         }
-        
-        // Array is full: grow array.
-        Object[] newData = new Object[data.length + GROW_RATE];
-        System.arraycopy(data, 0, newData, 0, data.length);
-        
-        newData[data.length] = propertyName;
-        newData[data.length + 1] = propertyValue;
-        length += 2;
-        data = newData;
     }
     
     /**
@@ -369,6 +524,17 @@ implements Style {
         return length / 2;
     }
     
+    /**
+     * Spreads the bits of a hash code such that they are usable as an index
+     * into a power-of-two sized hash table.
+     * 
+     * @param hashCode the hash code
+     * @return the spread hash code
+     */
+    private static int spread(int hashCode) {
+        return hashCode ^ (hashCode >>> 16);
+    }
+    
     /**
      * Returns a debug representation.
      * 
@@ -30,6 +30,7 @@
 package nextapp.echo2.app;
 
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
 
 /**
@@ -40,6 +41,12 @@ implements StyleSheet {
 
     private Map namedStyleMap = new HashMap();
     private Map defaultStyleMap = new HashMap();
+    
+    /**
+     * Count of modifications made to the style sheet, used to detect changes
+     * to style sheets whose styles have been cached in a <code>ResolvedStyle</code>.
+     */
+    int modificationCount = 0;
 
     /**
      * Adds a <code>Style</code> to the <code>StyleSheet</code>.
@@ -50,6 +57,7 @@ implements StyleSheet {
      * @param style the <code>Style</code> to be added
      */
     public void addStyle(Class componentClass, String styleName, Style style) {
+        ++modificationCount;
         if (styleName == null) {
             defaultStyleMap.put(componentClass, style);
         } else {
@@ -70,7 +78,13 @@ implements StyleSheet {
      * @param styleSheet the <code>StyleSheet</code> to add
      */
     public void addStyleSheet(MutableStyleSheet styleSheet) {
-        namedStyleMap.putAll(styleSheet.namedStyleMap);
+        ++modificationCount;
+        Iterator it = styleSheet.namedStyleMap.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry entry = (Map.Entry) it.next();
+            // Copy per-name style maps, such that they are not shared between style sheets.
+            namedStyleMap.put(entry.getKey(), new HashMap((Map) entry.getValue()));
+        }
         defaultStyleMap.putAll(styleSheet.defaultStyleMap);
     }
     
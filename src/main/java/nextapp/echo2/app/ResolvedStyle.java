@@ -0,0 +1,182 @@
+/* 
+ * This file is part of the Echo Web Application Framework (hereinafter "Echo").
+ * Copyright (C) 2002-2009 NextApp, Inc.
+ *
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ */
+
+
+package nextapp.echo2.app;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * The flattened result of resolving the shared <code>Style</code> and
+ * <code>StyleSheet</code>-provided <code>Style</code> of a 
+ * <code>Component</code>, used to avoid walking the <code>StyleSheet</code>
+ * class hierarchy on every <code>Component.getRenderProperty()</code> 
+ * invocation.
+ * <p>
+ * Where both styles are plain <code>MutableStyle</code>s, their properties are
+ * merged into a single map, and the modification counts of the styles are
+ * recorded such that the <code>ResolvedStyle</code> may be discarded if
+ * either is subsequently changed.  Other <code>Style</code> implementations
+ * (which may derive properties from elsewhere) are queried directly.
+ * <p>
+ * <code>ResolvedStyle</code>s are only created for applications whose 
+ * <code>StyleSheet</code> is null or a <code>MutableStyleSheet</code>.
+ */
+final class ResolvedStyle {
+    
+    /**
+     * Determines whether <code>ResolvedStyle</code>s may be created for the
+     * specified <code>StyleSheet</code>.
+     * 
+     * @param styleSheet the <code>StyleSheet</code>
+     * @return true if <code>ResolvedStyle</code>s may be used
+     */
+    static boolean isSupported(StyleSheet styleSheet) {
+        return styleSheet == null || styleSheet.getClass() == MutableStyleSheet.class;
+    }
+    
+    /**
+     * Determines if the specified style's properties may be flattened.
+     * 
+     * @param style the <code>Style</code> (may be null)
+     * @return true if the style is null or a plain <code>MutableStyle</code>
+     */
+    private static boolean isFlattenable(Style style) {
+        return style == null || style.getClass() == MutableStyle.class;
+    }
+    
+    private StyleSheet styleSheet;
+    private int styleSheetModificationCount;
+    private Style sharedStyle;
+    private int sharedStyleModificationCount;
+    private Style applicationStyle;
+    private int applicationStyleModificationCount;
+    
+    /**
+     * Map of property names to values, or null if the shared and application
+     * styles are to be queried directly.
+     */
+    private Map propertyMap;
+    
+    /**
+     * Creates a new <code>ResolvedStyle</code>.
+     * 
+     * @param styleSheet the <code>StyleSheet</code> (null or a 
+     *        <code>MutableStyleSheet</code>)
+     * @param componentClass the <code>Class</code> of the component
+     * @param styleName the style name of the component
+     * @param sharedStyle the shared style of the component
+     */
+    ResolvedStyle(StyleSheet styleSheet, Class componentClass, String styleName, Style sharedStyle) {
+        super();
+        this.styleSheet = styleSheet;
+        this.sharedStyle = sharedStyle;
+        if (styleSheet != null) {
+            styleSheetModificationCount = ((MutableStyleSheet) styleSheet).modificationCount;
+            applicationStyle = styleSheet.getStyle(componentClass, styleName);
+        }
+        
+        if (isFlattenable(sharedStyle) && isFlattenable(applicationStyle)) {
+            propertyMap = new HashMap();
+            if (applicationStyle != null) {
+                applicationStyleModificationCount = ((MutableStyle) applicationStyle).modificationCount;
+                addProperties(applicationStyle);
+            }
+            if (sharedStyle != null) {
+                sharedStyleModificationCount = ((MutableStyle) sharedStyle).modificationCount;
+                addProperties(sharedStyle);
+            }
+        }
+    }
+    
+    /**
+     * Adds the properties of the specified <code>Style</code> to the
+     * property map, overwriting any existing values.
+     * 
+     * @param style the <code>Style</code>
+     */
+    private void addProperties(Style style) {
+        Iterator it = style.getPropertyNames();
+        while (it.hasNext()) {
+            String propertyName = (String) it.next();
+            propertyMap.put(propertyName, style.getProperty(propertyName));
+        }
+    }
+    
+    /**
+     * Returns the resolved value of the specified property.
+     * 
+     * @param propertyName the name of the property
+     * @return the property value, or null if it is not set
+     */
+    Object getProperty(String propertyName) {
+        if (propertyMap != null) {
+            return propertyMap.get(propertyName);
+        }
+        if (sharedStyle != null) {
+            Object propertyValue = sharedStyle.getProperty(propertyName);
+            if (propertyValue != null) {
+                return propertyValue;
+            }
+        }
+        return applicationStyle == null ? null : applicationStyle.getProperty(propertyName);
+    }
+    
+    /**
+     * Determines if the <code>ResolvedStyle</code> remains valid for the
+     * specified <code>StyleSheet</code>, i.e., that neither the 
+     * <code>StyleSheet</code> nor any flattened <code>Style</code> has
+     * changed since it was created.
+     * 
+     * @param currentStyleSheet the current application <code>StyleSheet</code>
+     * @return true if the <code>ResolvedStyle</code> may be used
+     */
+    boolean isValid(StyleSheet currentStyleSheet) {
+        if (currentStyleSheet != styleSheet) {
+            return false;
+        }
+        if (styleSheet != null 
+                && ((MutableStyleSheet) styleSheet).modificationCount != styleSheetModificationCount) {
+            return false;
+        }
+        if (propertyMap != null) {
+            if (sharedStyle != null 
+                    && ((MutableStyle) sharedStyle).modificationCount != sharedStyleModificationCount) {
+                return false;
+            }
+            if (applicationStyle != null 
+                    && ((MutableStyle) applicationStyle).modificationCount != applicationStyleModificationCount) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
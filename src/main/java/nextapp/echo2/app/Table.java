@@ -29,8 +29,10 @@
 
 package nextapp.echo2.app;
 
+import java.util.ArrayList;
 import java.util.EventListener;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import nextapp.echo2.app.event.ActionEvent;
@@ -46,6 +48,9 @@ import nextapp.echo2.app.list.ListSelectionModel;
 import nextapp.echo2.app.table.DefaultTableCellRenderer;
 import nextapp.echo2.app.table.DefaultTableColumnModel;
 import nextapp.echo2.app.table.DefaultTableModel;
+import nextapp.echo2.app.table.LightweightTableCellRenderer;
+import nextapp.echo2.app.table.RecyclingTableCellRenderer;
+import nextapp.echo2.app.table.RowIndexDependentTableCellRenderer;
 import nextapp.echo2.app.table.TableCellRenderer;
 import nextapp.echo2.app.table.TableColumn;
 import nextapp.echo2.app.table.TableColumnModel;
@@ -76,23 +81,38 @@ public class Table extends Component {
     public static final String PROPERTY_SELECTION_ENABLED = "selectionEnabled";
     public static final String PROPERTY_SELECTION_FONT = "selectionFont";
     public static final String PROPERTY_SELECTION_FOREGROUND= "selectionForeground";
+    public static final String PROPERTY_VIEWPORT_HEIGHT = "viewportHeight";
     public static final String PROPERTY_WIDTH = "width";
     
     public static final String INPUT_ACTION = "action";
 
     public static final String ACTION_LISTENERS_CHANGED_PROPERTY = "actionListeners";
     public static final String AUTO_CREATE_COLUMNS_FROM_MODEL_CHANGED_PROPERTY = "autoCreateColumnsFromModel";
+    public static final String CELL_RECYCLING_ENABLED_CHANGED_PROPERTY = "cellRecyclingEnabled";
     public static final String COLUMN_MODEL_CHANGED_PROPERTY = "columnModel";
     public static final String DEFAULT_HEADER_RENDERER_CHANGED_PROPERTY = "defaultHeaderRenderer";
     public static final String DEFAULT_RENDERER_CHANGED_PROPERTY = "defaultRenderer";
+    public static final String FIRST_VISIBLE_ROW_CHANGED_PROPERTY = "firstVisibleRow";
     public static final String HEADER_VISIBLE_CHANGED_PROPERTY = "headerVisible";
     public static final String MODEL_CHANGED_PROPERTY = "model";
+    public static final String OVERSCAN_ROW_COUNT_CHANGED_PROPERTY = "overscanRowCount";
+    public static final String RENDERED_ROWS_CHANGED_PROPERTY = "renderedRows";
     public static final String SELECTION_CHANGED_PROPERTY = "selection";
     public static final String SELECTION_MODEL_CHANGED_PROPERTY = "selectionModel";
+    public static final String VIEWPORT_ROW_COUNT_CHANGED_PROPERTY = "viewportRowCount";
     
     public static final int HEADER_ROW = -1;
     
+    /**
+     * Maximum ratio between the number of rendered rows which must be 
+     * re-rendered because inserted or deleted rows changed their indices and
+     * the number of inserted or deleted rows, beyond which the table is 
+     * re-rendered in full rather than incrementally.
+     */
+    private static final int MAXIMUM_RENUMBERED_ROW_RATIO = 4;
+    
     private boolean autoCreateColumnsFromModel;
+    private boolean cellRecyclingEnabled;
     private boolean headerVisible = true;
     private TableModel model;
     private TableColumnModel columnModel;
@@ -101,6 +121,45 @@ public class Table extends Component {
     private TableCellRenderer defaultHeaderRenderer;
     private ListSelectionModel selectionModel;
     private boolean suppressChangeNotifications;
+    private int viewportRowCount;
+    private int overscanRowCount = 20;
+    private int firstVisibleRow;
+    private int renderedRowStart;
+    private int renderedRowCount;
+    
+    /**
+     * Flag indicating whether the child components were created by 
+     * <code>Table.doRender()</code>, i.e., are the header cells followed by 
+     * the cells of the rendered rows, such that rows may be updated 
+     * incrementally.
+     */
+    private boolean rowsRendered;
+    
+    /**
+     * Flag indicating whether the cells of the rendered rows are rendered by
+     * <code>LightweightTableCellRenderer</code>s without components.
+     */
+    private boolean lightweight;
+    
+    /**
+     * The renderers of the currently rendered header cells, indexed by 
+     * column, or null if the header is not rendered.
+     */
+    private TableCellRenderer[] renderedHeaderRenderers;
+    
+    /**
+     * The renderers of the currently rendered cells, indexed by column.
+     */
+    private TableCellRenderer[] renderedColumnRenderers;
+    
+    /**
+     * Mapping between <code>RecyclingTableCellRenderer</code>s and 
+     * <code>List</code>s of cell components removed from the table which 
+     * the renderer may recycle.  The pool is only populated while cell 
+     * recycling is enabled and exists only for the duration of a single 
+     * rendering operation.
+     */
+    private Map cellComponentPool;
     
     /**
      * Listener to monitor changes to model.
@@ -111,9 +170,13 @@ public class Table extends Component {
          * @see nextapp.echo2.app.event.TableModelListener#tableChanged(nextapp.echo2.app.event.TableModelEvent)
          */
         public void tableChanged(TableModelEvent e) {
-            invalidate();
-            if ((e == null || e.getType() == TableModelEvent.STRUCTURE_CHANGED) && isAutoCreateColumnsFromModel()) {
-                createDefaultColumnsFromModel();
+            if (e == null || e.getType() == TableModelEvent.STRUCTURE_CHANGED) {
+                invalidate();
+                if (isAutoCreateColumnsFromModel()) {
+                    createDefaultColumnsFromModel();
+                }
+            } else {
+                processRowChange(e);
             }
         }
     };
@@ -253,66 +316,161 @@ public class Table extends Component {
         }
     }
 
+    /**
+     * Creates the cell component for the specified row of a column.
+     * A component of the cell component pool will be recycled if possible.
+     * 
+     * @param tableColumn the <code>TableColumn</code>
+     * @param renderer the <code>TableCellRenderer</code> of the column
+     * @param rowIndex the row index, or <code>HEADER_ROW</code> to create
+     *        the header cell of the column
+     * @return the rendered component (never null)
+     */
+    private Component createCellComponent(TableColumn tableColumn, TableCellRenderer renderer, int rowIndex) {
+        if (cellComponentPool != null) {
+            List components = (List) cellComponentPool.get(renderer);
+            while (components != null && components.size() > 0) {
+                Component component = (Component) components.remove(components.size() - 1);
+                if (recycleCellComponent(component, tableColumn, renderer, rowIndex)) {
+                    return component;
+                }
+            }
+        }
+        int modelColumnIndex = tableColumn.getModelIndex();
+        Component renderedComponent = renderer.getTableCellRendererComponent(this, getCellValue(tableColumn, rowIndex), 
+                modelColumnIndex, rowIndex);
+        if (renderedComponent == null) {
+            renderedComponent = new Label();
+        }
+        return renderedComponent;
+    }
+
+    /**
+     * Creates and adds the cell components of a range of model rows to the 
+     * rendered rows.
+     * 
+     * @param index the index within the rendered rows at which the rows 
+     *        should be added
+     * @param firstRow the first model row to add
+     * @param count the number of rows to add
+     */
+    private void addRenderedRows(int index, int firstRow, int count) {
+        if (lightweight) {
+            renderedRowCount += count;
+            return;
+        }
+        int columnCount = columnModel.getColumnCount();
+        TableColumn[] tableColumns = new TableColumn[columnCount];
+        TableCellRenderer[] columnRenderers = new TableCellRenderer[columnCount];
+        for (int columnIndex = 0; columnIndex < columnCount; ++columnIndex) {
+            tableColumns[columnIndex] = columnModel.getColumn(columnIndex);
+            columnRenderers[columnIndex] = getColumnRenderer(tableColumns[columnIndex]);
+        }
+        
+        int componentIndex = (isHeaderVisible() ? columnCount : 0) + index * columnCount;
+        for (int rowIndex = firstRow; rowIndex < firstRow + count; ++rowIndex) {
+            for (int columnIndex = 0; columnIndex < columnCount; ++columnIndex) {
+                add(createCellComponent(tableColumns[columnIndex], columnRenderers[columnIndex], rowIndex), componentIndex++);
+            }
+        }
+        renderedRowCount += count;
+    }
+    
+    /**
+     * Returns the range of model rows which should currently be rendered.
+     * 
+     * @return a two element array containing the first row to render and 
+     *         the index after the last row to render
+     */
+    private int[] calculateRenderedRowRange() {
+        int rowCount = model.getRowCount();
+        if (viewportRowCount > 0) {
+            int first = Math.max(0, Math.min(firstVisibleRow, rowCount - viewportRowCount));
+            return new int[]{Math.max(0, first - overscanRowCount), 
+                    Math.min(rowCount, first + viewportRowCount + overscanRowCount)};
+        } else {
+            return new int[]{0, rowCount};
+        }
+    }
+
     /**
      * Re-renders changed rows.
+     * <p>
+     * If cell recycling is enabled and the previously rendered cells have the
+     * same layout, the existing cell components are reconfigured in place 
+     * wherever the renderer of a cell is unchanged and is capable of 
+     * recycling it, such that these components retain their render ids.
      */
     protected void doRender() {
-        removeAll();
-        int rowCount = model.getRowCount();
-        int columnCount = columnModel.getColumnCount();
+        boolean recycle = cellRecyclingEnabled && rowsRendered && !lightweight;
+        rowsRendered = false;
         
+        int columnCount = columnModel.getColumnCount();
         TableColumn[] tableColumns = new TableColumn[columnCount];
+        TableCellRenderer[] headerRenderers = isHeaderVisible() ? new TableCellRenderer[columnCount] : null;
         TableCellRenderer[] columnRenderers = new TableCellRenderer[columnCount];
-        
         for (int columnIndex = 0; columnIndex < columnCount; ++columnIndex) {
             tableColumns[columnIndex] = columnModel.getColumn(columnIndex);
-            
-            TableCellRenderer renderer = tableColumns[columnIndex].getCellRenderer();
-            if (renderer == null) {
-                Class columnClass = model.getColumnClass(tableColumns[columnIndex].getModelIndex());
-                renderer = getDefaultRenderer(columnClass);
-                if (renderer == null) {
-                    renderer = DEFAULT_TABLE_CELL_RENDERER;
-                }
+            if (headerRenderers != null) {
+                headerRenderers[columnIndex] = getHeaderRenderer(tableColumns[columnIndex]);
             }
-            columnRenderers[columnIndex] = renderer;
-
+            columnRenderers[columnIndex] = getColumnRenderer(tableColumns[columnIndex]);
         }
-
-        if (isHeaderVisible()) {
-            for (int columnIndex = 0; columnIndex < columnCount; ++columnIndex) {
-                int modelColumnIndex = tableColumns[columnIndex].getModelIndex();
-                Object headerValue = tableColumns[columnIndex].getHeaderValue();
-                if (headerValue == null) {
-                    headerValue = model.getColumnName(modelColumnIndex);
+        
+        boolean newLightweight = columnCount > 0;
+        for (int columnIndex = 0; columnIndex < columnCount && newLightweight; ++columnIndex) {
+            newLightweight = columnRenderers[columnIndex] instanceof LightweightTableCellRenderer;
+        }
+        
+        if (recycle) {
+            // Recycling requires the existing children to be laid out with the same column count and header visibility.
+            recycle = !newLightweight && renderedColumnRenderers != null && renderedColumnRenderers.length == columnCount 
+                    && (renderedHeaderRenderers != null) == (headerRenderers != null)
+                    && getComponentCount() == (headerRenderers == null ? 0 : columnCount) + renderedRowCount * columnCount;
+        }
+        
+        if (recycle) {
+            cellComponentPool = new HashMap();
+            int componentIndex = 0;
+            if (headerRenderers != null) {
+                for (int columnIndex = 0; columnIndex < columnCount; ++columnIndex) {
+                    refreshCellComponent(componentIndex++, renderedHeaderRenderers[columnIndex], tableColumns[columnIndex], 
+                            headerRenderers[columnIndex], HEADER_ROW);
                 }
-                TableCellRenderer headerRenderer = tableColumns[columnIndex].getHeaderRenderer();
-                if (headerRenderer == null) {
-                    headerRenderer = defaultHeaderRenderer;
-                    if (headerRenderer == null) {
-                        headerRenderer = DEFAULT_TABLE_CELL_RENDERER;
-                    }
+            }
+            
+            // Discard rendered rows in excess of those to be rendered, then refresh remaining rows in place.
+            int[] range = calculateRenderedRowRange();
+            int refreshCount = Math.min(renderedRowCount, range[1] - range[0]);
+            removeRenderedRows(refreshCount, renderedRowCount - refreshCount);
+            for (int rowIndex = range[0]; rowIndex < range[0] + refreshCount; ++rowIndex) {
+                for (int columnIndex = 0; columnIndex < columnCount; ++columnIndex) {
+                    refreshCellComponent(componentIndex++, renderedColumnRenderers[columnIndex], tableColumns[columnIndex], 
+                            columnRenderers[columnIndex], rowIndex);
                 }
-                Component renderedComponent 
-                        = headerRenderer.getTableCellRendererComponent(this, headerValue, modelColumnIndex, HEADER_ROW);
-                if (renderedComponent == null) {
-                    renderedComponent = new Label();
+            }
+            renderedRowStart = range[0];
+        } else {
+            removeAll();
+            lightweight = newLightweight;
+            renderedRowStart = 0;
+            renderedRowCount = 0;
+            if (headerRenderers != null) {
+                for (int columnIndex = 0; columnIndex < columnCount; ++columnIndex) {
+                    add(createCellComponent(tableColumns[columnIndex], headerRenderers[columnIndex], HEADER_ROW));
                 }
-                add(renderedComponent);
             }
         }
+        renderedHeaderRenderers = headerRenderers;
+        renderedColumnRenderers = columnRenderers;
         
-        for (int rowIndex = 0; rowIndex < rowCount; ++rowIndex) {
-            for (int columnIndex = 0; columnIndex < columnCount; ++columnIndex) {
-                int modelColumnIndex = tableColumns[columnIndex].getModelIndex();
-                Object modelValue = model.getValueAt(modelColumnIndex, rowIndex);
-                Component renderedComponent 
-                        = columnRenderers[columnIndex].getTableCellRendererComponent(this, modelValue, modelColumnIndex, rowIndex);
-                if (renderedComponent == null) {
-                    renderedComponent = new Label();
-                }
-                add(renderedComponent);
-            }
+        updateRenderedRows();
+        cellComponentPool = null;
+        rowsRendered = true;
+        
+        if (lightweight) {
+            // Notify peer that rows must be re-rendered, as they are not represented by added/removed child components.
+            firePropertyChange(RENDERED_ROWS_CHANGED_PROPERTY, null, null);
         }
     }
     
@@ -348,20 +506,57 @@ public class Table extends Component {
      * 
      * @param column the column
      * @param row the row
-     * @return the component
+     * @return the component, or null if the row is not rendered, i.e., 
+     *         it is the hidden header row or lies outside the rendered 
+     *         rows of a table with a viewport, or if the rows of the table
+     *         are rendered without components
+     * @see #isLightweight()
      */
     public Component getCellComponent(int column, int row) {
         if (!valid) {
             validate();
         }
-        if (isHeaderVisible()) {
-            return getComponent((row + 1) * columnModel.getColumnCount()   + column);
+        int columnCount = columnModel.getColumnCount();
+        if (row == HEADER_ROW) {
+            return isHeaderVisible() ? getComponent(column) : null;
+        } else if (lightweight || row < renderedRowStart || row >= renderedRowStart + renderedRowCount) {
+            return null;
         } else {
-            if (row == HEADER_ROW) {
-                return null;
-            } else {
-                return getComponent(row * columnModel.getColumnCount() + column);
-            }
+            return getComponent((isHeaderVisible() ? columnCount : 0) + (row - renderedRowStart) * columnCount + column);
+        }
+    }
+    
+    /**
+     * Returns the <code>TableCellRenderer</code> with which the cells of the
+     * specified column are rendered.
+     * Invocation will automatically perform validation if required.
+     * 
+     * @param column the column
+     * @return the <code>TableCellRenderer</code>
+     */
+    public TableCellRenderer getCellRenderer(int column) {
+        if (!valid) {
+            validate();
+        }
+        return renderedColumnRenderers == null ? getColumnRenderer(columnModel.getColumn(column)) 
+                : renderedColumnRenderers[column];
+    }
+    
+    /**
+     * Returns the value to be rendered in the specified row of a column.
+     * 
+     * @param tableColumn the <code>TableColumn</code>
+     * @param rowIndex the row index, or <code>HEADER_ROW</code> to retrieve
+     *        the header value
+     * @return the value
+     */
+    private Object getCellValue(TableColumn tableColumn, int rowIndex) {
+        int modelColumnIndex = tableColumn.getModelIndex();
+        if (rowIndex == HEADER_ROW) {
+            Object headerValue = tableColumn.getHeaderValue();
+            return headerValue == null ? model.getColumnName(modelColumnIndex) : headerValue;
+        } else {
+            return model.getValueAt(modelColumnIndex, rowIndex);
         }
     }
     
@@ -375,6 +570,27 @@ public class Table extends Component {
         return columnModel;
     }
     
+    /**
+     * Returns the <code>TableCellRenderer</code> which will be used to render
+     * the cells of the specified column, i.e., the column's own renderer,
+     * the default renderer for its class, or 
+     * <code>DEFAULT_TABLE_CELL_RENDERER</code>.
+     * 
+     * @param tableColumn the <code>TableColumn</code>
+     * @return the <code>TableCellRenderer</code>
+     */
+    private TableCellRenderer getColumnRenderer(TableColumn tableColumn) {
+        TableCellRenderer renderer = tableColumn.getCellRenderer();
+        if (renderer == null) {
+            Class columnClass = model.getColumnClass(tableColumn.getModelIndex());
+            renderer = getDefaultRenderer(columnClass);
+            if (renderer == null) {
+                renderer = DEFAULT_TABLE_CELL_RENDERER;
+            }
+        }
+        return renderer;
+    }
+    
     /**
      * Returns the default <code>TableCellRenderer</code> used to render
      * header cells.  The default header renderer will be used in the event 
@@ -399,6 +615,36 @@ public class Table extends Component {
         return (TableCellRenderer) defaultRendererMap.get(columnClass);
     }
     
+    /**
+     * Returns the index of the first row visible in the viewport.
+     * 
+     * @return the first visible row
+     * @see #setViewportRowCount(int)
+     */
+    public int getFirstVisibleRow() {
+        return firstVisibleRow;
+    }
+    
+    /**
+     * Returns the <code>TableCellRenderer</code> which will be used to render
+     * the header cell of the specified column, i.e., the column's own header
+     * renderer, the default header renderer, or 
+     * <code>DEFAULT_TABLE_CELL_RENDERER</code>.
+     * 
+     * @param tableColumn the <code>TableColumn</code>
+     * @return the <code>TableCellRenderer</code>
+     */
+    private TableCellRenderer getHeaderRenderer(TableColumn tableColumn) {
+        TableCellRenderer renderer = tableColumn.getHeaderRenderer();
+        if (renderer == null) {
+            renderer = defaultHeaderRenderer;
+            if (renderer == null) {
+                renderer = DEFAULT_TABLE_CELL_RENDERER;
+            }
+        }
+        return renderer;
+    }
+    
     /**
      * Returns the default cell insets.
      * 
@@ -418,6 +664,45 @@ public class Table extends Component {
         return model;
     }
     
+    /**
+     * Returns the number of rows rendered beyond each edge of the viewport.
+     * 
+     * @return the overscan row count
+     * @see #setViewportRowCount(int)
+     */
+    public int getOverscanRowCount() {
+        return overscanRowCount;
+    }
+    
+    /**
+     * Returns the number of rendered rows, i.e., the number of rows for which
+     * cell components currently exist.  Invocation will automatically perform 
+     * validation if required.
+     * 
+     * @return the rendered row count
+     */
+    public int getRenderedRowCount() {
+        if (!valid) {
+            validate();
+        }
+        return renderedRowCount;
+    }
+    
+    /**
+     * Returns the index of the first rendered row, i.e., the first row for 
+     * which cell components currently exist.  This value is always zero 
+     * unless the table has a viewport.  Invocation will automatically perform 
+     * validation if required.
+     * 
+     * @return the index of the first rendered row
+     */
+    public int getRenderedRowStart() {
+        if (!valid) {
+            validate();
+        }
+        return renderedRowStart;
+    }
+    
     /**
      * Return the rollover background color displayed when the mouse is within
      * the bounds of a row.
@@ -503,6 +788,28 @@ public class Table extends Component {
         return selectionModel;
     }
     
+    /**
+     * Returns the height of the viewport of a table with a viewport.
+     * This property only supports <code>Extent</code>s with fixed 
+     * (i.e., not percent) units.
+     * 
+     * @return the height
+     */
+    public Extent getViewportHeight() {
+        return (Extent) getProperty(PROPERTY_VIEWPORT_HEIGHT);
+    }
+    
+    /**
+     * Returns the number of rows visible in the viewport, or zero if the 
+     * table does not have a viewport.
+     * 
+     * @return the viewport row count
+     * @see #setViewportRowCount(int)
+     */
+    public int getViewportRowCount() {
+        return viewportRowCount;
+    }
+    
     /**
      * Returns the overall width of the grid.
      * This property supports <code>Extent</code>s with
@@ -544,6 +851,16 @@ public class Table extends Component {
     public boolean isAutoCreateColumnsFromModel() {
         return autoCreateColumnsFromModel;
     }
+    
+    /**
+     * Determines whether cell recycling is enabled.
+     * 
+     * @return true if cell recycling is enabled
+     * @see #setCellRecyclingEnabled(boolean)
+     */
+    public boolean isCellRecyclingEnabled() {
+        return cellRecyclingEnabled;
+    }
 
     /**
      * Determines if the table header is visible.
@@ -554,6 +871,24 @@ public class Table extends Component {
         return headerVisible;
     }
     
+    /**
+     * Determines whether the rows of the table are rendered without cell
+     * components, which is the case when the cells of all columns are 
+     * rendered by <code>LightweightTableCellRenderer</code>s.  The cells of
+     * such rows are rendered directly from the text and styles provided by 
+     * the renderers.
+     * Invocation will automatically perform validation if required.
+     * 
+     * @return true if the rows are rendered without cell components
+     * @see nextapp.echo2.app.table.LightweightTableCellRenderer
+     */
+    public boolean isLightweight() {
+        if (!valid) {
+            validate();
+        }
+        return lightweight;
+    }
+    
     /**
      * Determines if rollover effects are enabled.
      * 
@@ -565,6 +900,23 @@ public class Table extends Component {
         return value == null ? false : value.booleanValue();
     }
 
+    /**
+     * Determines whether the cell components of any column depend on the 
+     * row index of the cell, i.e., whether any column is rendered by a 
+     * <code>RowIndexDependentTableCellRenderer</code>.
+     * 
+     * @return true if any column's cell components depend on the row index
+     */
+    private boolean isRowIndexDependent() {
+        int columnCount = columnModel.getColumnCount();
+        for (int columnIndex = 0; columnIndex < columnCount; ++columnIndex) {
+            if (getColumnRenderer(columnModel.getColumn(columnIndex)) instanceof RowIndexDependentTableCellRenderer) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
     /**
      * Determines if selection is enabled.
      * 
@@ -575,6 +927,27 @@ public class Table extends Component {
         return value == null ? false : value.booleanValue();
     }
     
+    /**
+     * Adds a cell component which has been removed from the table to the 
+     * cell component pool, if the pool exists and the renderer which created
+     * the component is capable of recycling it.
+     * 
+     * @param renderer the <code>TableCellRenderer</code> which created the
+     *        component
+     * @param component the removed component
+     */
+    private void poolCellComponent(TableCellRenderer renderer, Component component) {
+        if (cellComponentPool == null || !(renderer instanceof RecyclingTableCellRenderer)) {
+            return;
+        }
+        List components = (List) cellComponentPool.get(renderer);
+        if (components == null) {
+            components = new ArrayList();
+            cellComponentPool.put(renderer, components);
+        }
+        components.add(component);
+    }
+    
     /**
      * @see nextapp.echo2.app.Component#processInput(java.lang.String, java.lang.Object)
      */
@@ -582,11 +955,226 @@ public class Table extends Component {
         super.processInput(inputName, inputValue);
         if (inputName.equals(SELECTION_CHANGED_PROPERTY)) {
             setSelectedIndices((int[]) inputValue);
+        } else if (FIRST_VISIBLE_ROW_CHANGED_PROPERTY.equals(inputName)) {
+            setFirstVisibleRow(((Integer) inputValue).intValue());
         } else if (INPUT_ACTION.equals(inputName)) {
             fireActionEvent();
         }
     }
     
+    /**
+     * Applies an <code>INSERT</code>, <code>DELETE</code>, or 
+     * <code>UPDATE</code> <code>TableModelEvent</code> to the rendered cell
+     * components, such that only the components of the affected rendered rows
+     * are added, removed, or replaced.  Every cell component of a replaced row 
+     * is replaced, as rows are the unit of client-side updates.  
+     * <p>
+     * The indices of the rows following inserted or deleted rows change.
+     * The cell components of those rows are retained (the client renumbers
+     * the rows), unless a column is rendered by a 
+     * <code>RowIndexDependentTableCellRenderer</code>, in which case they are
+     * replaced as well, such that every cell component is rendered with its
+     * current row index.  The table is invalidated rather than replacing a 
+     * number of such rows far exceeding the number of inserted or deleted 
+     * rows.  The table is also invalidated in the event that the change 
+     * cannot be applied incrementally, e.g., if the event describes the 
+     * header row or an unbounded range of rows, or if the cell components are
+     * not consistent with the state of the model prior to the change.
+     * <p>
+     * Rows inserted or deleted before the first visible row of a table with
+     * a viewport shift the viewport, such that the visible rows remain
+     * visible.
+     * 
+     * @param e the <code>TableModelEvent</code>
+     */
+    private void processRowChange(TableModelEvent e) {
+        if (!valid || !rowsRendered || lightweight) {
+            invalidate();
+            return;
+        }
+        
+        int firstRow = e.getFirstRow();
+        int lastRow = e.getLastRow();
+        int rowCount = model.getRowCount();
+        int columnCount = columnModel.getColumnCount();
+        if (firstRow < 0 || lastRow < firstRow || columnCount == 0) {
+            invalidate();
+            return;
+        }
+        
+        int type = e.getType();
+        long previousRowCount;
+        switch (type) {
+        case TableModelEvent.INSERT:
+            if (lastRow >= rowCount) {
+                invalidate();
+                return;
+            }
+            previousRowCount = rowCount - (lastRow - firstRow + 1L);
+            break;
+        case TableModelEvent.DELETE:
+            if (firstRow > rowCount) {
+                invalidate();
+                return;
+            }
+            previousRowCount = rowCount + (lastRow - firstRow + 1L);
+            break;
+        case TableModelEvent.UPDATE:
+            if (lastRow >= rowCount) {
+                invalidate();
+                return;
+            }
+            previousRowCount = rowCount;
+            break;
+        default:
+            invalidate();
+            return;
+        }
+        
+        int headerCellCount = isHeaderVisible() ? columnCount : 0;
+        if (getComponentCount() != headerCellCount + renderedRowCount * columnCount
+                || renderedRowStart + renderedRowCount > previousRowCount
+                || (viewportRowCount == 0 && renderedRowCount != previousRowCount)) {
+            invalidate();
+            return;
+        }
+        
+        int count = lastRow - firstRow + 1;
+        int renderedRowEnd = renderedRowStart + renderedRowCount;
+        
+        // Determine the number of rendered rows whose indices change, which follow the inserted or deleted rows.
+        int renumberedCount = 0;
+        switch (type) {
+        case TableModelEvent.INSERT:
+            renumberedCount = renderedRowEnd - Math.max(firstRow, renderedRowStart);
+            if (firstRow < firstVisibleRow) {
+                firstVisibleRow += count;
+            }
+            break;
+        case TableModelEvent.DELETE:
+            renumberedCount = renderedRowEnd - Math.max(lastRow + 1, renderedRowStart);
+            if (firstRow < firstVisibleRow) {
+                firstVisibleRow -= Math.min(lastRow + 1, firstVisibleRow) - firstRow;
+            }
+            break;
+        }
+        if (renumberedCount < 0 || !isRowIndexDependent()) {
+            renumberedCount = 0;
+        } else if (renumberedCount > (long) MAXIMUM_RENUMBERED_ROW_RATIO * count) {
+            invalidate();
+            return;
+        }
+        
+        if (cellRecyclingEnabled) {
+            cellComponentPool = new HashMap();
+        }
+        switch (type) {
+        case TableModelEvent.INSERT:
+            if (firstRow < renderedRowStart) {
+                renderedRowStart += count;
+            } else if (firstRow < renderedRowEnd) {
+                addRenderedRows(firstRow - renderedRowStart, firstRow, count);
+            }
+            replaceRenderedRows(renderedRowCount - renumberedCount, renumberedCount);
+            break;
+        case TableModelEvent.DELETE:
+            int removeStart = Math.max(firstRow, renderedRowStart);
+            int removeEnd = Math.min(lastRow + 1, renderedRowEnd);
+            if (removeStart < removeEnd) {
+                removeRenderedRows(removeStart - renderedRowStart, removeEnd - removeStart);
+            }
+            if (firstRow < renderedRowStart) {
+                renderedRowStart -= Math.min(lastRow + 1, renderedRowStart) - firstRow;
+            }
+            replaceRenderedRows(renderedRowCount - renumberedCount, renumberedCount);
+            break;
+        case TableModelEvent.UPDATE:
+            int replaceStart = Math.max(firstRow, renderedRowStart);
+            int replaceEnd = Math.min(lastRow + 1, renderedRowEnd);
+            if (replaceStart < replaceEnd) {
+                replaceRenderedRows(replaceStart - renderedRowStart, replaceEnd - replaceStart);
+            }
+            break;
+        }
+        
+        updateRenderedRows();
+        cellComponentPool = null;
+        if (viewportRowCount > 0) {
+            firePropertyChange(RENDERED_ROWS_CHANGED_PROPERTY, null, null);
+        }
+    }
+    
+    /**
+     * Reconfigures an existing cell component to display the specified row 
+     * of a column, if the renderer supports recycling.
+     * 
+     * @param component the cell component
+     * @param tableColumn the <code>TableColumn</code>
+     * @param renderer the <code>TableCellRenderer</code> of the column
+     * @param rowIndex the row index, or <code>HEADER_ROW</code>
+     * @return true if the component was recycled
+     */
+    private boolean recycleCellComponent(Component component, TableColumn tableColumn, TableCellRenderer renderer, 
+            int rowIndex) {
+        if (!(renderer instanceof RecyclingTableCellRenderer)) {
+            return false;
+        }
+        return ((RecyclingTableCellRenderer) renderer).recycleTableCellRendererComponent(this, component, 
+                getCellValue(tableColumn, rowIndex), tableColumn.getModelIndex(), rowIndex);
+    }
+    
+    /**
+     * Updates the cell component at the specified child index to display the
+     * specified row of a column.  The existing component is recycled in place
+     * if it was created by the same renderer, otherwise it is replaced.
+     * 
+     * @param componentIndex the child index of the cell component
+     * @param previousRenderer the <code>TableCellRenderer</code> which 
+     *        created the existing component
+     * @param tableColumn the <code>TableColumn</code>
+     * @param renderer the <code>TableCellRenderer</code> of the column
+     * @param rowIndex the row index, or <code>HEADER_ROW</code>
+     */
+    private void refreshCellComponent(int componentIndex, TableCellRenderer previousRenderer, TableColumn tableColumn, 
+            TableCellRenderer renderer, int rowIndex) {
+        Component component = getComponent(componentIndex);
+        if (previousRenderer == renderer) {
+            if (recycleCellComponent(component, tableColumn, renderer, rowIndex)) {
+                return;
+            }
+            remove(componentIndex);
+        } else {
+            remove(componentIndex);
+            poolCellComponent(previousRenderer, component);
+        }
+        add(createCellComponent(tableColumn, renderer, rowIndex), componentIndex);
+    }
+    
+    /**
+     * Refreshes a range of rendered rows.
+     * 
+     * @param index the index within the rendered rows of the first row 
+     *        to refresh
+     * @param count the number of rows to refresh
+     */
+    private void refreshRenderedRows(int index, int count) {
+        int columnCount = columnModel.getColumnCount();
+        TableColumn[] tableColumns = new TableColumn[columnCount];
+        TableCellRenderer[] columnRenderers = new TableCellRenderer[columnCount];
+        for (int columnIndex = 0; columnIndex < columnCount; ++columnIndex) {
+            tableColumns[columnIndex] = columnModel.getColumn(columnIndex);
+            columnRenderers[columnIndex] = getColumnRenderer(tableColumns[columnIndex]);
+        }
+        
+        int componentIndex = (isHeaderVisible() ? columnCount : 0) + index * columnCount;
+        for (int rowIndex = renderedRowStart + index; rowIndex < renderedRowStart + index + count; ++rowIndex) {
+            for (int columnIndex = 0; columnIndex < columnCount; ++columnIndex) {
+                refreshCellComponent(componentIndex++, renderedColumnRenderers[columnIndex], tableColumns[columnIndex], 
+                        columnRenderers[columnIndex], rowIndex);
+            }
+        }
+    }
+    
     /**
      * Removes an <code>ActionListener</code> from the <code>Table</code>.
      * <code>ActionListener</code>s will be invoked when the user
@@ -604,6 +1192,49 @@ public class Table extends Component {
         firePropertyChange(ACTION_LISTENERS_CHANGED_PROPERTY, l, null);
     }
     
+    /**
+     * Removes the cell components of a range of rendered rows.
+     * 
+     * @param index the index within the rendered rows of the first row 
+     *        to remove
+     * @param count the number of rows to remove
+     */
+    private void removeRenderedRows(int index, int count) {
+        if (lightweight) {
+            renderedRowCount -= count;
+            return;
+        }
+        int columnCount = columnModel.getColumnCount();
+        int componentIndex = (isHeaderVisible() ? columnCount : 0) + index * columnCount;
+        for (int i = 0; i < count * columnCount; ++i) {
+            Component component = getComponent(componentIndex);
+            remove(componentIndex);
+            poolCellComponent(renderedColumnRenderers[i % columnCount], component);
+        }
+        renderedRowCount -= count;
+    }
+    
+    /**
+     * Replaces the cell components of a range of rendered rows with 
+     * components rendered from the current state of the model.  The 
+     * existing components are recycled if cell recycling is enabled.
+     * 
+     * @param index the index within the rendered rows of the first row 
+     *        to replace
+     * @param count the number of rows to replace
+     */
+    private void replaceRenderedRows(int index, int count) {
+        if (count <= 0) {
+            return;
+        }
+        if (cellRecyclingEnabled) {
+            refreshRenderedRows(index, count);
+        } else {
+            removeRenderedRows(index, count);
+            addRenderedRows(index, renderedRowStart + index, count);
+        }
+    }
+    
     /**
      * Sets the action command which will be provided in
      * <code>ActionEvent</code>s fired by this 
@@ -634,6 +1265,24 @@ public class Table extends Component {
         firePropertyChange(AUTO_CREATE_COLUMNS_FROM_MODEL_CHANGED_PROPERTY, 
                 Boolean.valueOf(oldValue), Boolean.valueOf(newValue));
     }
+    
+    /**
+     * Sets whether cell recycling is enabled.  When enabled, cell components
+     * created by <code>RecyclingTableCellRenderer</code>s are reconfigured 
+     * to display new values when the table is re-rendered, e.g., after the
+     * model has been sorted, rather than being replaced by new components.
+     * Unchanged cells thus retain their components (and render ids), and
+     * components of removed rows are reused for added rows.
+     * Cell recycling is disabled by default.
+     * 
+     * @param newValue true if cell recycling should be enabled
+     * @see nextapp.echo2.app.table.RecyclingTableCellRenderer
+     */
+    public void setCellRecyclingEnabled(boolean newValue) {
+        boolean oldValue = cellRecyclingEnabled;
+        cellRecyclingEnabled = newValue;
+        firePropertyChange(CELL_RECYCLING_ENABLED_CHANGED_PROPERTY, Boolean.valueOf(oldValue), Boolean.valueOf(newValue));
+    }
 
     /**
      * Sets the <code>Border</code>.
@@ -699,6 +1348,35 @@ public class Table extends Component {
         firePropertyChange(DEFAULT_RENDERER_CHANGED_PROPERTY, null, null);
     }
     
+    /**
+     * Sets the index of the first row visible in the viewport, scrolling
+     * the viewport of a table with a viewport.  Rendered rows are added and
+     * removed as necessary to cover the new viewport position.
+     * 
+     * @param newValue the new first visible row
+     * @see #setViewportRowCount(int)
+     */
+    public void setFirstVisibleRow(int newValue) {
+        if (newValue < 0) {
+            throw new IllegalArgumentException("First visible row may not be negative.");
+        }
+        int oldValue = firstVisibleRow;
+        firstVisibleRow = newValue;
+        if (valid && rowsRendered && viewportRowCount > 0) {
+            int oldRenderedRowStart = renderedRowStart;
+            int oldRenderedRowCount = renderedRowCount;
+            if (cellRecyclingEnabled) {
+                cellComponentPool = new HashMap();
+            }
+            updateRenderedRows();
+            cellComponentPool = null;
+            if (lightweight && (renderedRowStart != oldRenderedRowStart || renderedRowCount != oldRenderedRowCount)) {
+                firePropertyChange(RENDERED_ROWS_CHANGED_PROPERTY, null, null);
+            }
+        }
+        firePropertyChange(FIRST_VISIBLE_ROW_CHANGED_PROPERTY, new Integer(oldValue), new Integer(newValue));
+    }
+    
     /**
      * Sets the visibility state of the table header.
      * 
@@ -746,6 +1424,24 @@ public class Table extends Component {
         firePropertyChange(MODEL_CHANGED_PROPERTY, oldValue, newValue);
     }
     
+    /**
+     * Sets the number of rows rendered beyond each edge of the viewport,
+     * such that small scroll movements do not require rows to be retrieved 
+     * from the server.
+     * 
+     * @param newValue the new overscan row count
+     * @see #setViewportRowCount(int)
+     */
+    public void setOverscanRowCount(int newValue) {
+        if (newValue < 0) {
+            throw new IllegalArgumentException("Overscan row count may not be negative.");
+        }
+        invalidate();
+        int oldValue = overscanRowCount;
+        overscanRowCount = newValue;
+        firePropertyChange(OVERSCAN_ROW_COUNT_CHANGED_PROPERTY, new Integer(oldValue), new Integer(newValue));
+    }
+    
     /**
      * Sets the rollover background color displayed when the mouse is within
      * the bounds of a row.
@@ -879,6 +1575,38 @@ public class Table extends Component {
         firePropertyChange(SELECTION_MODEL_CHANGED_PROPERTY, oldValue, newValue);
     }
     
+    /**
+     * Sets the height of the viewport of a table with a viewport.
+     * This property only supports <code>Extent</code>s with fixed 
+     * (i.e., not percent) units.  If unset, the viewport is sized
+     * to display <code>viewportRowCount</code> rows.
+     * 
+     * @param newValue the new height
+     */
+    public void setViewportHeight(Extent newValue) {
+        setProperty(PROPERTY_VIEWPORT_HEIGHT, newValue);
+    }
+    
+    /**
+     * Sets the number of rows visible in the viewport.  A table with a 
+     * viewport is rendered in a scrollable region, and only the rows visible
+     * in the viewport (plus <code>overscanRowCount</code> rows beyond each 
+     * edge) have cell components and are sent to the client, additional rows
+     * being retrieved as the viewport is scrolled.  A value of zero (the 
+     * default) disables the viewport, rendering every row of the model.
+     * 
+     * @param newValue the new viewport row count
+     */
+    public void setViewportRowCount(int newValue) {
+        if (newValue < 0) {
+            throw new IllegalArgumentException("Viewport row count may not be negative.");
+        }
+        invalidate();
+        int oldValue = viewportRowCount;
+        viewportRowCount = newValue;
+        firePropertyChange(VIEWPORT_ROW_COUNT_CHANGED_PROPERTY, new Integer(oldValue), new Integer(newValue));
+    }
+    
     /**
      * Sets the overall width of the grid.
      * This property supports <code>Extent</code>s with
@@ -890,6 +1618,42 @@ public class Table extends Component {
         setProperty(PROPERTY_WIDTH, newValue);
     }
     
+    /**
+     * Adds and removes rendered rows such that the rendered rows cover the 
+     * viewport plus the overscan rows beyond each of its edges, or all rows
+     * of the model if the table does not have a viewport.
+     */
+    private void updateRenderedRows() {
+        int[] range = calculateRenderedRowRange();
+        int start = range[0];
+        int end = range[1];
+        
+        // Remove rows outside of the range first, such that their components may be recycled for added rows.
+        if (start >= renderedRowStart + renderedRowCount || end <= renderedRowStart) {
+            removeRenderedRows(0, renderedRowCount);
+            renderedRowStart = start;
+        } else {
+            int renderedRowEnd = renderedRowStart + renderedRowCount;
+            if (end < renderedRowEnd) {
+                removeRenderedRows(end - renderedRowStart, renderedRowEnd - end);
+            }
+            if (start > renderedRowStart) {
+                removeRenderedRows(0, start - renderedRowStart);
+                renderedRowStart = start;
+            }
+        }
+        
+        // Add rows at leading and trailing edges.
+        if (start < renderedRowStart) {
+            addRenderedRows(0, start, renderedRowStart - start);
+            renderedRowStart = start;
+        }
+        int renderedRowEnd = renderedRowStart + renderedRowCount;
+        if (end > renderedRowEnd) {
+            addRenderedRows(renderedRowCount, renderedRowEnd, end - renderedRowEnd);
+        }
+    }
+    
     /**
      * @see nextapp.echo2.app.Component#validate()
      */
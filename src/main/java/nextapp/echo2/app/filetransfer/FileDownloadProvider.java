@@ -0,0 +1,159 @@
+/* 
+ * This file is part of the Echo Web Application Framework (hereinafter "Echo").
+ * Copyright (C) 2002-2009 NextApp, Inc.
+ *
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ */
+
+
+package nextapp.echo2.app.filetransfer;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * A download provider that allows the download of a file from the server's
+ * file system.  File data is transferred using 
+ * <code>FileChannel.transferTo()</code>, and byte ranges are supported.
+ */
+public class FileDownloadProvider extends AbstractDownloadProvider 
+implements RangeDownloadProvider {
+    
+    private File file;
+    private String contentType;
+    private String fileName;
+    
+    /**
+     * Creates a new <code>FileDownloadProvider</code> to download the 
+     * specified file.  The name of the file will be provided to the client.
+     * 
+     * @param file the file to download
+     * @param contentType the content type of the file
+     */
+    public FileDownloadProvider(File file, String contentType) {
+        this(file, contentType, file.getName());
+    }
+    
+    /**
+     * Creates a new <code>FileDownloadProvider</code> to download the 
+     * specified file.
+     * 
+     * @param file the file to download
+     * @param contentType the content type of the file
+     * @param fileName the file name to provide to the client, or null
+     */
+    public FileDownloadProvider(File file, String contentType, String fileName) {
+        super();
+        this.file = file;
+        this.contentType = contentType;
+        this.fileName = fileName;
+    }
+
+    /**
+     * @see nextapp.echo2.app.filetransfer.DownloadProvider#getContentType()
+     */
+    public String getContentType() {
+        return contentType;
+    }
+    
+    /**
+     * Returns the file being downloaded.
+     * 
+     * @return the file
+     */
+    public File getFile() {
+        return file;
+    }
+    
+    /**
+     * @see nextapp.echo2.app.filetransfer.DownloadProvider#getFileName()
+     */
+    public String getFileName() {
+        return fileName;
+    }
+    
+    /**
+     * @see nextapp.echo2.app.filetransfer.RangeDownloadProvider#getLastModified()
+     */
+    public long getLastModified() {
+        long lastModified = file.lastModified();
+        return lastModified == 0 ? -1 : lastModified;
+    }
+    
+    /**
+     * @see nextapp.echo2.app.filetransfer.RangeDownloadProvider#getLength()
+     */
+    public long getLength() {
+        return file.isFile() ? file.length() : -1;
+    }
+    
+    /**
+     * Returns the length of the file, or -1 if the file is too large for
+     * its length to be represented as an <code>int</code>.
+     * 
+     * @see nextapp.echo2.app.filetransfer.DownloadProvider#getSize()
+     */
+    public int getSize() {
+        long length = getLength();
+        return length > Integer.MAX_VALUE ? -1 : (int) length;
+    }
+
+    /**
+     * @see nextapp.echo2.app.filetransfer.DownloadProvider#writeFile(java.io.OutputStream)
+     */
+    public void writeFile(OutputStream out) 
+    throws IOException {
+        writeFile(out, 0, Long.MAX_VALUE);
+    }
+    
+    /**
+     * @see nextapp.echo2.app.filetransfer.RangeDownloadProvider#writeFile(java.io.OutputStream, long, long)
+     */
+    public void writeFile(OutputStream out, long offset, long length) 
+    throws IOException {
+        FileInputStream in = new FileInputStream(file);
+        try {
+            FileChannel fileChannel = in.getChannel();
+            WritableByteChannel outChannel = Channels.newChannel(out);
+            long end = Math.min(fileChannel.size(), length > Long.MAX_VALUE - offset ? Long.MAX_VALUE : offset + length);
+            long position = offset;
+            while (position < end) {
+                long transferred = fileChannel.transferTo(position, end - position, outChannel);
+                if (transferred <= 0) {
+                    // File truncated during transfer.
+                    break;
+                }
+                position += transferred;
+            }
+        } finally {
+            try { in.close(); } catch (IOException ex) { }
+        }
+    }
+}
@@ -0,0 +1,71 @@
+/* 
+ * This file is part of the Echo Web Application Framework (hereinafter "Echo").
+ * Copyright (C) 2002-2009 NextApp, Inc.
+ *
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ */
+
+
+package nextapp.echo2.app.filetransfer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A <code>DownloadProvider</code> which can write arbitrary byte ranges of
+ * its file, allowing clients to resume interrupted downloads.
+ */
+public interface RangeDownloadProvider 
+extends DownloadProvider {
+    
+    /**
+     * Returns the length of the file, in bytes.  Unlike 
+     * <code>getSize()</code>, the length is not limited to the range of an
+     * <code>int</code>.  Ranges will only be served if the length is known.
+     * 
+     * @return the length of the file, or -1 if it is unknown
+     */
+    public long getLength();
+    
+    /**
+     * Returns the time at which the file was last modified, used to 
+     * determine whether a client's partial copy of the file is current.
+     * 
+     * @return the modification time, in milliseconds since the epoch, or -1
+     *         if it is unknown
+     */
+    public long getLastModified();
+    
+    /**
+     * Writes a range of the file to the specified output stream.
+     * 
+     * @param out the output stream to which the range should be written
+     * @param offset the offset of the first byte of the range
+     * @param length the number of bytes in the range
+     * @throws IOException if the provider is unable to perform this operation
+     */
+    public void writeFile(OutputStream out, long offset, long length)
+    throws IOException;
+}
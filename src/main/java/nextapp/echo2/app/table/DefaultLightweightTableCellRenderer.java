@@ -0,0 +1,100 @@
+/* 
+ * This file is part of the Echo Web Application Framework (hereinafter "Echo").
+ * Copyright (C) 2002-2009 NextApp, Inc.
+ *
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ */
+
+
+package nextapp.echo2.app.table;
+
+import nextapp.echo2.app.Component;
+import nextapp.echo2.app.Label;
+import nextapp.echo2.app.Style;
+import nextapp.echo2.app.Table;
+
+/**
+ * Default <code>LightweightTableCellRenderer</code> implementation, which 
+ * renders the toString() value of the model value with a single shared 
+ * <code>Style</code>.
+ */
+public class DefaultLightweightTableCellRenderer 
+implements LightweightTableCellRenderer {
+    
+    private Style style;
+    
+    /**
+     * Creates a new <code>DefaultLightweightTableCellRenderer</code> which
+     * renders cells with the default style of the table.
+     */
+    public DefaultLightweightTableCellRenderer() {
+        this(null);
+    }
+    
+    /**
+     * Creates a new <code>DefaultLightweightTableCellRenderer</code>.
+     * 
+     * @param style the <code>Style</code> with which to render all cells
+     * @see LightweightTableCellRenderer#getTableCellStyle(nextapp.echo2.app.Table, java.lang.Object, int, int)
+     */
+    public DefaultLightweightTableCellRenderer(Style style) {
+        super();
+        this.style = style;
+    }
+
+    /**
+     * Returns a <code>Label</code> containing the toString() value of the 
+     * model value, configured with the style of the renderer.
+     * 
+     * @see nextapp.echo2.app.table.TableCellRenderer#getTableCellRendererComponent(nextapp.echo2.app.Table, java.lang.Object, int,
+     *      int)
+     */
+    public Component getTableCellRendererComponent(Table table, Object value, int column, int row) {
+        Label label = new Label(getTableCellText(table, value, column, row));
+        label.setStyle(getTableCellStyle(table, value, column, row));
+        return label;
+    }
+    
+    /**
+     * Returns the <code>Style</code> provided to the constructor.
+     * 
+     * @see nextapp.echo2.app.table.LightweightTableCellRenderer#getTableCellStyle(nextapp.echo2.app.Table, java.lang.Object, 
+     *      int, int)
+     */
+    public Style getTableCellStyle(Table table, Object value, int column, int row) {
+        return style;
+    }
+
+    /**
+     * Returns the toString() value of the model value, or null in the event
+     * the model value is null.
+     * 
+     * @see nextapp.echo2.app.table.LightweightTableCellRenderer#getTableCellText(nextapp.echo2.app.Table, java.lang.Object, 
+     *      int, int)
+     */
+    public String getTableCellText(Table table, Object value, int column, int row) {
+        return value == null ? null : value.toString();
+    }
+}
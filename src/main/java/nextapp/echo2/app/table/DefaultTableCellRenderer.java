@@ -37,7 +37,7 @@ import nextapp.echo2.app.Table;
  * Default <code>TableCellRenderer</code> implementation.
  */
 public class DefaultTableCellRenderer 
-implements TableCellRenderer {
+implements RecyclingTableCellRenderer {
 
     /**
      * Returns a <code>Label</code> containing the toString() value of the model value. Returns null in the event the model value is
@@ -53,4 +53,20 @@ implements TableCellRenderer {
             return new Label(value.toString());
         }
     }
+
+    /**
+     * Updates the text of a <code>Label</code> to the toString() value of the
+     * model value.  Components are only recycled by this class itself, as
+     * derived classes may configure the returned components further.
+     * 
+     * @see nextapp.echo2.app.table.RecyclingTableCellRenderer#recycleTableCellRendererComponent(nextapp.echo2.app.Table, 
+     *      nextapp.echo2.app.Component, java.lang.Object, int, int)
+     */
+    public boolean recycleTableCellRendererComponent(Table table, Component component, Object value, int column, int row) {
+        if (getClass() != DefaultTableCellRenderer.class || !(component instanceof Label)) {
+            return false;
+        }
+        ((Label) component).setText(value == null ? null : value.toString());
+        return true;
+    }
 }
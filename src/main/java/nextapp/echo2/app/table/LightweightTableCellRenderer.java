@@ -0,0 +1,87 @@
+/* 
+ * This file is part of the Echo Web Application Framework (hereinafter "Echo").
+ * Copyright (C) 2002-2009 NextApp, Inc.
+ *
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ */
+
+
+package nextapp.echo2.app.table;
+
+import nextapp.echo2.app.Style;
+import nextapp.echo2.app.Table;
+
+/**
+ * A <code>TableCellRenderer</code> which is capable of describing a cell
+ * by text and a (typically shared) <code>Style</code> rather than by a
+ * <code>Component</code>.
+ * <p>
+ * If the cells of all columns of a <code>Table</code> are rendered by 
+ * <code>LightweightTableCellRenderer</code>s, the table creates no components
+ * for the cells of its rows; the text and styles of the cells are instead
+ * retrieved and rendered directly by the table's rendering peer.  Such
+ * tables do not support incremental row updates, i.e., any change to their
+ * rows will result in the rendered rows being re-rendered.  In all other 
+ * cases, <code>getTableCellRendererComponent()</code> is used.
+ */
+public interface LightweightTableCellRenderer 
+extends TableCellRenderer {
+
+    /**
+     * Returns the style of the cell at the specified coordinate in the table.
+     * The following properties of the style are rendered:
+     * <ul>
+     *  <li><code>Component.PROPERTY_BACKGROUND</code></li>
+     *  <li><code>Component.PROPERTY_FOREGROUND</code></li>
+     *  <li><code>Component.PROPERTY_FONT</code></li>
+     *  <li><code>Component.PROPERTY_LAYOUT_DATA</code> (a 
+     *      <code>TableLayoutData</code>, whose background image is not 
+     *      rendered)</li>
+     * </ul>
+     * Returning the same <code>Style</code> instance for many cells allows
+     * the rendered style to be reused.
+     * 
+     * @param table the <code>Table</code> for which the rendering is occurring
+     * @param value the value retrieved from the <code>TableModel</code> for the
+     *        specified coordinate
+     * @param column the column index to render
+     * @param row the row index to render
+     * @return the style, or null to use the default style of the table
+     */
+    public Style getTableCellStyle(Table table, Object value, int column, int row);
+    
+    /**
+     * Returns the text to be displayed at the specified coordinate in the 
+     * table.
+     * 
+     * @param table the <code>Table</code> for which the rendering is occurring
+     * @param value the value retrieved from the <code>TableModel</code> for the
+     *        specified coordinate
+     * @param column the column index to render
+     * @param row the row index to render
+     * @return the text (null to display an empty cell)
+     */
+    public String getTableCellText(Table table, Object value, int column, int row);
+}
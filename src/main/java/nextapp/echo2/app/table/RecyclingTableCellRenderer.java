@@ -0,0 +1,68 @@
+/* 
+ * This file is part of the Echo Web Application Framework (hereinafter "Echo").
+ * Copyright (C) 2002-2009 NextApp, Inc.
+ *
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ */
+
+
+package nextapp.echo2.app.table;
+
+import nextapp.echo2.app.Component;
+import nextapp.echo2.app.Table;
+
+/**
+ * A <code>TableCellRenderer</code> which is capable of reconfiguring a
+ * component it previously rendered to represent a different value.
+ * Such renderers are used by <code>Table</code>s with cell recycling enabled
+ * to reuse existing cell components rather than creating new components
+ * whenever the table is re-rendered.
+ * 
+ * @see nextapp.echo2.app.Table#setCellRecyclingEnabled(boolean)
+ */
+public interface RecyclingTableCellRenderer
+extends TableCellRenderer {
+    
+    /**
+     * Reconfigures a component to be displayed at the specified coordinate
+     * in the table.  The component will have been returned by a previous
+     * invocation of <code>getTableCellRendererComponent()</code> on this
+     * renderer, or will be the <code>Label</code> that the table creates 
+     * in the event the renderer returns null.  The component must be
+     * configured exactly as <code>getTableCellRendererComponent()</code> 
+     * would configure a new component for the same value.
+     *
+     * @param table the <code>Table</code> for which the rendering is occurring
+     * @param component the component to reconfigure
+     * @param value the value retrieved from the <code>TableModel</code> for the
+     *        specified coordinate
+     * @param column the column index to render
+     * @param row the row index to render
+     * @return true if the component was reconfigured, or false if it cannot
+     *         represent the value (in which case the table will request a new
+     *         component from <code>getTableCellRendererComponent()</code>)
+     */
+    public boolean recycleTableCellRendererComponent(Table table, Component component, Object value, int column, int row);
+}
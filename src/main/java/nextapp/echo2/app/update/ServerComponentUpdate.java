@@ -63,6 +63,12 @@ implements Serializable {
      */
     private Component parent;
     
+    /**
+     * The depth of the parent component in the hierarchy, as recorded by the
+     * <code>ServerUpdateManager</code> to order updates.
+     */
+    int depth;
+    
     /**
      * A mapping between property names of the <code>parent</code> component and 
      * <code>PropertyUpdate</code>s.
@@ -31,12 +31,13 @@ package nextapp.echo2.app.update;
 
 import java.io.Serializable;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collection;
-import java.util.Comparator;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.Set;
 
 import nextapp.echo2.app.ApplicationInstance;
 import nextapp.echo2.app.Command;
@@ -49,45 +50,30 @@ import nextapp.echo2.app.Component;
 public class ServerUpdateManager
 implements Serializable {
 
-    /**
-     * <code>Comparator</code> to sort components by their depth in the 
-     * hierarchy.
-     */
-    private static final Comparator hierarchyDepthUpdateComparator = new Comparator() {
-
-        /**
-         * @see java.util.Comparator#compare(java.lang.Object, java.lang.Object)
-         */
-        public int compare(Object a, Object b) {
-            return getDepth(((ServerComponentUpdate) a).getParent()) - getDepth(((ServerComponentUpdate) b).getParent());
-        }
-        
-        /**
-         * @see java.lang.Object#equals(java.lang.Object)
-         */
-        public boolean equals(Object o) {
-            return false;
-        }
-        
-        /**
-         * Returns the depth of the specified component in the hierarchy.
-         * 
-         * @param component the component
-         * @return the depth
-         */
-        private int getDepth(Component component) {
-            int count = 0;
-            while (component != null) {
-                component = component.getParent();
-                ++count;
-            }
-            return count;
-        }
-    };
-    
     private Map applicationUpdateMap;
     private ArrayList commands;
     private Map componentUpdateMap;
+    
+    /**
+     * The pending <code>ServerComponentUpdate</code>s ordered by depth, or
+     * null if the updates have changed since they were last ordered.
+     */
+    private ServerComponentUpdate[] componentUpdates;
+    
+    /**
+     * Index of the components which have pending updates, mapping each 
+     * component in the hierarchy to a <code>Set</code> of those components
+     * with updates of which it is an ancestor (or which it is itself).
+     * Components which have no updated descendants are not contained.
+     */
+    private Map updatedDescendantMap;
+    
+    /**
+     * The <code>Set</code> of all components which have been added as
+     * children by pending updates.
+     */
+    private Set addedComponents;
+    
     private ServerComponentUpdate fullRefreshUpdate;
     private ClientUpdateManager clientUpdateManager;
     private ApplicationInstance applicationInstance;
@@ -107,9 +93,31 @@ implements Serializable {
         applicationUpdateMap = new HashMap();
         commands = new ArrayList();
         componentUpdateMap = new HashMap();
+        updatedDescendantMap = new HashMap();
+        addedComponents = new HashSet();
         fullRefreshUpdate = new ServerComponentUpdate(null);
     }
     
+    /**
+     * Adds a set of updated components to the index of updated descendants
+     * of the specified component and all of its ancestors.
+     * 
+     * @param component the component
+     * @param updatedComponents the updated components (descendants of 
+     *        <code>component</code>)
+     */
+    private void addUpdatedDescendants(Component component, Collection updatedComponents) {
+        while (component != null) {
+            Set updatedDescendants = (Set) updatedDescendantMap.get(component);
+            if (updatedDescendants == null) {
+                updatedDescendants = new HashSet();
+                updatedDescendantMap.put(component, updatedDescendants);
+            }
+            updatedDescendants.addAll(updatedComponents);
+            component = component.getParent();
+        }
+    }
+    
     /**
      * Creates or retrieves a <code>ComponentUpdate</code> for the given
      * parent component.  If a <code>ComponentUpdate</code> is created, it
@@ -121,12 +129,13 @@ implements Serializable {
      */
     private ServerComponentUpdate createComponentUpdate(Component parent) {
         
-        ServerComponentUpdate update;
-        if (componentUpdateMap.containsKey(parent)) {
-            update = (ServerComponentUpdate) componentUpdateMap.get(parent);
-        } else {
+        ServerComponentUpdate update = (ServerComponentUpdate) componentUpdateMap.get(parent);
+        if (update == null) {
             update = new ServerComponentUpdate(parent);
+            update.depth = getDepth(parent);
             componentUpdateMap.put(parent, update);
+            componentUpdates = null;
+            addUpdatedDescendants(parent, Collections.singleton(parent));
         }
         return update;
     }
@@ -167,19 +176,57 @@ implements Serializable {
      * are NOT removed or modified by this call.  The updates will be returned
      * sorted by depth of their parent components within the hierarchy, but in 
      * otherwise random order.
+     * <p>
+     * The returned array is retained by the manager and returned again by
+     * subsequent invocations until the updates change; it must not be
+     * modified.
      * 
      * @return the updates
      */
     public ServerComponentUpdate[] getComponentUpdates() {
         if (isFullRefreshRequired()) {
             return new ServerComponentUpdate[]{fullRefreshUpdate};
-        } else {
+        }
+        if (componentUpdates == null) {
+            // Order updates by depth using a counting sort over the depths recorded when the updates were created.
             Collection hierarchyUpdates = componentUpdateMap.values();
-            ServerComponentUpdate[] serverComponentUpdates = (ServerComponentUpdate[])
-                     hierarchyUpdates.toArray(new ServerComponentUpdate[hierarchyUpdates.size()]);
-            Arrays.sort(serverComponentUpdates, hierarchyDepthUpdateComparator);
-            return serverComponentUpdates;
+            int maximumDepth = 0;
+            Iterator it = hierarchyUpdates.iterator();
+            while (it.hasNext()) {
+                maximumDepth = Math.max(maximumDepth, ((ServerComponentUpdate) it.next()).depth);
+            }
+            int[] depthIndices = new int[maximumDepth + 2];
+            it = hierarchyUpdates.iterator();
+            while (it.hasNext()) {
+                ++depthIndices[((ServerComponentUpdate) it.next()).depth + 1];
+            }
+            for (int depth = 1; depth < depthIndices.length; ++depth) {
+                depthIndices[depth] += depthIndices[depth - 1];
+            }
+            ServerComponentUpdate[] orderedUpdates = new ServerComponentUpdate[hierarchyUpdates.size()];
+            it = hierarchyUpdates.iterator();
+            while (it.hasNext()) {
+                ServerComponentUpdate update = (ServerComponentUpdate) it.next();
+                orderedUpdates[depthIndices[update.depth]++] = update;
+            }
+            componentUpdates = orderedUpdates;
+        }
+        return componentUpdates;
+    }
+    
+    /**
+     * Returns the depth of the specified component in the hierarchy.
+     * 
+     * @param component the component
+     * @return the depth
+     */
+    private static int getDepth(Component component) {
+        int count = 0;
+        while (component != null) {
+            component = component.getParent();
+            ++count;
         }
+        return count;
     }
     
     /**
@@ -200,17 +247,15 @@ implements Serializable {
      * @return true if an ancestor of the component is being added
      */
     private boolean isAncestorBeingAdded(Component component) {
+        if (addedComponents.isEmpty()) {
+            return false;
+        }
         Component child = component;
-        Component parent = component.getParent();
-        while (parent != null) {
-            ServerComponentUpdate update = (ServerComponentUpdate) componentUpdateMap.get(parent);
-            if (update != null) {
-                if (update.hasAddedChild(child)) {
-                    return true;
-                }
+        while (child.getParent() != null) {
+            if (addedComponents.contains(child)) {
+                return true;
             }
-            child = parent;
-            parent = parent.getParent();
+            child = child.getParent();
         }
         return false;
     }
@@ -258,9 +303,37 @@ implements Serializable {
      * @param child the component which was added to <code>parent</code>
      */
     public void processComponentAdd(Component parent, Component child) {
+        processComponentAdd(parent, child, true);
+    }
+    
+    /**
+     * Processes the addition of a component to the hierarchy, or the change
+     * of the visible state of a component to visible.
+     * 
+     * @param parent a component which currently exists in the hierarchy
+     * @param child the component which was added to <code>parent</code>
+     * @param hierarchyChanged true if <code>child</code> has been added to
+     *        <code>parent</code>, false if it has become visible
+     */
+    private void processComponentAdd(Component parent, Component child, boolean hierarchyChanged) {
         if (isFullRefreshRequired()) {
             return;
         }
+        
+        if (hierarchyChanged) {
+            // Index any updated components within the added hierarchy under their new ancestors.
+            Set updatedDescendants = (Set) updatedDescendantMap.get(child);
+            if (updatedDescendants != null) {
+                addUpdatedDescendants(parent, updatedDescendants);
+                Iterator it = updatedDescendants.iterator();
+                while (it.hasNext()) {
+                    Component updatedComponent = (Component) it.next();
+                    ((ServerComponentUpdate) componentUpdateMap.get(updatedComponent)).depth = getDepth(updatedComponent);
+                }
+                componentUpdates = null;
+            }
+        }
+        
         if (!child.isRenderVisible()) {
             return;
         }
@@ -270,6 +343,7 @@ implements Serializable {
         
         ServerComponentUpdate update = createComponentUpdate(parent);
         update.addChild(child);
+        addedComponents.add(child);
     }
     
     /**
@@ -346,9 +420,29 @@ implements Serializable {
      * @param child the component which was removed from <code>parent</code>
      */
     public void processComponentRemove(Component parent, Component child) {
+        processComponentRemove(parent, child, true);
+    }
+    
+    /**
+     * Processes the removal of a component from the hierarchy, or the change
+     * of the visible state of a component to invisible.
+     * 
+     * @param parent a component which currently exists in the hierarchy
+     * @param child the component which was removed from <code>parent</code>
+     * @param hierarchyChanged true if <code>child</code> has been removed 
+     *        from <code>parent</code>, false if it has become invisible
+     */
+    private void processComponentRemove(Component parent, Component child, boolean hierarchyChanged) {
         if (isFullRefreshRequired()) {
             return;
         }
+        
+        Set updatedDescendants = (Set) updatedDescendantMap.get(child);
+        if (hierarchyChanged && updatedDescendants != null) {
+            // Remove any updated components within the removed hierarchy from the indices of their former ancestors.
+            removeUpdatedDescendants(parent, updatedDescendants);
+        }
+        
         if (!parent.isRenderVisible()) {
             return;
         }
@@ -357,18 +451,44 @@ implements Serializable {
         }
         ServerComponentUpdate update = createComponentUpdate(parent);
         update.removeChild(child);
+        addedComponents.remove(child);
         
-        // Search updated components for descendants of removed component.
+        // Retrieve updated components which are descendants of removed component from index.
         // Any found descendants will be removed and added to this update's 
         // list of removed descendants.
-        Iterator it = componentUpdateMap.keySet().iterator();
-        while (it.hasNext()) {
-            Component testComponent = (Component) it.next();
-            if (child.isAncestorOf(testComponent)) {
-                ServerComponentUpdate childUpdate = (ServerComponentUpdate) componentUpdateMap.get(testComponent);
+        if (updatedDescendants != null) {
+            Component[] testComponents = (Component[]) updatedDescendants.toArray(new Component[updatedDescendants.size()]);
+            for (int i = 0; i < testComponents.length; ++i) {
+                ServerComponentUpdate childUpdate = (ServerComponentUpdate) componentUpdateMap.remove(testComponents[i]);
+                componentUpdates = null;
                 update.appendRemovedDescendants(childUpdate);
-                it.remove();
+                Component[] addedChildren = childUpdate.getAddedChildren();
+                for (int j = 0; j < addedChildren.length; ++j) {
+                    addedComponents.remove(addedChildren[j]);
+                }
+                removeUpdatedDescendants(testComponents[i], Collections.singleton(testComponents[i]));
+            }
+        }
+    }
+    
+    /**
+     * Removes a set of updated components from the index of updated 
+     * descendants of the specified component and all of its ancestors.
+     * 
+     * @param component the component
+     * @param updatedComponents the updated components (descendants of 
+     *        <code>component</code>)
+     */
+    private void removeUpdatedDescendants(Component component, Collection updatedComponents) {
+        while (component != null) {
+            Set updatedDescendants = (Set) updatedDescendantMap.get(component);
+            if (updatedDescendants != null) {
+                updatedDescendants.removeAll(updatedComponents);
+                if (updatedDescendants.isEmpty()) {
+                    updatedDescendantMap.remove(component);
+                }
             }
+            component = component.getParent();
         }
     }
     
@@ -382,9 +502,9 @@ implements Serializable {
     public void processComponentVisibilityUpdate(Component updatedComponent) {
         Component parentComponent = updatedComponent.getParent();
         if (updatedComponent.isVisible()) {
-            processComponentAdd(parentComponent, updatedComponent);
+            processComponentAdd(parentComponent, updatedComponent, false);
         } else {
-            processComponentRemove(parentComponent, updatedComponent);
+            processComponentRemove(parentComponent, updatedComponent, false);
         }
     }
     
@@ -412,6 +532,9 @@ implements Serializable {
             fullRefreshUpdate.appendRemovedDescendants(childUpdate);
             it.remove();
         }
+        updatedDescendantMap.clear();
+        addedComponents.clear();
+        componentUpdates = null;
     }
     
     /**
@@ -422,6 +545,9 @@ implements Serializable {
     void purge() {
         applicationUpdateMap.clear();
         componentUpdateMap.clear();
+        componentUpdates = null;
+        updatedDescendantMap.clear();
+        addedComponents.clear();
         commands.clear();
         fullRefreshUpdate = null;
     }
@@ -30,6 +30,7 @@
 package nextapp.echo2.app.util;
 
 import java.io.IOException;
+import java.lang.ref.WeakReference;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
@@ -48,8 +49,49 @@ import nextapp.echo2.app.util.PropertiesDiscovery;
  */
 public class PeerFactory {
     
+    /**
+     * An entry of <code>objectClassNameToPeerCache</code>, storing the peer
+     * resolved for an object <code>Class</code>.
+     */
+    private static class CacheEntry {
+        
+        /** 
+         * The object <code>Class</code>, weakly referenced such that the 
+         * cache does not prevent the unloading of classes loaded by other
+         * <code>ClassLoader</code>s, e.g., when a web application is 
+         * redeployed.
+         */
+        private final WeakReference objectClassRef;
+        
+        /** The peer, or null if the class has no peer. */
+        private final Object peer;
+        
+        /**
+         * Creates a new <code>CacheEntry</code>.
+         * 
+         * @param objectClass the object class
+         * @param peer the peer, or null if the class has no peer
+         */
+        private CacheEntry(Class objectClass, Object peer) {
+            super();
+            objectClassRef = new WeakReference(objectClass);
+            this.peer = peer;
+        }
+    }
+    
     private final Map objectClassNameToPeerMap = new HashMap();
     
+    /**
+     * Cache mapping object <code>Class</code> names to 
+     * <code>CacheEntry</code>s describing the peers resolved for them by 
+     * searching their superclasses.  The map is never modified once 
+     * published: it is replaced with an updated copy when an entry is added,
+     * such that lookups need not acquire a lock.  As different 
+     * <code>ClassLoader</code>s may load classes of the same name, the 
+     * <code>Class</code> of an entry is verified when the entry is retrieved.
+     */
+    private volatile Map objectClassNameToPeerCache = new HashMap();
+    
     /**
      * Creates a new <code>PeerFactory</code>.
      * 
@@ -95,6 +137,41 @@ public class PeerFactory {
      * @return the relevant peer, or null if none can be found
      */
     public Object getPeerForObject(Class objectClass, boolean searchSuperClasses) {
+        if (!searchSuperClasses) {
+            return objectClassNameToPeerMap.get(objectClass.getName());
+        }
+        
+        CacheEntry entry = (CacheEntry) objectClassNameToPeerCache.get(objectClass.getName());
+        if (entry != null && entry.objectClassRef.get() == objectClass) {
+            return entry.peer;
+        }
+        
+        Object peer = findPeerForObject(objectClass);
+        synchronized (this) {
+            Map cache = new HashMap(objectClassNameToPeerCache);
+            
+            // Discard entries of unloaded classes.
+            Iterator it = cache.values().iterator();
+            while (it.hasNext()) {
+                if (((CacheEntry) it.next()).objectClassRef.get() == null) {
+                    it.remove();
+                }
+            }
+            
+            cache.put(objectClass.getName(), new CacheEntry(objectClass, peer));
+            objectClassNameToPeerCache = cache;
+        }
+        return peer;
+    }
+    
+    /**
+     * Searches the specified object <code>Class</code> and its superclasses
+     * for a peer.
+     * 
+     * @param objectClass the supported object class
+     * @return the relevant peer, or null if none can be found
+     */
+    private Object findPeerForObject(Class objectClass) {
         Object peer = null;
         do {
             peer = objectClassNameToPeerMap.get(objectClass.getName());
@@ -102,7 +179,7 @@ public class PeerFactory {
                 return peer;
             }
             objectClass = objectClass.getSuperclass();
-        } while (searchSuperClasses && objectClass != null);
+        } while (objectClass != null);
         return null;
     }
 }
@@ -52,6 +52,7 @@ import nextapp.echo2.webcontainer.PartialUpdateManager;
 import nextapp.echo2.webcontainer.PartialUpdateParticipant;
 import nextapp.echo2.webcontainer.PropertyUpdateProcessor;
 import nextapp.echo2.webcontainer.RenderContext;
+import nextapp.echo2.webcontainer.RenderProfiler;
 import nextapp.echo2.webcontainer.RenderState;
 import nextapp.echo2.webcontainer.SynchronizePeerFactory;
 import nextapp.echo2.webcontainer.image.ImageRenderSupport;
@@ -393,7 +394,7 @@ implements ComponentSynchronizePeer, ImageRenderSupport, LazyRenderContainer, Pr
      */
     private void renderChild(RenderContext rc, ServerComponentUpdate update, AccordionPane accordionPane, Component child) {
         ComponentSynchronizePeer syncPeer = SynchronizePeerFactory.getPeerForComponent(child.getClass());
-        syncPeer.renderAdd(rc, update, getContainerId(child), child);
+        RenderProfiler.renderAdd(syncPeer, rc, update, getContainerId(child), child);
     }
 
     /**
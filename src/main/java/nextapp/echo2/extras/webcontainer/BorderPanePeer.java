@@ -48,6 +48,7 @@ import nextapp.echo2.webcontainer.ComponentSynchronizePeer;
 import nextapp.echo2.webcontainer.ContainerInstance;
 import nextapp.echo2.webcontainer.DomUpdateSupport;
 import nextapp.echo2.webcontainer.RenderContext;
+import nextapp.echo2.webcontainer.RenderProfiler;
 import nextapp.echo2.webcontainer.SynchronizePeerFactory;
 import nextapp.echo2.webcontainer.image.ImageRenderSupport;
 import nextapp.echo2.webcontainer.propertyrender.ColorRender;
@@ -423,9 +424,9 @@ implements ComponentSynchronizePeer, DomUpdateSupport, ImageRenderSupport {
         if (child != null) {
             ComponentSynchronizePeer syncPeer = SynchronizePeerFactory.getPeerForComponent(child.getClass());
             if (syncPeer instanceof DomUpdateSupport) {
-                ((DomUpdateSupport) syncPeer).renderHtml(rc, update, contentDivElement, child);
+                RenderProfiler.renderHtml((DomUpdateSupport) syncPeer, rc, update, contentDivElement, child);
             } else {
-                syncPeer.renderAdd(rc, update, getContainerId(child), child);
+                RenderProfiler.renderAdd(syncPeer, rc, update, getContainerId(child), child);
             }
         }
     }
@@ -53,6 +53,7 @@ import nextapp.echo2.webcontainer.PartialUpdateManager;
 import nextapp.echo2.webcontainer.PartialUpdateParticipant;
 import nextapp.echo2.webcontainer.PropertyUpdateProcessor;
 import nextapp.echo2.webcontainer.RenderContext;
+import nextapp.echo2.webcontainer.RenderProfiler;
 import nextapp.echo2.webcontainer.RenderState;
 import nextapp.echo2.webcontainer.SynchronizePeerFactory;
 import nextapp.echo2.webcontainer.image.ImageRenderSupport;
@@ -403,7 +404,7 @@ implements ComponentSynchronizePeer, ImageRenderSupport, LazyRenderContainer, Pr
      */
     private void renderChild(RenderContext rc, ServerComponentUpdate update, TabPane tabPane, Component child) {
         ComponentSynchronizePeer syncPeer = SynchronizePeerFactory.getPeerForComponent(child.getClass());
-        syncPeer.renderAdd(rc, update, getContainerId(child), child);
+        RenderProfiler.renderAdd(syncPeer, rc, update, getContainerId(child), child);
     }
 
     /**
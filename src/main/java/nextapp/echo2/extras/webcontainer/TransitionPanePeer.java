@@ -45,6 +45,7 @@ import nextapp.echo2.webcontainer.ContainerInstance;
 import nextapp.echo2.webcontainer.PartialUpdateManager;
 import nextapp.echo2.webcontainer.PartialUpdateParticipant;
 import nextapp.echo2.webcontainer.RenderContext;
+import nextapp.echo2.webcontainer.RenderProfiler;
 import nextapp.echo2.webcontainer.SynchronizePeerFactory;
 import nextapp.echo2.webrender.Connection;
 import nextapp.echo2.webrender.ContentType;
@@ -193,7 +194,7 @@ implements ComponentSynchronizePeer {
         addChildElement.setAttribute("child-id", child.getRenderId());
         
         ComponentSynchronizePeer syncPeer = SynchronizePeerFactory.getPeerForComponent(child.getClass());
-        syncPeer.renderAdd(rc, update, getContainerId(child), child);
+        RenderProfiler.renderAdd(syncPeer, rc, update, getContainerId(child), child);
     }
 
     /**
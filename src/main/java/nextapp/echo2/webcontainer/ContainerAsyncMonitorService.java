@@ -38,7 +38,8 @@ import nextapp.echo2.webrender.service.AsyncMonitorService;
  * Web Container implementation of <code>AsyncMonitorService</code>.
  * Determines if a given application instance requires immediate 
  * client-server synchronization by querying 
- * <code>ApplicationInstance.hasQueuedTasks()</code>.
+ * <code>ApplicationInstance.hasQueuedTasks()</code>.  Long-poll requests
+ * are held open using <code>ApplicationInstance.waitForQueuedTasks()</code>.
  */
 public class ContainerAsyncMonitorService extends AsyncMonitorService {
 
@@ -55,4 +56,14 @@ public class ContainerAsyncMonitorService extends AsyncMonitorService {
         ApplicationInstance app = ((ContainerInstance) userInstance).getApplicationInstance();
         return app.hasQueuedTasks();
     }
+    
+    /**
+     * @see nextapp.echo2.webrender.service.AsyncMonitorService#waitForSynchronizationRequired(
+     *      nextapp.echo2.webrender.UserInstance, long)
+     */
+    protected boolean waitForSynchronizationRequired(UserInstance userInstance, long timeout) 
+    throws InterruptedException {
+        ApplicationInstance app = ((ContainerInstance) userInstance).getApplicationInstance();
+        return app.waitForQueuedTasks(timeout);
+    }
 }
\ No newline at end of file
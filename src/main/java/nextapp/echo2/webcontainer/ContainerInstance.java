@@ -33,6 +33,7 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.servlet.http.HttpSessionBindingEvent;
 import javax.servlet.http.HttpSessionEvent;
@@ -40,6 +41,7 @@ import javax.servlet.http.HttpSessionEvent;
 import nextapp.echo2.app.ApplicationInstance;
 import nextapp.echo2.app.Component;
 import nextapp.echo2.app.TaskQueueHandle;
+import nextapp.echo2.app.filetransfer.Download;
 import nextapp.echo2.app.update.UpdateManager;
 import nextapp.echo2.webcontainer.util.IdTable;
 import nextapp.echo2.webrender.Connection;
@@ -55,6 +57,43 @@ public class ContainerInstance extends UserInstance {
      */
     private static final int DEFAULT_CALLBACK_INTERVAL = 500;
     
+    /**
+     * Time (in milliseconds) after which a registered <code>Download</code>
+     * that has not been requested by the client is discarded.
+     */
+    private static final long DOWNLOAD_TIMEOUT = 30 * 60 * 1000;
+    
+    /**
+     * Servlet initialization parameter specifying the maximum number of 
+     * entries retained by the <code>IdTable</code> of each 
+     * <code>ContainerInstance</code>.  The table is unbounded if the 
+     * parameter is not set or is 0.
+     * 
+     * @see IdTable#IdTable(int)
+     */
+    public static final String INIT_PARAMETER_ID_TABLE_MAXIMUM_SIZE = "echo2.idTableMaximumSize";
+    
+    /**
+     * A registered <code>Download</code>, along with the time it was last
+     * registered or requested.
+     */
+    private static final class DownloadEntry {
+        
+        private final Download download;
+        private volatile long lastAccess;
+        
+        /**
+         * Creates a new <code>DownloadEntry</code>.
+         * 
+         * @param download the <code>Download</code>
+         */
+        private DownloadEntry(Download download) {
+            super();
+            this.download = download;
+            lastAccess = System.currentTimeMillis();
+        }
+    }
+    
     /**
      * Returns the base HTML element id that should be used when rendering the
      * specified <code>Component</code>.
@@ -80,7 +119,9 @@ public class ContainerInstance extends UserInstance {
     
     private ApplicationInstance applicationInstance;
     private Map componentToRenderStateMap = new HashMap();
+    private transient Map downloadMap;
     private transient IdTable idTable;
+    private int idTableMaximumSize;
     private boolean initialized = false;
     private Map initialRequestParameterMap;
     private transient Map taskQueueToCallbackIntervalMap;
@@ -96,6 +137,7 @@ public class ContainerInstance extends UserInstance {
         super(conn);
         setServerDelayMessage(DefaultServerDelayMessage.INSTANCE);
         initialRequestParameterMap = new HashMap(conn.getRequest().getParameterMap());
+        idTableMaximumSize = conn.getServlet().getIntInitParameter(INIT_PARAMETER_ID_TABLE_MAXIMUM_SIZE, 0);
     }
     
     /**
@@ -143,6 +185,33 @@ public class ContainerInstance extends UserInstance {
         }
     }
     
+    /**
+     * Retrieves a <code>Download</code> previously registered with
+     * <code>registerDownload()</code>.  Each retrieval extends the lifetime
+     * of the registration, such that interrupted downloads may be resumed.
+     * 
+     * @param id the render id of the <code>Download</code>
+     * @return the <code>Download</code>, or null if no download is registered
+     *         with the specified id or its registration has expired
+     */
+    public Download getDownload(String id) {
+        Map downloadMap = this.downloadMap;
+        if (downloadMap == null) {
+            return null;
+        }
+        DownloadEntry entry = (DownloadEntry) downloadMap.get(id);
+        if (entry == null) {
+            return null;
+        }
+        long time = System.currentTimeMillis();
+        if (time - entry.lastAccess > DOWNLOAD_TIMEOUT) {
+            downloadMap.remove(id);
+            return null;
+        }
+        entry.lastAccess = time;
+        return entry.download;
+    }
+    
     /**
      * Retrieves the <code>IdTable</code> used by this 
      * <code>ContainerInstance</code> to assign weakly-referenced unique 
@@ -152,7 +221,7 @@ public class ContainerInstance extends UserInstance {
      */
     public IdTable getIdTable() {
         if (idTable == null) {
-            idTable = new IdTable();
+            idTable = new IdTable(idTableMaximumSize);
         }
         return idTable;
     }
@@ -227,6 +296,33 @@ public class ContainerInstance extends UserInstance {
         return initialized;
     }
     
+    /**
+     * Registers a <code>Download</code> such that it may be retrieved by
+     * its render id when the client requests it.  Registrations are
+     * discarded if they have not been requested for 30 minutes, and are
+     * released with the <code>ContainerInstance</code>.
+     * 
+     * @param download the <code>Download</code> to register
+     */
+    public void registerDownload(Download download) {
+        Map downloadMap;
+        synchronized (this) {
+            if (this.downloadMap == null) {
+                this.downloadMap = new ConcurrentHashMap();
+            }
+            downloadMap = this.downloadMap;
+        }
+        long time = System.currentTimeMillis();
+        Iterator it = downloadMap.values().iterator();
+        while (it.hasNext()) {
+            DownloadEntry entry = (DownloadEntry) it.next();
+            if (time - entry.lastAccess > DOWNLOAD_TIMEOUT) {
+                it.remove();
+            }
+        }
+        downloadMap.put(download.getRenderId(), new DownloadEntry(download));
+    }
+    
     /**
      * Removes the <code>RenderState</code> of the specified
      * <code>Component</code>.
@@ -295,6 +391,7 @@ public class ContainerInstance extends UserInstance {
         if (applicationInstance != null) {
             applicationInstance.dispose();
         }
+        downloadMap = null;
         super.valueUnbound(e);
     }
 }
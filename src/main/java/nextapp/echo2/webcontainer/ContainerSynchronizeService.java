@@ -80,6 +80,18 @@ public class ContainerSynchronizeService extends SynchronizeService {
         WebRenderServlet.getServiceRegistry().add(WEB_CONTAINER_SERVICE);
     }
 
+    /**
+     * Servlet initialization parameter which, if set to "true", enables 
+     * profiling of the rendering performed by 
+     * <code>ComponentSynchronizePeer</code>s.  The profile of each 
+     * synchronization is added to its <code>ServerMessage</code> (and 
+     * displayed in the debug pane console); accumulated results are
+     * published via <code>ServiceMetrics</code>.
+     * 
+     * @see RenderProfiler
+     */
+    public static final String INIT_PARAMETER_RENDER_PROFILING = "echo2.renderProfiling";
+    
     /**
      * A single shared instance of this stateless service.
      */
@@ -211,7 +223,7 @@ public class ContainerSynchronizeService extends SynchronizeService {
         for (int i = 0; i < disposedComponents.length; ++i) {
             ComponentSynchronizePeer disposedSyncPeer = SynchronizePeerFactory.getPeerForComponent(
                     disposedComponents[i].getClass());
-            disposedSyncPeer.renderDispose(rc, componentUpdate, disposedComponents[i]);
+            RenderProfiler.renderDispose(disposedSyncPeer, rc, componentUpdate, disposedComponents[i]);
             ci.removeRenderState(disposedComponents[i]);
         }
     }
@@ -229,22 +241,24 @@ public class ContainerSynchronizeService extends SynchronizeService {
      * @param parent the <code>Component</code> whose descendants should be disposed
      */
     private void disposeReplacedDescendants(RenderContext rc, ServerComponentUpdate update, Component parent) {
-        Component[] replacedComponents = parent.getVisibleComponents();
+        int replacedComponentCount = parent.getVisibleComponentCount();
         boolean isRoot = parent == update.getParent();
-        for (int i = 0; i < replacedComponents.length; ++i) {
+        for (int i = 0; i < replacedComponentCount; ++i) {
+            Component replacedComponent = parent.getVisibleComponent(i);
+            
             // Verify that component was not added on this synchronization.
-            if (isRoot && update.hasAddedChild(replacedComponents[i])) {
+            if (isRoot && update.hasAddedChild(replacedComponent)) {
                 // Component was added as a child on this synchronization:
                 // There is no reason to dispose of it as it does not yet exist on the client.
                 continue;
             }
             
             // Recursively dispose child components.
-            disposeReplacedDescendants(rc, update, replacedComponents[i]);
+            disposeReplacedDescendants(rc, update, replacedComponent);
             
             // Dispose component.
-            ComponentSynchronizePeer syncPeer = SynchronizePeerFactory.getPeerForComponent(replacedComponents[i].getClass());
-            syncPeer.renderDispose(rc, update, replacedComponents[i]);
+            ComponentSynchronizePeer syncPeer = SynchronizePeerFactory.getPeerForComponent(replacedComponent.getClass());
+            RenderProfiler.renderDispose(syncPeer, rc, update, replacedComponent);
         }
     }
     
@@ -344,16 +358,16 @@ public class ContainerSynchronizeService extends SynchronizeService {
             // Perform full refresh.
             RootSynchronizePeer rootSyncPeer 
                     = (RootSynchronizePeer) SynchronizePeerFactory.getPeerForComponent(window.getClass());
-            rootSyncPeer.renderRefresh(rc, fullRefreshUpdate, window);
+            RenderProfiler.renderRefresh(rootSyncPeer, rc, fullRefreshUpdate, window);
             
             setRootLayoutDirection(rc);
         } else {
-            // Remove any updates whose updates are descendants of components which have not been rendered to the
-            // client yet due to lazy-loading containers.
+            // Skip any updates whose updates are descendants of components which have not been rendered to the
+            // client yet due to lazy-loading containers.  (The array of updates is owned by the ServerUpdateManager
+            // and may not be modified.)
+            boolean[] skippedUpdates = new boolean[componentUpdates.length];
             for (int i = 0; i < componentUpdates.length; ++i) {
-                if (!isRendered(ci, componentUpdates[i].getParent())) {
-                    componentUpdates[i] = null;
-                }
+                skippedUpdates[i] = !isRendered(ci, componentUpdates[i].getParent());
             }
             
             // Set of Components whose HTML was entirely re-rendered, negating the need
@@ -361,8 +375,8 @@ public class ContainerSynchronizeService extends SynchronizeService {
             Set fullyReplacedHierarchies = new HashSet();
     
             for (int i = 0; i < componentUpdates.length; ++i) {
-                if (componentUpdates[i] == null) {
-                    // Update removed, do nothing.
+                if (skippedUpdates[i]) {
+                    // Update skipped, do nothing.
                     continue;
                 }
                 
@@ -388,7 +402,7 @@ public class ContainerSynchronizeService extends SynchronizeService {
                                 = SynchronizePeerFactory.getPeerForComponent(parentComponent.getParent().getClass());
                         targetId = parentSyncPeer.getContainerId(parentComponent);
                     }
-                    boolean fullReplacement = syncPeer.renderUpdate(rc, componentUpdates[i], targetId);
+                    boolean fullReplacement = RenderProfiler.renderUpdate(syncPeer, rc, componentUpdates[i], targetId);
                     if (fullReplacement) {
                         // Invoke renderDispose() on hierarchy of components destroyed by
                         // the complete replacement.
@@ -408,6 +422,7 @@ public class ContainerSynchronizeService extends SynchronizeService {
         ServerMessage serverMessage = new ServerMessage();
         RenderContext rc = new RenderContextImpl(conn, serverMessage);
         ContainerInstance containerInstance = rc.getContainerInstance();
+        RenderProfiler profiler = null;
         try {
             serverMessage.addLibrary(WEB_CONTAINER_SERVICE.getId());
             
@@ -422,9 +437,11 @@ public class ContainerSynchronizeService extends SynchronizeService {
 
             Window window = applicationInstance.getDefaultWindow();
             
+            profiler = startRenderProfiler(conn, serverMessage);
+            
             ServerComponentUpdate componentUpdate = new ServerComponentUpdate(window);
             ComponentSynchronizePeer syncPeer = SynchronizePeerFactory.getPeerForComponent(window.getClass());
-            ((WindowPeer) syncPeer).renderRefresh(rc, componentUpdate, window);
+            RenderProfiler.renderRefresh((WindowPeer) syncPeer, rc, componentUpdate, window);
             
             setAsynchronousMonitorInterval(rc);
             setFocus(rc, true);
@@ -433,10 +450,18 @@ public class ContainerSynchronizeService extends SynchronizeService {
 
             processQueuedCommands(rc);
             
+            if (profiler != null) {
+                profiler.stop();
+                profiler.renderProfile(serverMessage);
+            }
+            
             applicationInstance.getUpdateManager().purge();
             
             return serverMessage;
         } finally {
+            if (profiler != null) {
+                profiler.stop();
+            }
             ApplicationInstance.setActive(null);
         }
     }
@@ -451,6 +476,7 @@ public class ContainerSynchronizeService extends SynchronizeService {
         
         ContainerInstance ci = rc.getContainerInstance();
         ApplicationInstance applicationInstance = ci.getApplicationInstance();
+        RenderProfiler profiler = null;
         
         try {
             if (!validateTransactionId(ci, clientMessageDocument)) {
@@ -470,6 +496,8 @@ public class ContainerSynchronizeService extends SynchronizeService {
             
             updateManager.processClientUpdates();
             
+            profiler = startRenderProfiler(conn, serverMessage);
+            
             // Process updates from server.
             processServerUpdates(rc);
             
@@ -479,15 +507,41 @@ public class ContainerSynchronizeService extends SynchronizeService {
             
             processQueuedCommands(rc);
 
+            if (profiler != null) {
+                profiler.stop();
+                profiler.renderProfile(serverMessage);
+            }
+            
             updateManager.purge();
             
             return serverMessage;
         } finally {
+            if (profiler != null) {
+                profiler.stop();
+            }
             // Mark instance as inactive.
             ApplicationInstance.setActive(null);
         }
     }
 
+    /**
+     * Starts a <code>RenderProfiler</code> for the current synchronization 
+     * if render profiling is enabled.
+     * 
+     * @param conn the relevant <code>Connection</code>
+     * @param serverMessage the outgoing <code>ServerMessage</code>
+     * @return the started <code>RenderProfiler</code>, or null if render
+     *         profiling is not enabled
+     * @see #INIT_PARAMETER_RENDER_PROFILING
+     */
+    private RenderProfiler startRenderProfiler(Connection conn, ServerMessage serverMessage) {
+        if ("true".equals(conn.getServlet().getInitParameter(INIT_PARAMETER_RENDER_PROFILING))) {
+            return RenderProfiler.start(serverMessage);
+        } else {
+            return null;
+        }
+    }
+    
     /**
      * Sets the interval between asynchronous monitor requests.
      * 
@@ -562,22 +616,4 @@ public class ContainerSynchronizeService extends SynchronizeService {
         rc.getServerMessage().setRootLayoutDirection(applicationInstance.getLayoutDirection().isLeftToRight()
                 ? ServerMessage.LEFT_TO_RIGHT : ServerMessage.RIGHT_TO_LEFT);
     }
-    
-    /**
-     * Determines if transaction id retrieved from client matches current transaction id.
-     * 
-     * @param containerInstance the relevant <code>ContainerInstance</code>
-     * @param clientMessageDocument the incoming client message
-     * @return true if the transaction id is valid
-     */
-    private boolean validateTransactionId(ContainerInstance containerInstance, Document clientMessageDocument) {
-        try {
-            long clientTransactionId = Long.parseLong(clientMessageDocument.getDocumentElement().getAttribute("trans-id"));
-            return containerInstance.getCurrentTransactionId() == clientTransactionId;
-        } catch (NumberFormatException ex) {
-            // Client has not provided a transaction id at all, return true.
-            // This should not occur.
-            return true;
-        }
-    }
 }
@@ -0,0 +1,868 @@
+/* 
+ * This file is part of the Echo Web Application Framework (hereinafter "Echo").
+ * Copyright (C) 2002-2009 NextApp, Inc.
+ *
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ */
+
+
+package nextapp.echo2.webcontainer;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.w3c.dom.events.Event;
+import org.w3c.dom.events.EventListener;
+import org.w3c.dom.events.EventTarget;
+import org.w3c.dom.events.MutationEvent;
+
+import nextapp.echo2.app.Component;
+import nextapp.echo2.app.update.ServerComponentUpdate;
+import nextapp.echo2.webrender.ServerMessage;
+import nextapp.echo2.webrender.ServiceMetrics;
+
+/**
+ * Profiler of the rendering performed by <code>ComponentSynchronizePeer</code>s
+ * during a synchronization.
+ * <p>
+ * Peer rendering methods which are invoked through the static methods of this
+ * class, e.g., <code>RenderProfiler.renderAdd()</code>, are timed when a 
+ * profiler is active for the current thread, and are otherwise invoked 
+ * directly.  For each invocation, the elapsed time, the number of DOM nodes 
+ * added to the <code>ServerMessage</code> and their estimated serialized size
+ * are recorded.  "Self" values exclude those of nested peer invocations, 
+ * e.g., the rendering of child components.
+ * <p>
+ * Results are recorded per peer class and operation, as well as per
+ * component.  The results of a synchronization may be added to its
+ * <code>ServerMessage</code> (to be displayed in the debug pane console), and
+ * are accumulated in statistics published as a 
+ * <code>ServiceMetrics.Report</code>.
+ */
+public class RenderProfiler {
+    
+    /**
+     * Operation constant: <code>ComponentSynchronizePeer.renderAdd()</code>.
+     */
+    public static final int RENDER_ADD = 0;
+
+    /**
+     * Operation constant: <code>DomUpdateSupport.renderHtml()</code>.
+     */
+    public static final int RENDER_HTML = 1;
+
+    /**
+     * Operation constant: <code>ComponentSynchronizePeer.renderUpdate()</code>.
+     */
+    public static final int RENDER_UPDATE = 2;
+
+    /**
+     * Operation constant: <code>ComponentSynchronizePeer.renderDispose()</code>.
+     */
+    public static final int RENDER_DISPOSE = 3;
+
+    /**
+     * Operation constant: <code>RootSynchronizePeer.renderRefresh()</code>.
+     */
+    public static final int RENDER_REFRESH = 4;
+    
+    private static final String[] OPERATION_NAMES = { "renderAdd", "renderHtml", "renderUpdate", "renderDispose", 
+            "renderRefresh" };
+    
+    /**
+     * Maximum number of components to report in a <code>ServerMessage</code>.
+     */
+    private static final int MAX_REPORTED_COMPONENTS = 10;
+    
+    private static final String MESSAGE_PART_NAME = "EchoRenderProfile";
+    
+    /**
+     * Rendering statistics of a single peer class and operation.
+     */
+    public static class Statistics {
+        
+        private String peerName;
+        private int operation;
+        private long count;
+        private long time;
+        private long selfTime;
+        private long selfNodes;
+        private long selfBytes;
+        
+        /**
+         * Creates a new <code>Statistics</code>.
+         * 
+         * @param peerName the name of the peer class
+         * @param operation the operation, e.g., <code>RENDER_ADD</code>
+         */
+        private Statistics(String peerName, int operation) {
+            super();
+            this.peerName = peerName;
+            this.operation = operation;
+        }
+        
+        /**
+         * Adds the values of another <code>Statistics</code> object to this 
+         * one.
+         * 
+         * @param statistics the <code>Statistics</code> to add
+         */
+        private void add(Statistics statistics) {
+            count += statistics.count;
+            time += statistics.time;
+            selfTime += statistics.selfTime;
+            selfNodes += statistics.selfNodes;
+            selfBytes += statistics.selfBytes;
+        }
+        
+        /**
+         * Creates a copy of this <code>Statistics</code> object.
+         * 
+         * @return the copy
+         */
+        private Statistics copy() {
+            Statistics statistics = new Statistics(peerName, operation);
+            statistics.add(this);
+            return statistics;
+        }
+        
+        /**
+         * Returns the number of invocations.
+         * 
+         * @return the number of invocations
+         */
+        public long getCount() {
+            return count;
+        }
+        
+        /**
+         * Returns the operation, e.g., <code>RENDER_ADD</code>.
+         * 
+         * @return the operation
+         */
+        public int getOperation() {
+            return operation;
+        }
+        
+        /**
+         * Returns the name of the peer class.
+         * 
+         * @return the peer class name
+         */
+        public String getPeerName() {
+            return peerName;
+        }
+        
+        /**
+         * Returns the estimated serialized size, in bytes, of the DOM nodes 
+         * added to <code>ServerMessage</code>s, excluding nested invocations.
+         * 
+         * @return the size in bytes
+         */
+        public long getSelfBytes() {
+            return selfBytes;
+        }
+        
+        /**
+         * Returns the number of DOM nodes added to 
+         * <code>ServerMessage</code>s, excluding nested invocations.
+         * 
+         * @return the number of nodes
+         */
+        public long getSelfNodes() {
+            return selfNodes;
+        }
+        
+        /**
+         * Returns the elapsed time, in nanoseconds, excluding nested 
+         * invocations.
+         * 
+         * @return the elapsed time
+         */
+        public long getSelfTime() {
+            return selfTime;
+        }
+        
+        /**
+         * Returns the elapsed time, in nanoseconds, including nested 
+         * invocations.
+         * 
+         * @return the elapsed time
+         */
+        public long getTime() {
+            return time;
+        }
+    }
+    
+    /**
+     * Rendering statistics of a single component.
+     */
+    private static class ComponentStatistics {
+        
+        private Component component;
+        private String peerName;
+        private long selfTime;
+        private long selfNodes;
+        private long selfBytes;
+    }
+    
+    /**
+     * State of an active peer invocation.
+     */
+    private static class Frame {
+        
+        private Class peerClass;
+        private Component component;
+        private int operation;
+        private long startTime;
+        private long startNodes;
+        private long startBytes;
+        
+        /**
+         * The parent node of a <code>renderHtml()</code> invocation, if not 
+         * attached to the <code>ServerMessage</code> document.
+         */
+        private Node detachedParentNode;
+        
+        /**
+         * The number of children of <code>detachedParentNode</code> at the
+         * start of the invocation.
+         */
+        private int detachedParentChildCount;
+        
+        private long childTime;
+        private long childNodes;
+        private long childBytes;
+    }
+    
+    /**
+     * <code>Comparator</code> ordering <code>Statistics</code> by descending
+     * self time.
+     */
+    private static final Comparator STATISTICS_SELF_TIME_COMPARATOR = new Comparator() {
+    
+        /**
+         * @see java.util.Comparator#compare(java.lang.Object, java.lang.Object)
+         */
+        public int compare(Object o1, Object o2) {
+            long time1 = ((Statistics) o1).selfTime;
+            long time2 = ((Statistics) o2).selfTime;
+            return time1 < time2 ? 1 : (time1 == time2 ? 0 : -1);
+        }
+    };
+    
+    /**
+     * <code>Comparator</code> ordering <code>ComponentStatistics</code> by 
+     * descending self time.
+     */
+    private static final Comparator COMPONENT_SELF_TIME_COMPARATOR = new Comparator() {
+    
+        /**
+         * @see java.util.Comparator#compare(java.lang.Object, java.lang.Object)
+         */
+        public int compare(Object o1, Object o2) {
+            long time1 = ((ComponentStatistics) o1).selfTime;
+            long time2 = ((ComponentStatistics) o2).selfTime;
+            return time1 < time2 ? 1 : (time1 == time2 ? 0 : -1);
+        }
+    };
+    
+    /**
+     * <code>ServiceMetrics.Report</code> rendering the accumulated 
+     * statistics.
+     */
+    private static final ServiceMetrics.Report REPORT = new ServiceMetrics.Report() {
+        
+        /**
+         * @see nextapp.echo2.webrender.ServiceMetrics.Report#getName()
+         */
+        public String getName() {
+            return "render-profile";
+        }
+        
+        /**
+         * @see nextapp.echo2.webrender.ServiceMetrics.Report#render(java.io.PrintWriter)
+         */
+        public void render(PrintWriter pw) {
+            pw.println("peer\toperation\tcount\ttime\tself\tnodes\tbytes");
+            Statistics[] statistics = getStatistics();
+            for (int i = 0; i < statistics.length; ++i) {
+                pw.print(statistics[i].peerName);
+                pw.print('\t');
+                pw.print(OPERATION_NAMES[statistics[i].operation]);
+                pw.print('\t');
+                pw.print(statistics[i].count);
+                pw.print('\t');
+                pw.print(formatMillis(statistics[i].time));
+                pw.print('\t');
+                pw.print(formatMillis(statistics[i].selfTime));
+                pw.print('\t');
+                pw.print(statistics[i].selfNodes);
+                pw.print('\t');
+                pw.println(statistics[i].selfBytes);
+            }
+        }
+    };
+    
+    /**
+     * The <code>RenderProfiler</code> active for the current thread, if any.
+     */
+    private static final ThreadLocal activeProfiler = new ThreadLocal();
+    
+    /**
+     * Number of threads with an active <code>RenderProfiler</code>, used to
+     * avoid <code>ThreadLocal</code> lookups when profiling is not in use.
+     * Modified only while synchronized on <code>statisticsMap</code>.
+     */
+    private static volatile int activeCount = 0;
+    
+    /**
+     * Accumulated statistics, mapping keys generated by 
+     * <code>getStatisticsKey()</code> to <code>Statistics</code>.
+     * Guarded by itself.
+     */
+    private static final Map statisticsMap = new HashMap();
+    
+    /**
+     * Returns the <code>RenderProfiler</code> active for the current thread.
+     * 
+     * @return the active <code>RenderProfiler</code>, or null if none is 
+     *         active
+     */
+    private static RenderProfiler getActive() {
+        return activeCount == 0 ? null : (RenderProfiler) activeProfiler.get();
+    }
+    
+    /**
+     * Returns the name of an operation, e.g., "renderAdd".
+     * 
+     * @param operation the operation, e.g., <code>RENDER_ADD</code>
+     * @return the name
+     */
+    public static String getOperationName(int operation) {
+        return OPERATION_NAMES[operation];
+    }
+    
+    /**
+     * Returns the statistics accumulated by all profiled synchronizations,
+     * ordered by descending self time.
+     * 
+     * @return the <code>Statistics</code>
+     */
+    public static Statistics[] getStatistics() {
+        Statistics[] statistics;
+        synchronized (statisticsMap) {
+            statistics = new Statistics[statisticsMap.size()];
+            Iterator it = statisticsMap.values().iterator();
+            for (int i = 0; it.hasNext(); ++i) {
+                statistics[i] = ((Statistics) it.next()).copy();
+            }
+        }
+        Arrays.sort(statistics, STATISTICS_SELF_TIME_COMPARATOR);
+        return statistics;
+    }
+    
+    /**
+     * Returns the key under which the statistics of a peer operation are 
+     * stored.
+     * 
+     * @param peerName the name of the peer class
+     * @param operation the operation
+     * @return the key
+     */
+    private static String getStatisticsKey(String peerName, int operation) {
+        return peerName + "#" + operation;
+    }
+    
+    /**
+     * Formats a time value in milliseconds with three decimal places.
+     * 
+     * @param time the time, in nanoseconds
+     * @return the formatted value
+     */
+    private static String formatMillis(long time) {
+        long micros = time / 1000;
+        return Long.toString(micros / 1000) + "." + Long.toString(1000 + micros % 1000).substring(1);
+    }
+    
+    /**
+     * Invokes <code>ComponentSynchronizePeer.renderAdd()</code>, profiling
+     * the invocation if a profiler is active.
+     * 
+     * @param peer the peer
+     * @param rc the relevant <code>RenderContext</code>
+     * @param update the update
+     * @param targetId the id of the element into which the component should 
+     *        be rendered
+     * @param component the component to be rendered
+     * @see ComponentSynchronizePeer#renderAdd(RenderContext, ServerComponentUpdate, String, Component)
+     */
+    public static void renderAdd(ComponentSynchronizePeer peer, RenderContext rc, ServerComponentUpdate update, 
+            String targetId, Component component) {
+        RenderProfiler profiler = getActive();
+        if (profiler == null) {
+            peer.renderAdd(rc, update, targetId, component);
+            return;
+        }
+        profiler.enter(peer, component, RENDER_ADD, null);
+        try {
+            peer.renderAdd(rc, update, targetId, component);
+        } finally {
+            profiler.exit();
+        }
+    }
+    
+    /**
+     * Invokes <code>ComponentSynchronizePeer.renderDispose()</code>, 
+     * profiling the invocation if a profiler is active.
+     * 
+     * @param peer the peer
+     * @param rc the relevant <code>RenderContext</code>
+     * @param update the update
+     * @param component the component to be disposed
+     * @see ComponentSynchronizePeer#renderDispose(RenderContext, ServerComponentUpdate, Component)
+     */
+    public static void renderDispose(ComponentSynchronizePeer peer, RenderContext rc, ServerComponentUpdate update, 
+            Component component) {
+        RenderProfiler profiler = getActive();
+        if (profiler == null) {
+            peer.renderDispose(rc, update, component);
+            return;
+        }
+        profiler.enter(peer, component, RENDER_DISPOSE, null);
+        try {
+            peer.renderDispose(rc, update, component);
+        } finally {
+            profiler.exit();
+        }
+    }
+    
+    /**
+     * Invokes <code>DomUpdateSupport.renderHtml()</code>, profiling the 
+     * invocation if a profiler is active.
+     * 
+     * @param peer the peer
+     * @param rc the relevant <code>RenderContext</code>
+     * @param update the update
+     * @param parentNode the node to which the rendered HTML should be 
+     *        appended
+     * @param component the component to be rendered
+     * @see DomUpdateSupport#renderHtml(RenderContext, ServerComponentUpdate, Node, Component)
+     */
+    public static void renderHtml(DomUpdateSupport peer, RenderContext rc, ServerComponentUpdate update, 
+            Node parentNode, Component component) {
+        RenderProfiler profiler = getActive();
+        if (profiler == null) {
+            peer.renderHtml(rc, update, parentNode, component);
+            return;
+        }
+        profiler.enter(peer, component, RENDER_HTML, parentNode);
+        try {
+            peer.renderHtml(rc, update, parentNode, component);
+        } finally {
+            profiler.exit();
+        }
+    }
+    
+    /**
+     * Invokes <code>RootSynchronizePeer.renderRefresh()</code>, profiling
+     * the invocation if a profiler is active.
+     * 
+     * @param peer the peer
+     * @param rc the relevant <code>RenderContext</code>
+     * @param update the full refresh update
+     * @param component the root component
+     * @see RootSynchronizePeer#renderRefresh(RenderContext, ServerComponentUpdate, Component)
+     */
+    public static void renderRefresh(RootSynchronizePeer peer, RenderContext rc, ServerComponentUpdate update, 
+            Component component) {
+        RenderProfiler profiler = getActive();
+        if (profiler == null) {
+            peer.renderRefresh(rc, update, component);
+            return;
+        }
+        profiler.enter(peer, component, RENDER_REFRESH, null);
+        try {
+            peer.renderRefresh(rc, update, component);
+        } finally {
+            profiler.exit();
+        }
+    }
+    
+    /**
+     * Invokes <code>ComponentSynchronizePeer.renderUpdate()</code>, 
+     * profiling the invocation if a profiler is active.
+     * 
+     * @param peer the peer
+     * @param rc the relevant <code>RenderContext</code>
+     * @param update the update
+     * @param targetId the id of the element into which the updated component
+     *        should be rendered if it is fully replaced
+     * @return true if the component was fully replaced
+     * @see ComponentSynchronizePeer#renderUpdate(RenderContext, ServerComponentUpdate, String)
+     */
+    public static boolean renderUpdate(ComponentSynchronizePeer peer, RenderContext rc, ServerComponentUpdate update, 
+            String targetId) {
+        RenderProfiler profiler = getActive();
+        if (profiler == null) {
+            return peer.renderUpdate(rc, update, targetId);
+        }
+        profiler.enter(peer, update.getParent(), RENDER_UPDATE, null);
+        try {
+            return peer.renderUpdate(rc, update, targetId);
+        } finally {
+            profiler.exit();
+        }
+    }
+    
+    /**
+     * Resets the accumulated statistics.
+     */
+    public static void reset() {
+        synchronized (statisticsMap) {
+            statisticsMap.clear();
+        }
+    }
+    
+    /**
+     * Creates a <code>RenderProfiler</code> and activates it for the current
+     * thread.  The profiler must be deactivated by invoking 
+     * <code>stop()</code>.
+     * 
+     * @param serverMessage the <code>ServerMessage</code> being rendered
+     * @return the <code>RenderProfiler</code>
+     */
+    public static RenderProfiler start(ServerMessage serverMessage) {
+        RenderProfiler profiler = new RenderProfiler(serverMessage.getDocument());
+        synchronized (statisticsMap) {
+            ++activeCount;
+        }
+        activeProfiler.set(profiler);
+        ServiceMetrics.addReport(REPORT);
+        return profiler;
+    }
+    
+    /**
+     * Listener counting the DOM nodes and attributes added to the 
+     * <code>ServerMessage</code> document.
+     */
+    private EventListener mutationListener = new EventListener() {
+        
+        /**
+         * @see org.w3c.dom.events.EventListener#handleEvent(org.w3c.dom.events.Event)
+         */
+        public void handleEvent(Event e) {
+            if ("DOMNodeInserted".equals(e.getType())) {
+                measure((Node) e.getTarget());
+            } else {
+                MutationEvent me = (MutationEvent) e;
+                if (me.getAttrChange() == MutationEvent.ADDITION) {
+                    measureBytes += me.getAttrName().length() + me.getNewValue().length() + 4;
+                } else if (me.getAttrChange() == MutationEvent.MODIFICATION) {
+                    measureBytes += me.getNewValue().length() - me.getPrevValue().length();
+                }
+            }
+        }
+    };
+    
+    private Document document;
+    private long startTime;
+    private long endTime;
+    private boolean stopped;
+    
+    /**
+     * Running totals of the nodes measured by <code>measure()</code>.
+     */
+    private long measureNodes, measureBytes;
+    
+    private Frame[] frames = new Frame[16];
+    private int depth = 0;
+    
+    /**
+     * Per-synchronization statistics, mapping keys generated by 
+     * <code>getStatisticsKey()</code> to <code>Statistics</code>.
+     */
+    private Map requestStatisticsMap = new HashMap();
+    
+    /**
+     * Per-component statistics, mapping <code>Component</code>s to 
+     * <code>ComponentStatistics</code>.
+     */
+    private Map componentStatisticsMap = new IdentityHashMap();
+    
+    /**
+     * Creates a new <code>RenderProfiler</code>.
+     * 
+     * @param document the <code>ServerMessage</code> document
+     */
+    private RenderProfiler(Document document) {
+        super();
+        this.document = document;
+        if (document instanceof EventTarget) {
+            ((EventTarget) document).addEventListener("DOMNodeInserted", mutationListener, true);
+            ((EventTarget) document).addEventListener("DOMAttrModified", mutationListener, true);
+        }
+        startTime = System.nanoTime();
+    }
+    
+    /**
+     * Records the start of a peer invocation.
+     * 
+     * @param peer the peer
+     * @param component the component being rendered
+     * @param operation the operation
+     * @param parentNode the parent node of a <code>renderHtml()</code> 
+     *        invocation
+     */
+    private void enter(Object peer, Component component, int operation, Node parentNode) {
+        if (depth == frames.length) {
+            Frame[] newFrames = new Frame[frames.length * 2];
+            System.arraycopy(frames, 0, newFrames, 0, frames.length);
+            frames = newFrames;
+        }
+        Frame frame = frames[depth];
+        if (frame == null) {
+            frame = new Frame();
+            frames[depth] = frame;
+        }
+        ++depth;
+        frame.peerClass = peer.getClass();
+        frame.component = component;
+        frame.operation = operation;
+        frame.childTime = 0;
+        frame.childNodes = 0;
+        frame.childBytes = 0;
+        if (parentNode != null && !isAttached(parentNode)) {
+            frame.detachedParentNode = parentNode;
+            frame.detachedParentChildCount = parentNode.getChildNodes().getLength();
+        } else {
+            frame.detachedParentNode = null;
+        }
+        frame.startNodes = measureNodes;
+        frame.startBytes = measureBytes;
+        frame.startTime = System.nanoTime();
+    }
+    
+    /**
+     * Records the end of the innermost active peer invocation.
+     */
+    private void exit() {
+        long time = System.nanoTime();
+        Frame frame = frames[--depth];
+        time -= frame.startTime;
+        
+        long nodes = measureNodes - frame.startNodes;
+        long bytes = measureBytes - frame.startBytes;
+        if (frame.detachedParentNode != null) {
+            // Measure nodes rendered to a node which is not (yet) part of the ServerMessage document.
+            // These are excluded from the running totals, as they are measured again should the node
+            // later be attached to the document.
+            long totalNodes = measureNodes;
+            long totalBytes = measureBytes;
+            NodeList childNodes = frame.detachedParentNode.getChildNodes();
+            int length = childNodes.getLength();
+            for (int i = frame.detachedParentChildCount; i < length; ++i) {
+                measure(childNodes.item(i));
+            }
+            nodes += measureNodes - totalNodes;
+            bytes += measureBytes - totalBytes;
+            measureNodes = totalNodes;
+            measureBytes = totalBytes;
+            frame.detachedParentNode = null;
+        }
+        if (depth > 0) {
+            Frame parentFrame = frames[depth - 1];
+            parentFrame.childTime += time;
+            parentFrame.childNodes += nodes;
+            parentFrame.childBytes += bytes;
+        }
+        
+        String peerName = frame.peerClass.getName();
+        String key = getStatisticsKey(peerName, frame.operation);
+        Statistics statistics = (Statistics) requestStatisticsMap.get(key);
+        if (statistics == null) {
+            statistics = new Statistics(peerName, frame.operation);
+            requestStatisticsMap.put(key, statistics);
+        }
+        ++statistics.count;
+        statistics.time += time;
+        statistics.selfTime += time - frame.childTime;
+        statistics.selfNodes += nodes - frame.childNodes;
+        statistics.selfBytes += bytes - frame.childBytes;
+        
+        if (frame.component != null) {
+            ComponentStatistics componentStatistics = (ComponentStatistics) componentStatisticsMap.get(frame.component);
+            if (componentStatistics == null) {
+                componentStatistics = new ComponentStatistics();
+                componentStatistics.component = frame.component;
+                componentStatistics.peerName = peerName;
+                componentStatisticsMap.put(frame.component, componentStatistics);
+            }
+            componentStatistics.selfTime += time - frame.childTime;
+            componentStatistics.selfNodes += nodes - frame.childNodes;
+            componentStatistics.selfBytes += bytes - frame.childBytes;
+        }
+        frame.component = null;
+    }
+    
+    /**
+     * Determines if a node is part of the <code>ServerMessage</code> 
+     * document.
+     * 
+     * @param node the node
+     * @return true if the node is attached to the document
+     */
+    private boolean isAttached(Node node) {
+        while (node != null) {
+            if (node == document) {
+                return true;
+            }
+            node = node.getParentNode();
+        }
+        return false;
+    }
+    
+    /**
+     * Adds the number of nodes and estimated serialized size of a DOM 
+     * subtree to the running totals.
+     * 
+     * @param node the root node of the subtree
+     */
+    private void measure(Node node) {
+        switch (node.getNodeType()) {
+        case Node.ELEMENT_NODE:
+            ++measureNodes;
+            String name = node.getNodeName();
+            measureBytes += name.length() * 2 + 5;
+            NamedNodeMap attributes = ((Element) node).getAttributes();
+            int attributeCount = attributes.getLength();
+            for (int i = 0; i < attributeCount; ++i) {
+                Attr attribute = (Attr) attributes.item(i);
+                measureBytes += attribute.getName().length() + attribute.getValue().length() + 4;
+            }
+            break;
+        case Node.TEXT_NODE:
+        case Node.CDATA_SECTION_NODE:
+            ++measureNodes;
+            measureBytes += node.getNodeValue().length();
+            return;
+        case Node.DOCUMENT_FRAGMENT_NODE:
+            break;
+        default:
+            return;
+        }
+        for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+            measure(child);
+        }
+    }
+    
+    /**
+     * Adds the results of the profiled synchronization to a 
+     * <code>ServerMessage</code> as an <code>EchoRenderProfile</code> 
+     * directive.  The directive lists the statistics of each peer operation
+     * and the components with the largest self time.  The profiler must
+     * have been stopped.
+     * 
+     * @param serverMessage the <code>ServerMessage</code>
+     */
+    public void renderProfile(ServerMessage serverMessage) {
+        Element profileElement = serverMessage.appendPartDirective(ServerMessage.GROUP_ID_POSTUPDATE, 
+                MESSAGE_PART_NAME, "profile");
+        profileElement.setAttribute("time", formatMillis(endTime - startTime));
+        
+        Statistics[] statistics = (Statistics[]) requestStatisticsMap.values().toArray(
+                new Statistics[requestStatisticsMap.size()]);
+        Arrays.sort(statistics, STATISTICS_SELF_TIME_COMPARATOR);
+        for (int i = 0; i < statistics.length; ++i) {
+            Element peerElement = serverMessage.getDocument().createElement("peer");
+            peerElement.setAttribute("name", statistics[i].peerName);
+            peerElement.setAttribute("operation", OPERATION_NAMES[statistics[i].operation]);
+            peerElement.setAttribute("count", Long.toString(statistics[i].count));
+            peerElement.setAttribute("time", formatMillis(statistics[i].time));
+            peerElement.setAttribute("self", formatMillis(statistics[i].selfTime));
+            peerElement.setAttribute("nodes", Long.toString(statistics[i].selfNodes));
+            peerElement.setAttribute("bytes", Long.toString(statistics[i].selfBytes));
+            profileElement.appendChild(peerElement);
+        }
+        
+        List componentStatistics = new ArrayList(componentStatisticsMap.values());
+        ComponentStatistics[] components = (ComponentStatistics[]) componentStatistics.toArray(
+                new ComponentStatistics[componentStatistics.size()]);
+        Arrays.sort(components, COMPONENT_SELF_TIME_COMPARATOR);
+        for (int i = 0; i < components.length && i < MAX_REPORTED_COMPONENTS; ++i) {
+            Element componentElement = serverMessage.getDocument().createElement("component");
+            componentElement.setAttribute("id", ContainerInstance.getElementId(components[i].component));
+            componentElement.setAttribute("type", components[i].component.getClass().getName());
+            componentElement.setAttribute("peer", components[i].peerName);
+            componentElement.setAttribute("self", formatMillis(components[i].selfTime));
+            componentElement.setAttribute("nodes", Long.toString(components[i].selfNodes));
+            componentElement.setAttribute("bytes", Long.toString(components[i].selfBytes));
+            profileElement.appendChild(componentElement);
+        }
+    }
+    
+    /**
+     * Deactivates the profiler and adds its results to the accumulated
+     * statistics.  Invoking this method on a stopped profiler has no effect.
+     */
+    public void stop() {
+        if (stopped) {
+            return;
+        }
+        stopped = true;
+        endTime = System.nanoTime();
+        if (document instanceof EventTarget) {
+            ((EventTarget) document).removeEventListener("DOMNodeInserted", mutationListener, true);
+            ((EventTarget) document).removeEventListener("DOMAttrModified", mutationListener, true);
+        }
+        activeProfiler.set(null);
+        synchronized (statisticsMap) {
+            --activeCount;
+            Iterator it = requestStatisticsMap.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry entry = (Map.Entry) it.next();
+                Statistics statistics = (Statistics) statisticsMap.get(entry.getKey());
+                if (statistics == null) {
+                    statisticsMap.put(entry.getKey(), ((Statistics) entry.getValue()).copy());
+                } else {
+                    statistics.add((Statistics) entry.getValue());
+                }
+            }
+        }
+    }
+}
@@ -29,7 +29,10 @@
 
 package nextapp.echo2.webcontainer;
 
+import javax.servlet.ServletException;
+
 import nextapp.echo2.app.ApplicationInstance;
+import nextapp.echo2.webcontainer.image.EncodedImageCache;
 import nextapp.echo2.webrender.ServiceRegistry;
 import nextapp.echo2.webrender.WebRenderServlet;
 import nextapp.echo2.webrender.service.SessionExpiredService;
@@ -42,6 +45,15 @@ import nextapp.echo2.webrender.service.SessionExpiredService;
  */
 public abstract class WebContainerServlet extends WebRenderServlet {
 
+    /**
+     * Servlet initialization parameter specifying the maximum total size, in
+     * bytes, of the encoded images stored in the 
+     * <code>EncodedImageCache</code>.  A value of 0 disables the cache.
+     * 
+     * @see EncodedImageCache#DEFAULT_MAXIMUM_SIZE
+     */
+    public static final String INIT_PARAMETER_IMAGE_CACHE_SIZE = "echo2.imageCacheSize";
+    
     /**
      * Default constructor.
      */
@@ -55,6 +67,29 @@ public abstract class WebContainerServlet extends WebRenderServlet {
         serviceRegistry.add(WindowHtmlService.INSTANCE);
     }
     
+    /**
+     * Configures the <code>EncodedImageCache</code> if specified by the
+     * <code>INIT_PARAMETER_IMAGE_CACHE_SIZE</code> initialization parameter,
+     * and validates the initialization parameters of 
+     * <code>ContainerInstance</code>s.
+     * 
+     * @see javax.servlet.GenericServlet#init()
+     */
+    public void init() 
+    throws ServletException {
+        super.init();
+        initIntParameter(ContainerInstance.INIT_PARAMETER_ID_TABLE_MAXIMUM_SIZE, 0, Integer.MAX_VALUE);
+        String imageCacheSize = getInitParameter(INIT_PARAMETER_IMAGE_CACHE_SIZE);
+        if (imageCacheSize != null) {
+            try {
+                EncodedImageCache.setMaximumSize(Long.parseLong(imageCacheSize.trim()));
+            } catch (NumberFormatException ex) {
+                throw new ServletException("Invalid value for initialization parameter \"" 
+                        + INIT_PARAMETER_IMAGE_CACHE_SIZE + "\": " + imageCacheSize);
+            }
+        }
+    }
+    
     /**
      * Creates a new <code>ApplicationInstance</code> for visitor to an 
      * application.
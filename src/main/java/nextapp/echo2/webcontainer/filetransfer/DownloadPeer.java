@@ -30,9 +30,6 @@
 package nextapp.echo2.webcontainer.filetransfer;
 
 import java.io.Serializable;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.Map;
 
 import nextapp.echo2.app.Command;
 import nextapp.echo2.app.filetransfer.Download;
@@ -49,8 +46,6 @@ import org.w3c.dom.Element;
  * A peer for <code>Download</code> commands.
  */
 public class DownloadPeer implements CommandSynchronizePeer, Serializable {
-   
-    private static final Map ID_TO_DOWNLOAD_MAP = Collections.synchronizedMap(new HashMap());
     
     /**
      * Service to provide supporting JavaScript library.
@@ -72,7 +67,7 @@ public class DownloadPeer implements CommandSynchronizePeer, Serializable {
             serverMessage.addLibrary(DOWNLOAD_SERVICE.getId());
             
             String id = download.getRenderId();
-            ID_TO_DOWNLOAD_MAP.put(id,download);
+            rc.getContainerInstance().registerDownload(download);
 
             String serviceUri = DownloadService.INSTANCE.createUri(rc.getContainerInstance(),id);
             Element itemizedUpdateElement = serverMessage.getItemizedDirective(ServerMessage.GROUP_ID_UPDATE,
@@ -84,12 +79,4 @@ public class DownloadPeer implements CommandSynchronizePeer, Serializable {
             download.setActive(false);
         }
     }
-    
-    /**
-     * Accessor to internal Download Map for Download Service
-     */
-    static Download getDownload(String id){
-        return (Download) ID_TO_DOWNLOAD_MAP.get(id);
-    }
-    
 }
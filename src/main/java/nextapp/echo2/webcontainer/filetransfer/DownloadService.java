@@ -30,13 +30,14 @@
 package nextapp.echo2.webcontainer.filetransfer;
 
 import java.io.IOException;
-import java.io.OutputStream;
 import java.io.Serializable;
 
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import nextapp.echo2.app.filetransfer.Download;
 import nextapp.echo2.app.filetransfer.DownloadProvider;
+import nextapp.echo2.app.filetransfer.RangeDownloadProvider;
 import nextapp.echo2.webcontainer.ContainerInstance;
 import nextapp.echo2.webrender.Connection;
 import nextapp.echo2.webrender.ContentType;
@@ -59,6 +60,105 @@ class DownloadService implements Service, Serializable {
         WebRenderServlet.getServiceRegistry().add(INSTANCE);
     }
     
+    /**
+     * Returns the entity tag of a <code>RangeDownloadProvider</code>'s file, 
+     * derived from its length and modification time.
+     * 
+     * @param length the length of the file
+     * @param lastModified the modification time of the file, or -1
+     * @return the entity tag (without quotes), or null if the modification
+     *         time is unknown
+     */
+    private static String getEntityTag(long length, long lastModified) {
+        if (lastModified == -1) {
+            return null;
+        }
+        return Long.toHexString(length) + "-" + Long.toHexString(lastModified);
+    }
+    
+    /**
+     * Determines whether the <code>Range</code> header of a request should be
+     * honored, i.e., that the request has no <code>If-Range</code> header or
+     * that its <code>If-Range</code> header matches the current file.
+     * 
+     * @param request the request
+     * @param entityTag the entity tag of the file, or null
+     * @param lastModified the modification time of the file, or -1
+     * @return true if the range should be served
+     */
+    private static boolean isIfRangeSatisfied(HttpServletRequest request, String entityTag, long lastModified) {
+        String ifRange = request.getHeader("If-Range");
+        if (ifRange == null) {
+            return true;
+        }
+        ifRange = ifRange.trim();
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            // Entity tag: weak tags never match.
+            return entityTag != null && ifRange.equals("\"" + entityTag + "\"");
+        }
+        if (lastModified == -1) {
+            return false;
+        }
+        long ifRangeDate;
+        try {
+            ifRangeDate = request.getDateHeader("If-Range");
+        } catch (IllegalArgumentException ex) {
+            // Malformed date.
+            return false;
+        }
+        // HTTP dates have a resolution of one second.
+        return ifRangeDate != -1 && lastModified / 1000 == ifRangeDate / 1000;
+    }
+    
+    /**
+     * Parses the <code>Range</code> header of a request.  Only single byte 
+     * ranges are supported; requests for multiple ranges are served the 
+     * entire file.
+     * 
+     * @param range the value of the <code>Range</code> header
+     * @param length the length of the file
+     * @return a two-element array containing the offsets of the first and 
+     *         last bytes of the range, an empty array if the range is not
+     *         satisfiable, or null if the entire file should be served 
+     */
+    private static long[] parseRange(String range, long length) {
+        range = range.trim();
+        if (!range.startsWith("bytes=") || range.indexOf(',') != -1) {
+            return null;
+        }
+        range = range.substring(6).trim();
+        int dashIndex = range.indexOf('-');
+        if (dashIndex == -1) {
+            return null;
+        }
+        long first, last;
+        try {
+            if (dashIndex == 0) {
+                // Suffix range: the last n bytes.
+                long suffixLength = Long.parseLong(range.substring(1).trim());
+                if (suffixLength <= 0) {
+                    return new long[0];
+                }
+                first = Math.max(0, length - suffixLength);
+                last = length - 1;
+            } else {
+                first = Long.parseLong(range.substring(0, dashIndex).trim());
+                String lastValue = range.substring(dashIndex + 1).trim();
+                last = lastValue.length() == 0 ? length - 1 : Math.min(Long.parseLong(lastValue), length - 1);
+                if (last < first) {
+                    return first < length ? null : new long[0];
+                }
+            }
+        } catch (NumberFormatException ex) {
+            // Invalid range: ignore.
+            return null;
+        }
+        if (first < 0 || first >= length) {
+            return new long[0];
+        }
+        return new long[]{first, last};
+    }
+    
     /**
      * Creates a URI to execute a specific <code>DownloadProvider</code>
      * 
@@ -98,7 +198,7 @@ class DownloadService implements Service, Serializable {
             serviceBadRequest(conn, "Download UID not specified.");
             return;
         }
-        Download download = DownloadPeer.getDownload(downloadId);
+        Download download = containerInstance.getDownload(downloadId);
         
         if (download == null) {
             serviceBadRequest(conn, "Download UID is not valid.");
@@ -108,7 +208,6 @@ class DownloadService implements Service, Serializable {
     }
     
     public void service(Connection conn, Download download) throws IOException {
-        OutputStream out = conn.getOutputStream();
         DownloadProvider provider = download.getProvider();
         HttpServletResponse response = conn.getResponse();
 
@@ -122,16 +221,70 @@ class DownloadService implements Service, Serializable {
         } else {
             response.setHeader("Content-Disposition", "attachment; filename=\"" + provider.getFileName() + "\"");
         }
-        if (provider.getSize() > 0) {
-            response.setIntHeader("Content-Length", provider.getSize());
-        }
         String contentType = provider.getContentType();
         if (contentType == null) {
             response.setContentType("application/octet-stream");
         } else {
             response.setContentType(provider.getContentType());
         }
-        provider.writeFile(out);
+        
+        if (provider instanceof RangeDownloadProvider) {
+            RangeDownloadProvider rangeProvider = (RangeDownloadProvider) provider;
+            long length = rangeProvider.getLength();
+            if (length >= 0) {
+                serviceRange(conn, rangeProvider, length);
+                return;
+            }
+        }
+        
+        if (provider.getSize() > 0) {
+            response.setIntHeader("Content-Length", provider.getSize());
+        }
+        provider.writeFile(conn.getOutputStream());
+    }
+    
+    /**
+     * Renders a <code>RangeDownloadProvider</code>'s file of known length,
+     * or the byte range of it specified by the request.
+     * 
+     * @param conn the <code>Connection</code>
+     * @param provider the <code>RangeDownloadProvider</code>
+     * @param length the length of the file
+     * @throws IOException if the file cannot be written
+     */
+    private void serviceRange(Connection conn, RangeDownloadProvider provider, long length) 
+    throws IOException {
+        HttpServletRequest request = conn.getRequest();
+        HttpServletResponse response = conn.getResponse();
+        
+        long lastModified = provider.getLastModified();
+        String entityTag = getEntityTag(length, lastModified);
+        response.setHeader("Accept-Ranges", "bytes");
+        if (entityTag != null) {
+            response.setHeader("ETag", "\"" + entityTag + "\"");
+            response.setDateHeader("Last-Modified", lastModified);
+        }
+        
+        String range = request.getHeader("Range");
+        long[] byteRange = null;
+        if (range != null && isIfRangeSatisfied(request, entityTag, lastModified)) {
+            byteRange = parseRange(range, length);
+        }
+        
+        if (byteRange == null) {
+            // Serve entire file.
+            response.setHeader("Content-Length", Long.toString(length));
+            provider.writeFile(conn.getOutputStream(), 0, length);
+        } else if (byteRange.length == 0) {
+            response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+            response.setHeader("Content-Range", "bytes */" + length);
+        } else {
+            long rangeLength = byteRange[1] - byteRange[0] + 1;
+            response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+            response.setHeader("Content-Range", "bytes " + byteRange[0] + "-" + byteRange[1] + "/" + length);
+            response.setHeader("Content-Length", Long.toString(rangeLength));
+            provider.writeFile(conn.getOutputStream(), byteRange[0], rangeLength);
+        }
     }
     
     public void serviceBadRequest(Connection conn, String message) {
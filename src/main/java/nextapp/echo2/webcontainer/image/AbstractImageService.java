@@ -37,16 +37,28 @@ import nextapp.echo2.app.ImageReference;
 import nextapp.echo2.webcontainer.ContainerInstance;
 import nextapp.echo2.webrender.Connection;
 import nextapp.echo2.webrender.ContentType;
-import nextapp.echo2.webrender.Service;
+import nextapp.echo2.webrender.EntityTagService;
 
 /**
  * Abstract base service for rendering images sourced from the application
  * container.
+ * <p>
+ * Images which may be encoded by <code>encodeImage()</code> are stored in 
+ * the <code>EncodedImageCache</code>, and are identified to the client by an
+ * entity tag derived from their content.  Other images are rendered by
+ * <code>renderImage()</code> on every request.
  */
 public abstract class AbstractImageService 
-implements Service {
+implements EntityTagService {
 
     private static final String PARAMETER_IMAGE_UID = "imageuid"; 
+    
+    /**
+     * <code>Connection</code> property name under which the encoded image
+     * retrieved by <code>getEntityTag()</code> is stored, such that an image
+     * too large to be cached need not be encoded twice for one request.
+     */
+    private static final String PROPERTY_ENCODED_IMAGE = AbstractImageService.class.getName() + ".encodedImage";
 
     private static final String[] URL_PARAMETERS = new String[]{PARAMETER_IMAGE_UID}; 
     
@@ -62,6 +74,89 @@ implements Service {
         return containerInstance.getServiceUri(this, URL_PARAMETERS, new String[]{imageId});
     }
 
+    /**
+     * Encodes the specified image, for storage in the 
+     * <code>EncodedImageCache</code>.
+     * The default implementation returns null.
+     * 
+     * @param imageReference the image to be encoded
+     * @return the encoded image, or null if the image cannot be encoded 
+     *         for caching (in which case it will be rendered by 
+     *         <code>renderImage()</code>)
+     * @throws IOException if the image cannot be encoded
+     */
+    protected EncodedImageCache.Entry encodeImage(ImageReference imageReference) 
+    throws IOException {
+        return null;
+    }
+    
+    /**
+     * Retrieves the encoded form of the specified image from the 
+     * <code>EncodedImageCache</code>, encoding and storing it if necessary.
+     * 
+     * @param conn the <code>Connection</code>
+     * @param imageReference the image
+     * @return the encoded image, or null if the image cannot be cached
+     */
+    private EncodedImageCache.Entry getEncodedImage(Connection conn, ImageReference imageReference) {
+        if (!EncodedImageCache.isEnabled()) {
+            return null;
+        }
+        EncodedImageCache.Entry entry = (EncodedImageCache.Entry) conn.getProperty(PROPERTY_ENCODED_IMAGE);
+        if (entry != null) {
+            return entry;
+        }
+        entry = EncodedImageCache.get(imageReference);
+        if (entry == null) {
+            try {
+                entry = encodeImage(imageReference);
+            } catch (IOException ex) {
+                // Render image directly.
+                return null;
+            }
+            if (entry != null) {
+                EncodedImageCache.put(imageReference, entry);
+            }
+        }
+        if (entry != null) {
+            conn.setProperty(PROPERTY_ENCODED_IMAGE, entry);
+        }
+        return entry;
+    }
+    
+    /**
+     * Returns the entity tag of the encoded image, if it may be cached.
+     * 
+     * @see nextapp.echo2.webrender.EntityTagService#getEntityTag(nextapp.echo2.webrender.Connection)
+     */
+    public String getEntityTag(Connection conn) {
+        ImageReference imageReference = getImageReference(conn);
+        if (imageReference == null) {
+            return null;
+        }
+        EncodedImageCache.Entry entry = getEncodedImage(conn, imageReference);
+        return entry == null ? null : entry.getEntityTag();
+    }
+    
+    /**
+     * Retrieves the image specified by a request.
+     * 
+     * @param conn the <code>Connection</code>
+     * @return the requested image, or null if the request does not specify
+     *         a valid image
+     */
+    private ImageReference getImageReference(Connection conn) {
+        ContainerInstance containerInstance = (ContainerInstance) conn.getUserInstance();
+        if (containerInstance == null) {
+            return null;
+        }
+        String imageId = conn.getRequest().getParameter(PARAMETER_IMAGE_UID);
+        if (imageId == null) {
+            return null;
+        }
+        return (ImageReference) containerInstance.getIdTable().getObject(imageId);
+    }
+
     /**
      * Renders the specified image to the given connection.
      * Implementations should set the response content type, and write image
@@ -95,7 +190,19 @@ implements Service {
             serviceBadRequest(conn, "Image UID is not valid.");
             return;
         }
-        renderImage(conn, imageReference);
+        
+        EncodedImageCache.Entry entry = getEncodedImage(conn, imageReference);
+        if (entry == null) {
+            renderImage(conn, imageReference);
+        } else {
+            try {
+                conn.setContentType(entry.getContentType());
+                conn.getOutputStream().write(entry.getData());
+            } catch (IOException ex) {
+                // Internet Explorer appears to enjoy making half-hearted requests for images, wherein it resets the connection
+                // leaving us with an IOException.  This exception is silently eaten.
+            }
+        }
     }
     
     /**
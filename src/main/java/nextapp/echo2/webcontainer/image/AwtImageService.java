@@ -29,6 +29,7 @@
 
 package nextapp.echo2.webcontainer.image;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import nextapp.echo2.app.AwtImageReference;
 import nextapp.echo2.app.ImageReference;
@@ -49,6 +50,22 @@ public class AwtImageService extends AbstractImageService {
         WebRenderServlet.getServiceRegistry().add(INSTANCE);
     }
 
+    /**
+     * Encodes <code>AwtImageReference</code>s as PNG images.
+     * 
+     * @see nextapp.echo2.webcontainer.image.AbstractImageService#encodeImage(nextapp.echo2.app.ImageReference)
+     */
+    protected EncodedImageCache.Entry encodeImage(ImageReference imageReference)
+    throws IOException {
+        if (!(imageReference instanceof AwtImageReference)) {
+            return null;
+        }
+        PngEncoder encoder = new PngEncoder(((AwtImageReference) imageReference).getImage(), true, null, 3);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        encoder.encode(out);
+        return new EncodedImageCache.Entry(ContentType.IMAGE_PNG, out.toByteArray());
+    }
+    
     /**
      * @see nextapp.echo2.webrender.Service#getId()
      */
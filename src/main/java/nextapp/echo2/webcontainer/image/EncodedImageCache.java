@@ -0,0 +1,388 @@
+/* 
+ * This file is part of the Echo Web Application Framework (hereinafter "Echo").
+ * Copyright (C) 2002-2009 NextApp, Inc.
+ *
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ */
+
+
+package nextapp.echo2.webcontainer.image;
+
+import java.io.PrintWriter;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import nextapp.echo2.app.ImageReference;
+import nextapp.echo2.webrender.ContentType;
+import nextapp.echo2.webrender.ServiceMetrics;
+import nextapp.echo2.webrender.util.HashUtil;
+
+/**
+ * Application-wide (i.e., shared between all user instances) cache of encoded
+ * images, such that images used by many sessions need only be encoded once.
+ * <p>
+ * Images are keyed by their <code>ImageReference</code>s, using the 
+ * <code>equals()</code> and <code>hashCode()</code> methods of the 
+ * references, such that equal references share one entry.  References 
+ * which override <code>equals()</code> must also override 
+ * <code>hashCode()</code> to be shared.  References are weakly held: an entry is discarded once its
+ * <code>ImageReference</code> has been garbage collected.  The total size of 
+ * the encoded image data is bounded, with the least recently used images
+ * being evicted when the bound is exceeded.
+ * <p>
+ * As with the client-side caching of image services, the content of an 
+ * <code>ImageReference</code> is assumed not to change once it has been
+ * rendered.
+ */
+public class EncodedImageCache {
+    
+    /**
+     * An encoded image.
+     */
+    public static class Entry {
+        
+        private ContentType contentType;
+        private byte[] data;
+        private String entityTag;
+        
+        /**
+         * Creates a new <code>Entry</code>.
+         * 
+         * @param contentType the content type of the encoded image
+         * @param data the encoded image data
+         */
+        public Entry(ContentType contentType, byte[] data) {
+            super();
+            this.contentType = contentType;
+            this.data = data;
+            entityTag = HashUtil.hash(data);
+        }
+        
+        /**
+         * Returns the content type of the encoded image.
+         * 
+         * @return the content type
+         */
+        public ContentType getContentType() {
+            return contentType;
+        }
+        
+        /**
+         * Returns the encoded image data.  The returned array must not
+         * be modified.
+         * 
+         * @return the data
+         */
+        public byte[] getData() {
+            return data;
+        }
+        
+        /**
+         * Returns an entity tag (a hash of the encoded image data).
+         * 
+         * @return the entity tag
+         */
+        public String getEntityTag() {
+            return entityTag;
+        }
+    }
+    
+    /**
+     * A weak reference to an <code>ImageReference</code>, used as a key of
+     * the cache.  Keys are equal if they reference equal 
+     * <code>ImageReference</code>s; a cleared key is equal only to itself.
+     */
+    private static class Key extends WeakReference {
+        
+        private int hashCode;
+        
+        /**
+         * Creates a new <code>Key</code>.
+         * 
+         * @param imageReference the <code>ImageReference</code>
+         * @param queue the queue with which the key is registered, or null
+         */
+        private Key(ImageReference imageReference, ReferenceQueue queue) {
+            super(imageReference, queue);
+            hashCode = imageReference.hashCode();
+        }
+        
+        /**
+         * @see java.lang.Object#equals(java.lang.Object)
+         */
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Object imageReference = get();
+            return imageReference != null && imageReference.equals(((Key) o).get());
+        }
+        
+        /**
+         * @see java.lang.Object#hashCode()
+         */
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+    
+    /**
+     * Default maximum total size of cached image data, in bytes.
+     */
+    public static final long DEFAULT_MAXIMUM_SIZE = 4 * 1024 * 1024;
+    
+    /**
+     * <code>ServiceMetrics.Report</code> rendering the cache statistics.
+     */
+    private static final ServiceMetrics.Report REPORT = new ServiceMetrics.Report() {
+        
+        /**
+         * @see nextapp.echo2.webrender.ServiceMetrics.Report#getName()
+         */
+        public String getName() {
+            return "image-cache";
+        }
+        
+        /**
+         * @see nextapp.echo2.webrender.ServiceMetrics.Report#render(java.io.PrintWriter)
+         */
+        public void render(PrintWriter pw) {
+            pw.println("images\tbytes\tmaximum\thits\tmisses\tevictions");
+            synchronized (entryMap) {
+                pw.print(entryMap.size());
+                pw.print('\t');
+                pw.print(size);
+                pw.print('\t');
+                pw.print(maximumSize);
+                pw.print('\t');
+                pw.print(hitCount);
+                pw.print('\t');
+                pw.print(missCount);
+                pw.print('\t');
+                pw.println(evictionCount);
+            }
+        }
+    };
+    
+    /**
+     * Mapping between <code>Key</code>s and <code>Entry</code>s, in least to
+     * most recently used order.  Guarded by itself, as are the size and
+     * statistics fields.
+     */
+    private static final Map entryMap = new LinkedHashMap(16, 0.75f, true);
+    
+    /**
+     * Queue of <code>Key</code>s whose <code>ImageReference</code>s have 
+     * been garbage collected.
+     */
+    private static final ReferenceQueue referenceQueue = new ReferenceQueue();
+    
+    private static long maximumSize = DEFAULT_MAXIMUM_SIZE;
+    private static long size = 0;
+    private static long hitCount = 0;
+    private static long missCount = 0;
+    private static long evictionCount = 0;
+    
+    /**
+     * Removes all images from the cache.
+     */
+    public static void clear() {
+        synchronized (entryMap) {
+            entryMap.clear();
+            size = 0;
+        }
+    }
+    
+    /**
+     * Retrieves the cached encoded image for the specified 
+     * <code>ImageReference</code>.
+     * 
+     * @param imageReference the <code>ImageReference</code>
+     * @return the encoded image, or null if it is not cached
+     */
+    public static Entry get(ImageReference imageReference) {
+        if (ServiceMetrics.isEnabled()) {
+            ServiceMetrics.addReport(REPORT);
+        }
+        Key key = new Key(imageReference, null);
+        synchronized (entryMap) {
+            purge();
+            Entry entry = (Entry) entryMap.get(key);
+            if (entry == null) {
+                ++missCount;
+            } else {
+                ++hitCount;
+            }
+            return entry;
+        }
+    }
+    
+    /**
+     * Returns the number of images evicted from the cache due to the 
+     * maximum size being exceeded.
+     * 
+     * @return the eviction count
+     */
+    public static long getEvictionCount() {
+        synchronized (entryMap) {
+            return evictionCount;
+        }
+    }
+    
+    /**
+     * Returns the number of cache lookups which found an encoded image.
+     * 
+     * @return the hit count
+     */
+    public static long getHitCount() {
+        synchronized (entryMap) {
+            return hitCount;
+        }
+    }
+    
+    /**
+     * Returns the maximum total size of cached image data.
+     * 
+     * @return the maximum size, in bytes
+     */
+    public static long getMaximumSize() {
+        synchronized (entryMap) {
+            return maximumSize;
+        }
+    }
+    
+    /**
+     * Returns the number of cache lookups which did not find an encoded
+     * image.
+     * 
+     * @return the miss count
+     */
+    public static long getMissCount() {
+        synchronized (entryMap) {
+            return missCount;
+        }
+    }
+    
+    /**
+     * Returns the total size of cached image data.
+     * 
+     * @return the size, in bytes
+     */
+    public static long getSize() {
+        synchronized (entryMap) {
+            return size;
+        }
+    }
+    
+    /**
+     * Determines if the cache is enabled, i.e., if its maximum size is
+     * non-zero.
+     * 
+     * @return true if the cache is enabled
+     */
+    public static boolean isEnabled() {
+        synchronized (entryMap) {
+            return maximumSize > 0;
+        }
+    }
+    
+    /**
+     * Removes entries whose <code>ImageReference</code>s have been garbage
+     * collected.  Must be invoked while synchronized on 
+     * <code>entryMap</code>.
+     */
+    private static void purge() {
+        Key key;
+        while ((key = (Key) referenceQueue.poll()) != null) {
+            Entry entry = (Entry) entryMap.remove(key);
+            if (entry != null) {
+                size -= entry.data.length;
+            }
+        }
+    }
+    
+    /**
+     * Stores an encoded image in the cache.  Images larger than the maximum
+     * size of the cache are not stored.
+     * 
+     * @param imageReference the <code>ImageReference</code>
+     * @param entry the encoded image
+     */
+    public static void put(ImageReference imageReference, Entry entry) {
+        Key key = new Key(imageReference, referenceQueue);
+        synchronized (entryMap) {
+            purge();
+            if (entry.data.length > maximumSize) {
+                return;
+            }
+            Entry oldEntry = (Entry) entryMap.put(key, entry);
+            if (oldEntry != null) {
+                size -= oldEntry.data.length;
+            }
+            size += entry.data.length;
+            trim();
+        }
+    }
+    
+    /**
+     * Sets the maximum total size of cached image data.  A size of 0 
+     * disables the cache.
+     * 
+     * @param newValue the new maximum size, in bytes
+     */
+    public static void setMaximumSize(long newValue) {
+        if (newValue < 0) {
+            throw new IllegalArgumentException("Invalid maximum size: " + newValue);
+        }
+        synchronized (entryMap) {
+            maximumSize = newValue;
+            trim();
+        }
+    }
+    
+    /**
+     * Evicts least recently used entries until the total size does not 
+     * exceed the maximum size.  Must be invoked while synchronized on 
+     * <code>entryMap</code>.
+     */
+    private static void trim() {
+        Iterator it = entryMap.values().iterator();
+        while (size > maximumSize && it.hasNext()) {
+            Entry entry = (Entry) it.next();
+            it.remove();
+            size -= entry.data.length;
+            ++evictionCount;
+        }
+    }
+    
+    /** Non-instantiable class. */
+    private EncodedImageCache() { }
+}
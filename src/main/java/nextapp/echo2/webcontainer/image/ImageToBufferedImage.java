@@ -57,7 +57,7 @@ class ImageToBufferedImage {
         // Ensure image is loaded.
         image = new ImageIcon(image).getImage();        
         
-        int type = hasAlpha(image) ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB;
+        int type = hasAlpha(image) ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
         BufferedImage bufferedImage = new BufferedImage(image.getWidth(null), image.getHeight(null), type);
         Graphics g = bufferedImage.createGraphics();
         g.drawImage(image, 0, 0, null);
@@ -31,7 +31,9 @@ package nextapp.echo2.webcontainer.image;
 
 import java.awt.Image;
 import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
 import java.awt.image.DataBuffer;
+import java.awt.image.DirectColorModel;
 import java.awt.image.IndexColorModel;
 import java.awt.image.Raster;
 import java.io.ByteArrayOutputStream;
@@ -63,6 +65,9 @@ public class PngEncoder {
     /** <code>PaethFilter</code> singleton. */
     public static final Filter PAETH_FILTER = new PaethFilter();
     
+    /** Filters evaluated by adaptive filtering. */
+    private static final Filter[] ADAPTIVE_FILTERS = { SUB_FILTER, UP_FILTER, AVERAGE_FILTER, PAETH_FILTER };
+    
     /** PNG signature bytes. */
     private static final byte[] SIGNATURE = { (byte)0x89, (byte)0x50, (byte)0x4e, (byte)0x47, 
                                               (byte)0x0d, (byte)0x0a, (byte)0x1a, (byte)0x0a };
@@ -105,6 +110,49 @@ public class PngEncoder {
 
     private static final int[] INT_TRANSLATOR_CHANNEL_MAP = new int[]{2, 1, 0, 3};
     
+    /**
+     * Per-thread <code>Deflater</code>s, reused between encodings to avoid
+     * repeatedly allocating native compression state.
+     */
+    private static final ThreadLocal deflaters = new ThreadLocal();
+    
+    /**
+     * Retrieves the <code>Deflater</code> of the current thread, reset and
+     * configured for the specified compression level.
+     * 
+     * @param compressionLevel the compression level
+     * @return the <code>Deflater</code>
+     */
+    private static Deflater getDeflater(int compressionLevel) {
+        Deflater deflater = (Deflater) deflaters.get();
+        if (deflater == null) {
+            deflater = new Deflater(compressionLevel);
+            deflaters.set(deflater);
+        } else {
+            deflater.reset();
+            deflater.setLevel(compressionLevel);
+        }
+        return deflater;
+    }
+    
+    /**
+     * Determines if pixels of the specified <code>ColorModel</code> are
+     * integers in non-premultiplied (A)RGB order, such that raster data
+     * may be translated without color conversion.
+     * 
+     * @param colorModel the <code>ColorModel</code>
+     * @return true if the pixels are in (A)RGB order
+     */
+    private static boolean isIntRgb(ColorModel colorModel) {
+        if (!(colorModel instanceof DirectColorModel) || colorModel.isAlphaPremultiplied()) {
+            return false;
+        }
+        DirectColorModel directColorModel = (DirectColorModel) colorModel;
+        return directColorModel.getRedMask() == 0xff0000 && directColorModel.getGreenMask() == 0xff00 
+                && directColorModel.getBlueMask() == 0xff
+                && (directColorModel.getAlphaMask() == 0 || directColorModel.getAlphaMask() == 0xff000000); 
+    }
+    
     /**
      * Writes an 32-bit integer value to the output stream.
      *
@@ -113,10 +161,10 @@ public class PngEncoder {
      */
     private static void writeInt(OutputStream out, int i) 
     throws IOException {
-        out.write(new byte[]{(byte) (i >> 24), 
-                             (byte) ((i >> 16) & 0xff), 
-                             (byte) ((i >> 8) & 0xff), 
-                             (byte) (i & 0xff)});
+        out.write(i >> 24);
+        out.write(i >> 16);
+        out.write(i >> 8);
+        out.write(i);
     }
 
     /**
@@ -154,12 +202,9 @@ public class PngEncoder {
          * @see nextapp.echo2.webcontainer.image.PngEncoder.Filter#filter(byte[], byte[], byte[], int)
          */
         public void filter(byte[] filterOutput, byte[] currentRow, byte[] previousRow, int outputBpp) {
-            for (int index = 0; index < filterOutput.length; ++index) {
-                if (index < outputBpp) {
-                    filterOutput[index] = currentRow[index];
-                } else {
-                    filterOutput[index] = (byte) (currentRow[index] - currentRow[index - outputBpp]);
-                }
+            System.arraycopy(currentRow, 0, filterOutput, 0, outputBpp);
+            for (int index = outputBpp; index < filterOutput.length; ++index) {
+                filterOutput[index] = (byte) (currentRow[index] - currentRow[index - outputBpp]);
             }
         }
 
@@ -204,16 +249,13 @@ public class PngEncoder {
          * @see nextapp.echo2.webcontainer.image.PngEncoder.Filter#filter(byte[], byte[], byte[], int)
          */
         public void filter(byte[] filterOutput, byte[] currentRow, byte[] previousRow, int outputBpp) {
-            int w, n;
-            
-            for (int index = 0; index < filterOutput.length; ++index) {
-                n = (previousRow[index] + 0x100) & 0xff;
-                if (index < outputBpp) {
-                    w = 0;
-                } else {
-                    w = (currentRow[index - outputBpp] + 0x100) & 0xff;
-                }
-                filterOutput[index] = (byte) (currentRow[index] - (byte) ((w + n) / 2));
+            for (int index = 0; index < outputBpp; ++index) {
+                filterOutput[index] = (byte) (currentRow[index] - ((previousRow[index] & 0xff) >> 1));
+            }
+            for (int index = outputBpp; index < filterOutput.length; ++index) {
+                int w = currentRow[index - outputBpp] & 0xff;
+                int n = previousRow[index] & 0xff;
+                filterOutput[index] = (byte) (currentRow[index] - ((w + n) >> 1));
             }
         }
 
@@ -235,29 +277,28 @@ public class PngEncoder {
          * @see nextapp.echo2.webcontainer.image.PngEncoder.Filter#filter(byte[], byte[], byte[], int)
          */
         public void filter(byte[] filterOutput, byte[] currentRow, byte[] previousRow, int outputBpp) {
-            byte pv;
-            int  n, w, nw, p, pn, pw, pnw;
+            int pv, n, w, nw, p, pn, pw, pnw;
             
             for (int index = 0; index < filterOutput.length; ++index) {
-                n = (previousRow[index] + 0x100) & 0xff;
+                n = previousRow[index] & 0xff;
                 if (index < outputBpp) {
                     w = 0;
                     nw = 0;
                 } else {
-                    w = (currentRow[index - outputBpp] + 0x100) & 0xff;
-                    nw = (previousRow[index - outputBpp] + 0x100) & 0xff;
+                    w = currentRow[index - outputBpp] & 0xff;
+                    nw = previousRow[index - outputBpp] & 0xff;
                 }
                 
                 p = w + n - nw;
-                pw = Math.abs(p - w);
-                pn = Math.abs(p - n);
-                pnw = Math.abs(p - w);
+                pw = p > w ? p - w : w - p;
+                pn = p > n ? p - n : n - p;
+                pnw = p > nw ? p - nw : nw - p;
                 if (pw <= pn && pw <= pnw) {
-                    pv = (byte) w;
+                    pv = w;
                 } else if (pn <= pnw) {
-                    pv = (byte) n;
+                    pv = n;
                 } else {
-                    pv = (byte) nw;
+                    pv = nw;
                 }
                 
                 filterOutput[index] = (byte) (currentRow[index] - pv);
@@ -346,8 +387,44 @@ public class PngEncoder {
         }
     }
     
+    /**
+     * Translates integer-based rasters whose pixels are stored in (A)RGB 
+     * order, reading raster data directly rather than converting each pixel
+     * through the image's <code>ColorModel</code>.
+     */
+    private class IntRgbTranslator
+    implements Translator  {
+    
+        int[] inputPixelQueue = new int[width];
+
+        /**
+         * @see nextapp.echo2.webcontainer.image.PngEncoder.Translator#translate(byte[], int)
+         */
+        public void translate(byte[] outputPixelQueue, int row) {
+            raster.getDataElements(0, row, width, 1, inputPixelQueue);
+            int index = 0;
+            if (outputBpp == 4) {
+                for (int column = 0; column < width; ++column) {
+                    int pixel = inputPixelQueue[column];
+                    outputPixelQueue[index++] = (byte) (pixel >> 16);
+                    outputPixelQueue[index++] = (byte) (pixel >> 8);
+                    outputPixelQueue[index++] = (byte) pixel;
+                    outputPixelQueue[index++] = (byte) (pixel >> 24);
+                }
+            } else {
+                for (int column = 0; column < width; ++column) {
+                    int pixel = inputPixelQueue[column];
+                    outputPixelQueue[index++] = (byte) (pixel >> 16);
+                    outputPixelQueue[index++] = (byte) (pixel >> 8);
+                    outputPixelQueue[index++] = (byte) pixel;
+                }
+            }
+        }
+    }
+    
     private BufferedImage image;
     private Filter filter;
+    private boolean adaptiveFiltering;
     private int compressionLevel;
     private int width;
     private int height;
@@ -378,10 +455,44 @@ public class PngEncoder {
      *        compromise value is 3.
      */
     public PngEncoder(Image image, boolean encodeAlpha, Filter filter, int compressionLevel) {
+        this(image, encodeAlpha, filter, false, compressionLevel);
+    }
+    
+    /**
+     * Creates a PNG encoder for an image, which may filter the image data
+     * adaptively.
+     *
+     * @param image the image to be encoded
+     * @param encodeAlpha true if the image's alpha channel should be encoded
+     * @param adaptiveFiltering true if the encoder should select the filter
+     *        (or no filter) for each row individually, choosing that which 
+     *        minimizes the sum of absolute differences of the filtered row,
+     *        as recommended by the PNG specification; false if no filtering
+     *        should be performed
+     * @param compressionLevel the deflater compression level that will be used
+     *        for compressing the image data:  Valid values range from 0 to 9.
+     */
+    public PngEncoder(Image image, boolean encodeAlpha, boolean adaptiveFiltering, int compressionLevel) {
+        this(image, encodeAlpha, null, adaptiveFiltering, compressionLevel);
+    }
+    
+    /**
+     * Creates a PNG encoder for an image.
+     *
+     * @param image the image to be encoded
+     * @param encodeAlpha true if the image's alpha channel should be encoded
+     * @param filter the filter to be applied to the image data, or null
+     * @param adaptiveFiltering true if filters should be selected per row
+     *        (<code>filter</code> is then ignored)
+     * @param compressionLevel the deflater compression level
+     */
+    private PngEncoder(Image image, boolean encodeAlpha, Filter filter, boolean adaptiveFiltering, 
+            int compressionLevel) {
         super();
         
         this.image = ImageToBufferedImage.toBufferedImage(image);
         this.filter = filter;
+        this.adaptiveFiltering = adaptiveFiltering;
         this.compressionLevel = compressionLevel;
         
         width = this.image.getWidth(null);
@@ -400,6 +511,11 @@ public class PngEncoder {
             inputBpp = 3;
             encodeAlpha = false;
             translator = new ByteTranslator();
+        } else if (transferType == DataBuffer.TYPE_INT && dataBytes == 1 && isIntRgb(this.image.getColorModel())) {
+            // Opaque images are encoded without an alpha channel.
+            outputBpp = encodeAlpha && this.image.getColorModel().hasAlpha() ? 4 : 3;
+            inputBpp = 4;
+            translator = new IntRgbTranslator();
         } else if (transferType == DataBuffer.TYPE_INT && dataBytes == 1) {
             outputBpp = encodeAlpha ? 4 : 3;
             inputBpp = 4;
@@ -437,6 +553,27 @@ public class PngEncoder {
         writeIendChunk(out, csum);
     }
     
+    /**
+     * Computes the sum of the absolute values of the (signed) bytes of a
+     * filtered row, the heuristic used to select filters adaptively.
+     * 
+     * @param filteredRow the filtered row
+     * @param limit the sum beyond which computation may be abandoned
+     * @return the sum, or a value greater than or equal to
+     *         <code>limit</code> if the sum exceeds it
+     */
+    private static long sumAbsoluteDifferences(byte[] filteredRow, long limit) {
+        long sum = 0;
+        for (int index = 0; index < filteredRow.length; ++index) {
+            int value = filteredRow[index];
+            sum += value < 0 ? -value : value;
+            if (sum >= limit) {
+                return sum;
+            }
+        }
+        return sum;
+    }
+    
     /**
      * Writes the IDAT (Image data) chunks to the output stream.
      *
@@ -451,11 +588,15 @@ public class PngEncoder {
 
         int row = 0;
                 
-        Deflater deflater = new Deflater(compressionLevel);
-        ByteArrayOutputStream byteOut = new ByteArrayOutputStream();
-        DeflaterOutputStream defOut = new DeflaterOutputStream(byteOut, deflater);
+        Deflater deflater = getDeflater(compressionLevel);
+        ByteArrayOutputStream byteOut = new ByteArrayOutputStream(rowWidth * height / 4 + 64);
+        DeflaterOutputStream defOut = new DeflaterOutputStream(byteOut, deflater, 8192);
 
         byte[] filteredPixelQueue = new byte[rowWidth];
+        byte[] filterType = new byte[1];
+        
+        // Adaptive filtering: filtered output of the best filter found for a row.
+        byte[] bestFilteredPixelQueue = adaptiveFiltering ? new byte[rowWidth] : null;
 
         // Output Pixel Queues
         byte[][] outputPixelQueue = new byte[2][rowWidth];
@@ -464,13 +605,36 @@ public class PngEncoder {
         int outputPixelQueuePrevRow = 1;
 
         while (row < height) {
-            if (filter == null) {
-                defOut.write(0);
-                translator.translate(outputPixelQueue[outputPixelQueueRow], row);
+            translator.translate(outputPixelQueue[outputPixelQueueRow], row);
+            if (adaptiveFiltering) {
+                // Unfiltered row is the initial candidate.
+                byte[] bestRow = outputPixelQueue[outputPixelQueueRow];
+                long bestSum = sumAbsoluteDifferences(bestRow, Long.MAX_VALUE);
+                filterType[0] = 0;
+                for (int i = 0; i < ADAPTIVE_FILTERS.length; ++i) {
+                    ADAPTIVE_FILTERS[i].filter(filteredPixelQueue, outputPixelQueue[outputPixelQueueRow], 
+                            outputPixelQueue[outputPixelQueuePrevRow], outputBpp);
+                    long sum = sumAbsoluteDifferences(filteredPixelQueue, bestSum);
+                    if (sum < bestSum) {
+                        bestSum = sum;
+                        filterType[0] = (byte) ADAPTIVE_FILTERS[i].getType();
+                        
+                        // Swap buffers, retaining the best filtered row.
+                        byte[] temp = bestFilteredPixelQueue;
+                        bestFilteredPixelQueue = filteredPixelQueue;
+                        filteredPixelQueue = temp;
+                        bestRow = bestFilteredPixelQueue;
+                    }
+                }
+                defOut.write(filterType, 0, 1);
+                defOut.write(bestRow, 0, rowWidth);
+            } else if (filter == null) {
+                filterType[0] = 0;
+                defOut.write(filterType, 0, 1);
                 defOut.write(outputPixelQueue[outputPixelQueueRow], 0, rowWidth);
             } else {
-                defOut.write(filter.getType());
-                translator.translate(outputPixelQueue[outputPixelQueueRow], row);
+                filterType[0] = (byte) filter.getType();
+                defOut.write(filterType, 0, 1);
                 filter.filter(filteredPixelQueue, outputPixelQueue[outputPixelQueueRow], 
                         outputPixelQueue[outputPixelQueuePrevRow], outputBpp);
                 defOut.write(filteredPixelQueue, 0, rowWidth);
@@ -29,6 +29,7 @@
 
 package nextapp.echo2.webcontainer.image;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 
 import nextapp.echo2.app.ImageReference;
@@ -52,6 +53,22 @@ public class StreamImageService extends AbstractImageService {
         WebRenderServlet.getServiceRegistry().add(INSTANCE);
     }
     
+    /**
+     * Renders <code>StreamImageReference</code>s to a buffer.
+     * 
+     * @see nextapp.echo2.webcontainer.image.AbstractImageService#encodeImage(nextapp.echo2.app.ImageReference)
+     */
+    protected EncodedImageCache.Entry encodeImage(ImageReference imageReference)
+    throws IOException {
+        if (!(imageReference instanceof StreamImageReference)) {
+            return null;
+        }
+        StreamImageReference streamImageReference = (StreamImageReference) imageReference;
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        streamImageReference.render(out);
+        return new EncodedImageCache.Entry(new ContentType(streamImageReference.getContentType(), true), out.toByteArray());
+    }
+    
     /**
      * @see nextapp.echo2.webrender.Service#getId()
      */
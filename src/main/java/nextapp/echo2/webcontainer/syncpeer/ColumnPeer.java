@@ -49,6 +49,7 @@ import nextapp.echo2.webcontainer.ContainerInstance;
 import nextapp.echo2.webcontainer.DomUpdateSupport;
 import nextapp.echo2.webcontainer.PartialUpdateManager;
 import nextapp.echo2.webcontainer.RenderContext;
+import nextapp.echo2.webcontainer.RenderProfiler;
 import nextapp.echo2.webcontainer.RenderState;
 import nextapp.echo2.webcontainer.ComponentSynchronizePeer;
 import nextapp.echo2.webcontainer.SynchronizePeerFactory;
@@ -165,9 +166,9 @@ implements ComponentSynchronizePeer, DomUpdateSupport, ImageRenderSupport {
     private void renderAddChild(RenderContext rc, ServerComponentUpdate update, Element parentElement, Component child) {
         ComponentSynchronizePeer syncPeer = SynchronizePeerFactory.getPeerForComponent(child.getClass());
         if (syncPeer instanceof DomUpdateSupport) {
-            ((DomUpdateSupport) syncPeer).renderHtml(rc, update, parentElement, child);
+            RenderProfiler.renderHtml((DomUpdateSupport) syncPeer, rc, update, parentElement, child);
         } else {
-            syncPeer.renderAdd(rc, update, getContainerId(child), child);
+            RenderProfiler.renderAdd(syncPeer, rc, update, getContainerId(child), child);
         }
     }
     
@@ -298,9 +299,9 @@ implements ComponentSynchronizePeer, DomUpdateSupport, ImageRenderSupport {
         
         parentNode.appendChild(divElement);
         
-        Component[] children = column.getVisibleComponents();
-        for (int i = 0; i < children.length; ++i) {
-            renderChild(rc, update, divElement, component, children[i]);
+        int childCount = column.getVisibleComponentCount();
+        for (int i = 0; i < childCount; ++i) {
+            renderChild(rc, update, divElement, component, column.getVisibleComponent(i));
         }
         
         storeRenderState(rc, column);
@@ -43,6 +43,7 @@ import nextapp.echo2.webcontainer.ComponentSynchronizePeer;
 import nextapp.echo2.webcontainer.ContainerInstance;
 import nextapp.echo2.webcontainer.DomUpdateSupport;
 import nextapp.echo2.webcontainer.RenderContext;
+import nextapp.echo2.webcontainer.RenderProfiler;
 import nextapp.echo2.webcontainer.SynchronizePeerFactory;
 import nextapp.echo2.webcontainer.propertyrender.BorderRender;
 import nextapp.echo2.webcontainer.propertyrender.ColorRender;
@@ -121,9 +122,9 @@ implements ComponentSynchronizePeer, DomUpdateSupport{
         ComponentSynchronizePeer syncPeer = SynchronizePeerFactory.getPeerForComponent(child.getClass());
         
         if (syncPeer instanceof DomUpdateSupport) {
-            ((DomUpdateSupport) syncPeer).renderHtml(rc, update, divElement, child);
+            RenderProfiler.renderHtml((DomUpdateSupport) syncPeer, rc, update, divElement, child);
         } else {
-            syncPeer.renderAdd(rc, update, getContainerId(child), child);
+            RenderProfiler.renderAdd(syncPeer, rc, update, getContainerId(child), child);
         }
     }
 
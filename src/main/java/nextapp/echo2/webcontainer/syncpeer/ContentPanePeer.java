@@ -51,6 +51,7 @@ import nextapp.echo2.webcontainer.PartialUpdateManager;
 import nextapp.echo2.webcontainer.PartialUpdateParticipant;
 import nextapp.echo2.webcontainer.PropertyUpdateProcessor;
 import nextapp.echo2.webcontainer.RenderContext;
+import nextapp.echo2.webcontainer.RenderProfiler;
 import nextapp.echo2.webcontainer.ComponentSynchronizePeer;
 import nextapp.echo2.webcontainer.SynchronizePeerFactory;
 import nextapp.echo2.webcontainer.image.ImageRenderSupport;
@@ -237,9 +238,9 @@ implements ComponentSynchronizePeer, DomUpdateSupport, ImageRenderSupport, Prope
         parentNode.appendChild(containerDivElement);
         ComponentSynchronizePeer syncPeer = SynchronizePeerFactory.getPeerForComponent(child.getClass());
         if (syncPeer instanceof DomUpdateSupport) {
-            ((DomUpdateSupport) syncPeer).renderHtml(rc, update, containerDivElement, child);
+            RenderProfiler.renderHtml((DomUpdateSupport) syncPeer, rc, update, containerDivElement, child);
         } else {
-            syncPeer.renderAdd(rc, update, containerId, child);
+            RenderProfiler.renderAdd(syncPeer, rc, update, containerId, child);
         }
     }
     
@@ -301,9 +302,9 @@ implements ComponentSynchronizePeer, DomUpdateSupport, ImageRenderSupport, Prope
         // Render initialization directive.
         renderInitDirective(rc, contentPane);
         
-        Component[] children = contentPane.getVisibleComponents();
-        for (int i = 0; i < children.length; ++i) {
-            renderChild(rc, update, divElement, contentPane, children[i]);
+        int childCount = contentPane.getVisibleComponentCount();
+        for (int i = 0; i < childCount; ++i) {
+            renderChild(rc, update, divElement, contentPane, contentPane.getVisibleComponent(i));
         }
     }
 
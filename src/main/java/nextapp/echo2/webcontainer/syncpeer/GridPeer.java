@@ -49,6 +49,7 @@ import nextapp.echo2.app.update.ServerComponentUpdate;
 import nextapp.echo2.webcontainer.ContainerInstance;
 import nextapp.echo2.webcontainer.DomUpdateSupport;
 import nextapp.echo2.webcontainer.RenderContext;
+import nextapp.echo2.webcontainer.RenderProfiler;
 import nextapp.echo2.webcontainer.ComponentSynchronizePeer;
 import nextapp.echo2.webcontainer.SynchronizePeerFactory;
 import nextapp.echo2.webcontainer.image.ImageRenderSupport;
@@ -136,9 +137,9 @@ implements ComponentSynchronizePeer, DomUpdateSupport, ImageRenderSupport {
     private void renderAddChild(RenderContext rc, ServerComponentUpdate update, Element parentElement, Component child) {
         ComponentSynchronizePeer syncPeer = SynchronizePeerFactory.getPeerForComponent(child.getClass());
         if (syncPeer instanceof DomUpdateSupport) {
-            ((DomUpdateSupport) syncPeer).renderHtml(rc, update, parentElement, child);
+            RenderProfiler.renderHtml((DomUpdateSupport) syncPeer, rc, update, parentElement, child);
         } else {
-            syncPeer.renderAdd(rc, update, getContainerId(child), child);
+            RenderProfiler.renderAdd(syncPeer, rc, update, getContainerId(child), child);
         }
     }
     
@@ -50,6 +50,7 @@ import nextapp.echo2.webcontainer.ContainerInstance;
 import nextapp.echo2.webcontainer.DomUpdateSupport;
 import nextapp.echo2.webcontainer.PartialUpdateManager;
 import nextapp.echo2.webcontainer.RenderContext;
+import nextapp.echo2.webcontainer.RenderProfiler;
 import nextapp.echo2.webcontainer.RenderState;
 import nextapp.echo2.webcontainer.ComponentSynchronizePeer;
 import nextapp.echo2.webcontainer.SynchronizePeerFactory;
@@ -167,9 +168,9 @@ implements ComponentSynchronizePeer, DomUpdateSupport, ImageRenderSupport {
     private void renderAddChild(RenderContext rc, ServerComponentUpdate update, Element parentElement, Component child) {
         ComponentSynchronizePeer syncPeer = SynchronizePeerFactory.getPeerForComponent(child.getClass());
         if (syncPeer instanceof DomUpdateSupport) {
-            ((DomUpdateSupport) syncPeer).renderHtml(rc, update, parentElement, child);
+            RenderProfiler.renderHtml((DomUpdateSupport) syncPeer, rc, update, parentElement, child);
         } else {
-            syncPeer.renderAdd(rc, update, getContainerId(child), child);
+            RenderProfiler.renderAdd(syncPeer, rc, update, getContainerId(child), child);
         }
     }
     
@@ -318,9 +319,9 @@ implements ComponentSynchronizePeer, DomUpdateSupport, ImageRenderSupport {
         trElement.setAttribute("id", elementId + "_tr");
         tbodyElement.appendChild(trElement);
         
-        Component[] children = row.getVisibleComponents();
-        for (int i = 0; i < children.length; ++i) {
-            renderChild(rc, update, trElement, component, children[i]);
+        int childCount = row.getVisibleComponentCount();
+        for (int i = 0; i < childCount; ++i) {
+            renderChild(rc, update, trElement, component, row.getVisibleComponent(i));
         }
         
         storeRenderState(rc, row);
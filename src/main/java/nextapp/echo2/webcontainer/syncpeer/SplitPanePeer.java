@@ -46,6 +46,7 @@ import nextapp.echo2.webcontainer.PartialUpdateManager;
 import nextapp.echo2.webcontainer.PartialUpdateParticipant;
 import nextapp.echo2.webcontainer.PropertyUpdateProcessor;
 import nextapp.echo2.webcontainer.RenderContext;
+import nextapp.echo2.webcontainer.RenderProfiler;
 import nextapp.echo2.webcontainer.ComponentSynchronizePeer;
 import nextapp.echo2.webcontainer.RenderState;
 import nextapp.echo2.webcontainer.SynchronizePeerFactory;
@@ -289,9 +290,9 @@ implements ImageRenderSupport, PropertyUpdateProcessor, ComponentSynchronizePeer
         serverMessage.addLibrary(SPLIT_PANE_SERVICE.getId());
         SplitPane splitPane = (SplitPane) component;
         renderInitDirective(rc, splitPane, targetId);
-        Component[] children = splitPane.getVisibleComponents();
-        for (int i = 0; i < children.length; ++i) {
-            renderChild(rc, update, splitPane, children[i]);
+        int childCount = splitPane.getVisibleComponentCount();
+        for (int i = 0; i < childCount; ++i) {
+            renderChild(rc, update, splitPane, splitPane.getVisibleComponent(i));
         }
         updateRenderState(rc, splitPane);
     }
@@ -349,7 +350,7 @@ implements ImageRenderSupport, PropertyUpdateProcessor, ComponentSynchronizePeer
      */
     private void renderChild(RenderContext rc, ServerComponentUpdate update, SplitPane splitPane, Component child) {
         ComponentSynchronizePeer syncPeer = SynchronizePeerFactory.getPeerForComponent(child.getClass());
-        syncPeer.renderAdd(rc, update, getContainerId(child), child);
+        RenderProfiler.renderAdd(syncPeer, rc, update, getContainerId(child), child);
     }
 
     /**
@@ -488,9 +489,9 @@ implements ImageRenderSupport, PropertyUpdateProcessor, ComponentSynchronizePeer
             initElement.setAttribute("separator-image", fillImageCssStyle.renderInline());
         }
         
-        Component[] children = splitPane.getVisibleComponents();
-        for (int i = 0; i < children.length; ++i) {
-            renderLayoutData(rc, initElement, children[i], i);
+        int childCount = splitPane.getVisibleComponentCount();
+        for (int i = 0; i < childCount; ++i) {
+            renderLayoutData(rc, initElement, splitPane.getVisibleComponent(i), i);
         }
 
         partElement.appendChild(initElement);
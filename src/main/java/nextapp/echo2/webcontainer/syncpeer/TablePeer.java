@@ -29,6 +29,14 @@
 
 package nextapp.echo2.webcontainer.syncpeer;
 
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
 import org.w3c.dom.Document;
 import org.w3c.dom.DocumentFragment;
 import org.w3c.dom.Element;
@@ -44,9 +52,11 @@ import nextapp.echo2.app.Font;
 import nextapp.echo2.app.ImageReference;
 import nextapp.echo2.app.Insets;
 import nextapp.echo2.app.LayoutData;
+import nextapp.echo2.app.Style;
 import nextapp.echo2.app.Table;
 import nextapp.echo2.app.layout.TableLayoutData;
 import nextapp.echo2.app.list.ListSelectionModel;
+import nextapp.echo2.app.table.LightweightTableCellRenderer;
 import nextapp.echo2.app.table.TableColumnModel;
 import nextapp.echo2.app.update.ServerComponentUpdate;
 import nextapp.echo2.webcontainer.ActionProcessor;
@@ -55,6 +65,7 @@ import nextapp.echo2.webcontainer.DomUpdateSupport;
 import nextapp.echo2.webcontainer.PartialUpdateManager;
 import nextapp.echo2.webcontainer.PropertyUpdateProcessor;
 import nextapp.echo2.webcontainer.RenderContext;
+import nextapp.echo2.webcontainer.RenderProfiler;
 import nextapp.echo2.webcontainer.ComponentSynchronizePeer;
 import nextapp.echo2.webcontainer.SynchronizePeerFactory;
 import nextapp.echo2.webcontainer.image.ImageRenderSupport;
@@ -91,6 +102,7 @@ implements ActionProcessor, ComponentSynchronizePeer, ImageRenderSupport, Proper
     
     private static final String[] TABLE_INIT_KEYS = new String[]{"rollover-style", "selection-style"};
     
+    private static final String PROPERTY_FIRST_VISIBLE_ROW = "firstVisibleRow";
     private static final String PROPERTY_SELECTION = "selection";
     
     private static final String IMAGE_ID_ROLLOVER_BACKGROUND = "rolloverBackground";
@@ -151,7 +163,19 @@ implements ActionProcessor, ComponentSynchronizePeer, ImageRenderSupport, Proper
      *         <code>LayoutData</code> is not a <code>TableLayoutData</code>
      */
     private TableLayoutData getLayoutData(Component child) {
-        LayoutData layoutData = (LayoutData) child.getRenderProperty(Component.PROPERTY_LAYOUT_DATA);
+        return getLayoutData((LayoutData) child.getRenderProperty(Component.PROPERTY_LAYOUT_DATA));
+    }
+    
+    /**
+     * Returns the provided <code>LayoutData</code> as 
+     * <code>TableLayoutData</code>.
+     *
+     * @param layoutData the layout data (may be null)
+     * @return the layout data
+     * @throws java.lang.RuntimeException if the the provided
+     *         <code>LayoutData</code> is not a <code>TableLayoutData</code>
+     */
+    private TableLayoutData getLayoutData(LayoutData layoutData) {
         if (layoutData == null) {
             return null;
         } else if (layoutData instanceof TableLayoutData) {
@@ -183,6 +207,10 @@ implements ActionProcessor, ComponentSynchronizePeer, ImageRenderSupport, Proper
             }
             ci.getUpdateManager().getClientUpdateManager().setComponentProperty(component, 
                     Table.SELECTION_CHANGED_PROPERTY, selectedIndices);
+        } else if (PROPERTY_FIRST_VISIBLE_ROW.equals(propertyName)) {
+            Integer firstVisibleRow = Integer.valueOf(propertyElement.getAttribute(PropertyUpdateProcessor.PROPERTY_VALUE));
+            ci.getUpdateManager().getClientUpdateManager().setComponentProperty(component, 
+                    Table.FIRST_VISIBLE_ROW_CHANGED_PROPERTY, firstVisibleRow);
         }
     }
     
@@ -193,11 +221,8 @@ implements ActionProcessor, ComponentSynchronizePeer, ImageRenderSupport, Proper
     public void renderAdd(RenderContext rc, ServerComponentUpdate update, String targetId, Component component) {
         Table table = (Table) component;
         Border border = (Border) table.getRenderProperty(Table.PROPERTY_BORDER);
-        Insets tableInsets = (Insets) table.getRenderProperty(Table.PROPERTY_INSETS);
-        String defaultInsetsAttributeValue = tableInsets == null 
-                ? "0px" : InsetsRender.renderCssAttributeValue(tableInsets);
         CssStyle styleCss = new CssStyle();
-        styleCss.setAttribute("padding", defaultInsetsAttributeValue);
+        styleCss.setAttribute("padding", getDefaultInsetsAttributeValue(table));
         BorderRender.renderToStyle(styleCss, border);
         DomUpdate.renderStyleSheetAddRule(rc.getServerMessage(), "TD.c-" + component.getRenderId(), styleCss.renderInline());
         
@@ -222,9 +247,9 @@ implements ActionProcessor, ComponentSynchronizePeer, ImageRenderSupport, Proper
         }
         ComponentSynchronizePeer syncPeer = SynchronizePeerFactory.getPeerForComponent(child.getClass());
         if (syncPeer instanceof DomUpdateSupport) {
-            ((DomUpdateSupport) syncPeer).renderHtml(rc, update, parentElement, child);
+            RenderProfiler.renderHtml((DomUpdateSupport) syncPeer, rc, update, parentElement, child);
         } else {
-            syncPeer.renderAdd(rc, update, getContainerId(child), child);
+            RenderProfiler.renderAdd(syncPeer, rc, update, getContainerId(child), child);
         }
     }
     
@@ -234,6 +259,7 @@ implements ActionProcessor, ComponentSynchronizePeer, ImageRenderSupport, Proper
      */
     public void renderDispose(RenderContext rc, ServerComponentUpdate update, Component component) {
         rc.getServerMessage().addLibrary(TABLE_SERVICE.getId());
+        DomUpdate.renderStyleSheetRemoveRule(rc.getServerMessage(), "TD.c-" + component.getRenderId());
         renderDisposeDirective(rc, (Table) component);
     }
     
@@ -246,8 +272,6 @@ implements ActionProcessor, ComponentSynchronizePeer, ImageRenderSupport, Proper
      * @param table the table
      */
     private void renderDisposeDirective(RenderContext rc, Table table) {
-       DomUpdate.renderStyleSheetRemoveRule(rc.getServerMessage(), "TD.c-" + table.getRenderId());
- 
         ServerMessage serverMessage = rc.getServerMessage();
         Element itemizedUpdateElement = serverMessage.getItemizedDirective(ServerMessage.GROUP_ID_PREREMOVE,
                 "EchoTable.MessageProcessor", "dispose",  new String[0], new String[0]);
@@ -256,6 +280,88 @@ implements ActionProcessor, ComponentSynchronizePeer, ImageRenderSupport, Proper
         itemizedUpdateElement.appendChild(itemElement);
     }
 
+    /**
+     * Returns the CSS padding attribute value of the default cell insets
+     * of a <code>Table</code>.
+     * 
+     * @param table the <code>Table</code>
+     * @return the CSS padding attribute value
+     */
+    private String getDefaultInsetsAttributeValue(Table table) {
+        Insets tableInsets = (Insets) table.getRenderProperty(Table.PROPERTY_INSETS);
+        return tableInsets == null ? "0px" : InsetsRender.renderCssAttributeValue(tableInsets);
+    }
+    
+    /**
+     * Determines the indices of the rows which contain cell components added 
+     * by an update, such that the update may be rendered by inserting and 
+     * removing individual rows.  Returns null in the event that the update 
+     * requires the table to be fully re-rendered, e.g., when properties or
+     * the header row have changed, or when every cell has been replaced.
+     * 
+     * @param rc the relevant <code>RenderContext</code>
+     * @param update the update
+     * @return the ascending indices of rows to (re)insert, relative to the
+     *         first rendered row, or null if the table must be fully 
+     *         re-rendered
+     */
+    private int[] getInsertedRows(RenderContext rc, ServerComponentUpdate update) {
+        if (update.hasUpdatedLayoutDataChildren()) {
+            return null;
+        }
+        String[] updatedPropertyNames = update.getUpdatedPropertyNames();
+        for (int i = 0; i < updatedPropertyNames.length; ++i) {
+            // Viewport position changes only require re-initialization of the client-side table state.
+            if (!Table.FIRST_VISIBLE_ROW_CHANGED_PROPERTY.equals(updatedPropertyNames[i])
+                    && !Table.RENDERED_ROWS_CHANGED_PROPERTY.equals(updatedPropertyNames[i])) {
+                return null;
+            }
+        }
+        
+        Table table = (Table) update.getParent();
+        if (table.isLightweight()) {
+            // Rows without cell components are always re-rendered with the full table.
+            return null;
+        }
+        if (rc.getContainerInstance().getClientProperties().getBoolean(
+                ClientProperties.QUIRK_IE_TABLE_PERCENT_WIDTH_SCROLLBAR_ERROR)) {
+            // Sizing dots of the 100% width workaround are only rendered with the full table.
+            Extent width = (Extent) table.getRenderProperty(Table.PROPERTY_WIDTH);
+            if (width != null && width.getUnits() == Extent.PERCENT && width.getValue() == 100) {
+                return null;
+            }
+        }
+        
+        Component[] addedChildren = update.getAddedChildren();
+        int componentCount = table.getComponentCount();
+        int columnCount = table.getColumnModel().getColumnCount();
+        if (columnCount == 0 || (addedChildren.length > 0 && addedChildren.length == componentCount)) {
+            return null;
+        }
+        
+        Set addedChildSet = new HashSet();
+        for (int i = 0; i < addedChildren.length; ++i) {
+            addedChildSet.add(addedChildren[i]);
+        }
+        int headerCellCount = table.isHeaderVisible() ? columnCount : 0;
+        SortedSet rowSet = new TreeSet();
+        for (int i = 0; i < componentCount && !addedChildSet.isEmpty(); ++i) {
+            if (addedChildSet.remove(table.getComponent(i))) {
+                if (i < headerCellCount) {
+                    return null;
+                }
+                rowSet.add(new Integer((i - headerCellCount) / columnCount));
+            }
+        }
+        
+        int[] rows = new int[rowSet.size()];
+        Iterator it = rowSet.iterator();
+        for (int i = 0; i < rows.length; ++i) {
+            rows[i] = ((Integer) it.next()).intValue();
+        }
+        return rows;
+    }
+    
     /**
      * @see nextapp.echo2.webcontainer.DomUpdateSupport#renderHtml(nextapp.echo2.webcontainer.RenderContext, 
      *      nextapp.echo2.app.update.ServerComponentUpdate, org.w3c.dom.Node, nextapp.echo2.app.Component)
@@ -283,9 +389,7 @@ implements ActionProcessor, ComponentSynchronizePeer, ImageRenderSupport, Proper
             tableCssStyle.setAttribute("cursor", "pointer");
         }
         
-        Insets tableInsets = (Insets) table.getRenderProperty(Table.PROPERTY_INSETS);
-        
-        String defaultInsetsAttributeValue = tableInsets == null ? "0px" : InsetsRender.renderCssAttributeValue(tableInsets);
+        String defaultInsetsAttributeValue = getDefaultInsetsAttributeValue(table);
         
         ColorRender.renderToStyle(tableCssStyle, component);
         FontRender.renderToStyle(tableCssStyle, component);
@@ -310,7 +414,26 @@ implements ActionProcessor, ComponentSynchronizePeer, ImageRenderSupport, Proper
         
         tableElement.setAttribute("style", tableCssStyle.renderInline());
         
-        parentNode.appendChild(tableElement);
+        if (table.getViewportRowCount() > 0) {
+            // Render table within scrollable viewport, the padding of the window element representing unrendered rows.
+            Element viewportDivElement = document.createElement("div");
+            viewportDivElement.setAttribute("id", elementId);
+            CssStyle viewportCssStyle = new CssStyle();
+            viewportCssStyle.setAttribute("overflow", "auto");
+            ExtentRender.renderToStyle(viewportCssStyle, "height", 
+                    (Extent) table.getRenderProperty(Table.PROPERTY_VIEWPORT_HEIGHT));
+            viewportDivElement.setAttribute("style", viewportCssStyle.renderInline());
+            parentNode.appendChild(viewportDivElement);
+            
+            Element windowDivElement = document.createElement("div");
+            windowDivElement.setAttribute("id", elementId + "_window");
+            viewportDivElement.appendChild(windowDivElement);
+            
+            tableElement.setAttribute("id", elementId + "_table");
+            windowDivElement.appendChild(tableElement);
+        } else {
+            parentNode.appendChild(tableElement);
+        }
         
         TableColumnModel columnModel = table.getColumnModel();
         int columnCount = columnModel.getColumnCount();
@@ -340,17 +463,21 @@ implements ActionProcessor, ComponentSynchronizePeer, ImageRenderSupport, Proper
         tableElement.appendChild(tbodyElement);
         
         Element firstTrElement = null;
+        Map lightweightCellPrototypes = table.isLightweight() ? new HashMap() : null;
         
         if (table.isHeaderVisible()) {
-            firstTrElement = renderRow(rc, update, tbodyElement, table, Table.HEADER_ROW, defaultInsetsAttributeValue);
+            firstTrElement = renderRow(rc, update, tbodyElement, table, Table.HEADER_ROW, defaultInsetsAttributeValue, 
+                    lightweightCellPrototypes);
         }
         
-        int rows = table.getModel().getRowCount();
-        for (int rowIndex = 0; rowIndex < rows; ++rowIndex) {
-            if (firstTrElement == null && rowIndex == 0) {
-                firstTrElement = renderRow(rc, update, tbodyElement, table, rowIndex, defaultInsetsAttributeValue);
+        int rowStart = table.getRenderedRowStart();
+        int rowEnd = rowStart + table.getRenderedRowCount();
+        for (int rowIndex = rowStart; rowIndex < rowEnd; ++rowIndex) {
+            if (firstTrElement == null && rowIndex == rowStart) {
+                firstTrElement = renderRow(rc, update, tbodyElement, table, rowIndex, defaultInsetsAttributeValue, 
+                        lightweightCellPrototypes);
             } else {
-                renderRow(rc, update, tbodyElement, table, rowIndex, defaultInsetsAttributeValue);
+                renderRow(rc, update, tbodyElement, table, rowIndex, defaultInsetsAttributeValue, lightweightCellPrototypes);
             }
         }
         
@@ -465,10 +592,118 @@ implements ActionProcessor, ComponentSynchronizePeer, ImageRenderSupport, Proper
         if (!table.isRenderEnabled()) {
             itemElement.setAttribute("enabled", "false");
         }
+        
+        if (table.getViewportRowCount() > 0) {
+            itemElement.setAttribute("viewport-rows", Integer.toString(table.getViewportRowCount()));
+            itemElement.setAttribute("first-visible-row", Integer.toString(table.getFirstVisibleRow()));
+            itemElement.setAttribute("row-offset", Integer.toString(table.getRenderedRowStart()));
+            itemElement.setAttribute("model-row-count", Integer.toString(table.getModel().getRowCount()));
+            if (table.getRenderProperty(Table.PROPERTY_VIEWPORT_HEIGHT) == null) {
+                itemElement.setAttribute("auto-height", "true");
+            }
+        }
 
         itemizedUpdateElement.appendChild(itemElement);
     }
     
+    /**
+     * Renders directives to the outgoing <code>ServerMessage</code> to insert
+     * the specified rows into a rendered table.  Rows are inserted in 
+     * ascending order, such that each is inserted at its final position.
+     * Each run of consecutive rows is inserted by a single directive.
+     * 
+     * @param rc the relevant <code>RenderContext</code>
+     * @param update the update
+     * @param table the table
+     * @param rows the ascending indices of the rows to insert, relative to
+     *        the first rendered row
+     */
+    private void renderInsertRows(RenderContext rc, ServerComponentUpdate update, Table table, int[] rows) {
+        ServerMessage serverMessage = rc.getServerMessage();
+        String elementId = ContainerInstance.getElementId(table);
+        String defaultInsetsAttributeValue = getDefaultInsetsAttributeValue(table);
+        int headerOffset = table.isHeaderVisible() ? 1 : 0;
+        int rowStart = table.getRenderedRowStart();
+        Element insertRowElement = null;
+        for (int i = 0; i < rows.length; ++i) {
+            if (i == 0 || rows[i] != rows[i - 1] + 1) {
+                insertRowElement = serverMessage.appendPartDirective(ServerMessage.GROUP_ID_UPDATE,
+                        "EchoTable.MessageProcessor", "insert-row");
+                insertRowElement.setAttribute("eid", elementId);
+                insertRowElement.setAttribute("index", Integer.toString(rows[i] + headerOffset));
+            }
+            renderRow(rc, update, insertRowElement, table, rowStart + rows[i], defaultInsetsAttributeValue, null);
+        }
+    }
+    
+    /**
+     * Renders a prototype TD element for the cells of a table whose rows are 
+     * rendered without components, which are rendered with the specified 
+     * <code>Style</code>.  Cells are rendered by cloning the prototype and 
+     * appending their text.
+     * 
+     * @param document the document in which to create the element
+     * @param table the <code>Table</code> being rendered
+     * @param style the <code>Style</code> of the cells (may be null)
+     * @param className the CSS class name of table cells, or null if the 
+     *        default cell style must be rendered inline
+     * @param border the border of the table, to be rendered inline if 
+     *        <code>className</code> is null
+     * @param defaultInsetsAttributeValue the default CSS padding attribute value
+     * @return the prototype TD element
+     */
+    private Element renderLightweightCellPrototype(Document document, Table table, Style style, String className, 
+            Border border, String defaultInsetsAttributeValue) {
+        Element tdElement = document.createElement("td");
+        CssStyle tdCssStyle = new CssStyle();
+        TableLayoutData layoutData = null;
+        if (style != null) {
+            ColorRender.renderToStyle(tdCssStyle, (Color) style.getProperty(Component.PROPERTY_FOREGROUND),
+                    (Color) style.getProperty(Component.PROPERTY_BACKGROUND));
+            FontRender.renderToStyle(tdCssStyle, (Font) style.getProperty(Component.PROPERTY_FONT));
+            layoutData = getLayoutData((LayoutData) style.getProperty(Component.PROPERTY_LAYOUT_DATA));
+        }
+        
+        if (className == null) {
+            BorderRender.renderToStyle(tdCssStyle, border);
+            CellLayoutDataRender.renderToElementAndStyle(tdElement, tdCssStyle, table, layoutData, defaultInsetsAttributeValue);
+        } else {
+            tdElement.setAttribute("class", className);
+            CellLayoutDataRender.renderToElementAndStyle(tdElement, tdCssStyle, table, layoutData, null);
+        }
+        
+        if (tdCssStyle.hasAttributes()) {
+            tdElement.setAttribute("style", tdCssStyle.renderInline());
+        }
+        return tdElement;
+    }
+    
+    /**
+     * Renders a directive to the outgoing <code>ServerMessage</code> to remove
+     * the rows containing the cells of child components which were removed 
+     * from a table.
+     * 
+     * @param rc the relevant <code>RenderContext</code>
+     * @param update the update
+     */
+    private void renderRemoveRows(RenderContext rc, ServerComponentUpdate update) {
+        Component[] removedChildren = update.getRemovedChildren();
+        if (removedChildren.length == 0) {
+            return;
+        }
+        ServerMessage serverMessage = rc.getServerMessage();
+        Document document = serverMessage.getDocument();
+        String elementId = ContainerInstance.getElementId(update.getParent());
+        Element removeRowsElement = serverMessage.appendPartDirective(ServerMessage.GROUP_ID_REMOVE,
+                "EchoTable.MessageProcessor", "remove-rows");
+        removeRowsElement.setAttribute("eid", elementId);
+        for (int i = 0; i < removedChildren.length; ++i) {
+            Element cellElement = document.createElement("cell");
+            cellElement.setAttribute("id", elementId + "_cell_" + removedChildren[i].getRenderId());
+            removeRowsElement.appendChild(cellElement);
+        }
+    }
+    
     /**
      * Renders a single row of a table.
      * 
@@ -479,10 +714,14 @@ implements ActionProcessor, ComponentSynchronizePeer, ImageRenderSupport, Proper
      * @param table the <code>Table</code> being rendered
      * @param rowIndex the row to render
      * @param defaultInsetsAttributeValue the default CSS padding attribute value
+     * @param lightweightCellPrototypes a mapping between cell 
+     *        <code>Style</code>s and prototype TD elements, used to render the
+     *        cells of a table whose rows are rendered without components
+     *        (may be null, in which case prototypes are not shared between rows)
      * @return the rendered TR element
      */
     private Element renderRow(RenderContext rc, ServerComponentUpdate update, Element tbodyElement, Table table, int rowIndex,
-            String defaultInsetsAttributeValue) {
+            String defaultInsetsAttributeValue, Map lightweightCellPrototypes) {
         Document document = tbodyElement.getOwnerDocument();
         String elementId = ContainerInstance.getElementId(table);
         
@@ -504,6 +743,35 @@ implements ActionProcessor, ComponentSynchronizePeer, ImageRenderSupport, Proper
         }
         
         int columns = table.getColumnModel().getColumnCount();
+        
+        if (rowIndex != Table.HEADER_ROW && table.isLightweight()) {
+            if (lightweightCellPrototypes == null) {
+                lightweightCellPrototypes = new HashMap();
+            }
+            TableColumnModel columnModel = table.getColumnModel();
+            for (int columnIndex = 0; columnIndex < columns; ++columnIndex) {
+                int modelColumnIndex = columnModel.getColumn(columnIndex).getModelIndex();
+                Object value = table.getModel().getValueAt(modelColumnIndex, rowIndex);
+                LightweightTableCellRenderer renderer = (LightweightTableCellRenderer) table.getCellRenderer(columnIndex);
+                Style style = renderer.getTableCellStyle(table, value, modelColumnIndex, rowIndex);
+                
+                Element prototypeTdElement = (Element) lightweightCellPrototypes.get(style);
+                if (prototypeTdElement == null) {
+                    prototypeTdElement = renderLightweightCellPrototype(document, table, style, 
+                            inlineStyleRequired ? null : className, border, defaultInsetsAttributeValue);
+                    lightweightCellPrototypes.put(style, prototypeTdElement);
+                }
+                
+                Element tdElement = (Element) prototypeTdElement.cloneNode(false);
+                String text = renderer.getTableCellText(table, value, modelColumnIndex, rowIndex);
+                if (text != null) {
+                    tdElement.appendChild(document.createTextNode(text));
+                }
+                trElement.appendChild(tdElement);
+            }
+            return trElement;
+        }
+        
         for (int columnIndex = 0; columnIndex < columns; ++columnIndex) {
             Component childComponent = table.getCellComponent(columnIndex, rowIndex);
             Element tdElement = document.createElement("td");
@@ -540,9 +808,22 @@ implements ActionProcessor, ComponentSynchronizePeer, ImageRenderSupport, Proper
      */
     public boolean renderUpdate(RenderContext rc, ServerComponentUpdate update, String targetId) {
         Table table = (Table) update.getParent();
-        renderDisposeDirective(rc, table);
-        DomUpdate.renderElementRemove(rc.getServerMessage(), ContainerInstance.getElementId(table));
-        renderAdd(rc, update, targetId, table);
-        return true;
+        int[] insertedRows = getInsertedRows(rc, update);
+        if (insertedRows == null) {
+            // Perform full update.
+            DomUpdate.renderStyleSheetRemoveRule(rc.getServerMessage(), "TD.c-" + table.getRenderId());
+            renderDisposeDirective(rc, table);
+            DomUpdate.renderElementRemove(rc.getServerMessage(), ContainerInstance.getElementId(table));
+            renderAdd(rc, update, targetId, table);
+            return true;
+        } else {
+            // Perform row-level updates, re-initializing the client-side table state around them.
+            rc.getServerMessage().addLibrary(TABLE_SERVICE.getId());
+            renderDisposeDirective(rc, table);
+            renderRemoveRows(rc, update);
+            renderInsertRows(rc, update, table, insertedRows);
+            renderInitDirective(rc, table);
+            return false;
+        }
     }
 }
@@ -52,6 +52,7 @@ import nextapp.echo2.webcontainer.PartialUpdateManager;
 import nextapp.echo2.webcontainer.PartialUpdateParticipant;
 import nextapp.echo2.webcontainer.PropertyUpdateProcessor;
 import nextapp.echo2.webcontainer.RenderContext;
+import nextapp.echo2.webcontainer.RenderProfiler;
 import nextapp.echo2.webcontainer.SynchronizePeerFactory;
 import nextapp.echo2.webcontainer.image.ImageRenderSupport;
 import nextapp.echo2.webcontainer.image.ImageTools;
@@ -313,10 +314,10 @@ public class WindowPanePeer implements ActionProcessor, ImageRenderSupport,
         serverMessage.addLibrary(WINDOW_PANE_SERVICE.getId());
         WindowPane windowPane = (WindowPane) component;
         renderInitDirective(rc, windowPane, targetId);
-        Component[] children = windowPane.getVisibleComponents();
-        if (children.length != 0) {
-            ComponentSynchronizePeer syncPeer = SynchronizePeerFactory.getPeerForComponent(children[0].getClass());
-            syncPeer.renderAdd(rc, update, getContainerId(children[0]), children[0]);
+        if (windowPane.getVisibleComponentCount() != 0) {
+            Component child = windowPane.getVisibleComponent(0);
+            ComponentSynchronizePeer syncPeer = SynchronizePeerFactory.getPeerForComponent(child.getClass());
+            RenderProfiler.renderAdd(syncPeer, rc, update, getContainerId(child), child);
         }
     }
 
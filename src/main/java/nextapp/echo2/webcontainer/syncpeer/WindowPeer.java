@@ -35,6 +35,7 @@ import nextapp.echo2.app.update.ServerComponentUpdate;
 import nextapp.echo2.webcontainer.PartialUpdateManager;
 import nextapp.echo2.webcontainer.PartialUpdateParticipant;
 import nextapp.echo2.webcontainer.RenderContext;
+import nextapp.echo2.webcontainer.RenderProfiler;
 import nextapp.echo2.webcontainer.RootSynchronizePeer;
 import nextapp.echo2.webcontainer.ComponentSynchronizePeer;
 import nextapp.echo2.webcontainer.SynchronizePeerFactory;
@@ -118,10 +119,11 @@ implements RootSynchronizePeer {
         }
         
         DomUpdate.renderElementRemoveChildren(rc.getServerMessage(), WindowHtmlService.ROOT_ID);
-        Component[] addedChildren = window.getVisibleComponents();
-        for (int i = 0; i < addedChildren.length; ++i) {
-            ComponentSynchronizePeer childSyncPeer = SynchronizePeerFactory.getPeerForComponent(addedChildren[i].getClass());
-            childSyncPeer.renderAdd(rc, update, WindowHtmlService.ROOT_ID, addedChildren[i]);
+        int childCount = window.getVisibleComponentCount();
+        for (int i = 0; i < childCount; ++i) {
+            Component child = window.getVisibleComponent(i);
+            ComponentSynchronizePeer childSyncPeer = SynchronizePeerFactory.getPeerForComponent(child.getClass());
+            RenderProfiler.renderAdd(childSyncPeer, rc, update, WindowHtmlService.ROOT_ID, child);
         }
     }
 
@@ -33,14 +33,16 @@ import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
-import java.lang.ref.Reference;
 import java.lang.ref.ReferenceQueue;
 import java.lang.ref.WeakReference;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import nextapp.echo2.app.RenderIdSupport;
 
@@ -48,29 +50,159 @@ import nextapp.echo2.app.RenderIdSupport;
  * A table which provides an identifier-to-object mapping, with the objects 
  * being weakly referenced (i.e., the fact that they are held within this table
  * will not prevent them from being garbage collected).
+ * <p>
+ * A table may optionally be bounded to a maximum size, in which case the 
+ * least recently registered/retrieved entries are evicted when the bound is
+ * exceeded.  Note that an evicted object will no longer be retrievable even
+ * if it has not been garbage collected.
  */
 public class IdTable 
 implements Serializable {
     
-    private boolean hasHardReferences = false;
-    private transient Map idToReferenceMap = new HashMap();
+    /**
+     * A <code>WeakReference</code> which stores the identifier with which
+     * its referent was registered, such that the entry may be removed
+     * directly once the reference has been cleared.
+     */
+    private static class IdReference extends WeakReference {
+        
+        private String id;
+        
+        /**
+         * Access stamp, used to determine least recently used entries
+         * in bounded tables.
+         */
+        private volatile long lastAccess;
+        
+        /**
+         * Creates a new <code>IdReference</code>.
+         * 
+         * @param id the identifier
+         * @param referent the referenced object
+         * @param queue the queue with which the reference is registered
+         */
+        private IdReference(String id, Object referent, ReferenceQueue queue) {
+            super(referent, queue);
+            this.id = id;
+        }
+    }
+    
+    /**
+     * <code>Comparator</code> ordering <code>IdReference</code>s from least
+     * to most recently accessed.
+     */
+    private static final Comparator LAST_ACCESS_COMPARATOR = new Comparator() {
+
+        /**
+         * @see java.util.Comparator#compare(java.lang.Object, java.lang.Object)
+         */
+        public int compare(Object o1, Object o2) {
+            long access1 = ((IdReference) o1).lastAccess;
+            long access2 = ((IdReference) o2).lastAccess;
+            return access1 < access2 ? -1 : (access1 == access2 ? 0 : 1);
+        }
+    };
+    
+    private volatile boolean hasHardReferences = false;
+    private int maximumSize;
+    
+    /**
+     * Mapping between identifiers and <code>IdReference</code>s (or, 
+     * immediately following deserialization, the objects themselves).
+     */
+    private transient ConcurrentHashMap idToReferenceMap = new ConcurrentHashMap();
     private transient ReferenceQueue referenceQueue = new ReferenceQueue();
+    private transient AtomicLong accessCount = new AtomicLong();
+    private transient AtomicLong evictionCount = new AtomicLong();
     
     /**
-     * Registers an object with the <code>IdTable</code>
+     * Creates a new, unbounded <code>IdTable</code>.
+     */
+    public IdTable() {
+        this(0);
+    }
+    
+    /**
+     * Creates a new <code>IdTable</code>.
      * 
-     * @param object the object to identify
+     * @param maximumSize the maximum number of entries to retain, or 0 if 
+     *        the table should be unbounded
      */
-    public void register(RenderIdSupport object) {
-        purge();
-        String id = object.getRenderId();
-        WeakReference weakReference;
-        synchronized(idToReferenceMap) {
-            if (!idToReferenceMap.containsKey(id)) {
-                weakReference = new WeakReference(object, referenceQueue);
-                idToReferenceMap.put(id, weakReference);
+    public IdTable(int maximumSize) {
+        super();
+        if (maximumSize < 0) {
+            throw new IllegalArgumentException("Invalid maximum size: " + maximumSize);
+        }
+        this.maximumSize = maximumSize;
+    }
+    
+    /**
+     * Converts hard references to objects (present after deserialization)
+     * to <code>IdReference</code>s.
+     */
+    private synchronized void convertHardReferences() {
+        if (!hasHardReferences) {
+            return;
+        }
+        Iterator it = idToReferenceMap.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry entry = (Map.Entry) it.next();
+            Object object = entry.getValue(); 
+            if (!(object instanceof IdReference)) {
+                String id = (String) entry.getKey();
+                idToReferenceMap.replace(id, object, new IdReference(id, object, referenceQueue));
             }
         }
+        hasHardReferences = false;
+    }
+    
+    /**
+     * Evicts the least recently used entries from a bounded table, reducing
+     * it to seven-eighths of its maximum size such that eviction
+     * is not required on every registration.
+     */
+    private synchronized void evict() {
+        int targetSize = maximumSize - maximumSize / 8;
+        if (idToReferenceMap.size() <= maximumSize) {
+            // Evicted by another thread.
+            return;
+        }
+        
+        List referenceList = new ArrayList(idToReferenceMap.size());
+        Iterator it = idToReferenceMap.values().iterator();
+        while (it.hasNext()) {
+            Object value = it.next();
+            if (value instanceof IdReference) {
+                referenceList.add(value);
+            }
+        }
+        IdReference[] references = (IdReference[]) referenceList.toArray(new IdReference[referenceList.size()]);
+        Arrays.sort(references, LAST_ACCESS_COMPARATOR);
+        
+        for (int i = 0; i < references.length && idToReferenceMap.size() > targetSize; ++i) {
+            if (idToReferenceMap.remove(references[i].id, references[i])) {
+                evictionCount.incrementAndGet();
+            }
+        }
+    }
+    
+    /**
+     * Returns the number of entries evicted from the table as a result of 
+     * its maximum size being exceeded.
+     * 
+     * @return the eviction count
+     */
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+    
+    /**
+     * Returns the maximum number of entries retained by the table.
+     * 
+     * @return the maximum size, or 0 if the table is unbounded
+     */
+    public int getMaximumSize() {
+        return maximumSize;
     }
     
     /**
@@ -82,15 +214,17 @@ implements Serializable {
      */
     public Object getObject(String id) {
         purge();
-        WeakReference weakReference;
-        synchronized(idToReferenceMap) {
-            weakReference = (WeakReference) idToReferenceMap.get(id);
-        }
-        if (weakReference == null) {
-            return null;
+        Object value = idToReferenceMap.get(id);
+        if (value instanceof IdReference) {
+            IdReference reference = (IdReference) value;
+            if (maximumSize != 0) {
+                reference.lastAccess = accessCount.incrementAndGet();
+            }
+            return reference.get();
+        } else {
+            // Null, or a hard reference not yet converted.
+            return value;
         }
-        Object object = weakReference.get();
-        return object;
     }
     
     /**
@@ -100,43 +234,41 @@ implements Serializable {
     private void purge() {
         // Convert any hard references to weak references.
         if (hasHardReferences) {
-            synchronized (idToReferenceMap) {
-                Iterator idIt = idToReferenceMap.keySet().iterator();
-                while (idIt.hasNext()) {
-                    String id = (String) idIt.next();
-                    Object object = idToReferenceMap.get(id); 
-                    if (!(object instanceof WeakReference)) {
-                        WeakReference weakReference = new WeakReference(object, referenceQueue);
-                        idToReferenceMap.put(id, weakReference);
-                    }
-                }
-                hasHardReferences = false;
-            }
+            convertHardReferences();
         }
         
         // Purge weak references that are no longer hard referenced elsewhere.
-        Reference reference = referenceQueue.poll();
-        if (reference == null) {
-            // No such references exist.
-            return;
+        IdReference reference;
+        while ((reference = (IdReference) referenceQueue.poll()) != null) {
+            // Remove only if the entry has not since been replaced.
+            idToReferenceMap.remove(reference.id, reference);
         }
-        Set referenceSet = new HashSet();
-        while (reference != null) {
-            referenceSet.add(reference);
-            reference = referenceQueue.poll();
-        }
-        
-        synchronized (idToReferenceMap) {
-            Iterator idIt = idToReferenceMap.keySet().iterator();
-            while (idIt.hasNext()) {
-                String id = (String) idIt.next();
-                if (referenceSet.contains(idToReferenceMap.get(id))) {
-                    idIt.remove();
+    }
+
+    /**
+     * Registers an object with the <code>IdTable</code>
+     * 
+     * @param object the object to identify
+     */
+    public void register(RenderIdSupport object) {
+        purge();
+        String id = object.getRenderId();
+        Object value = idToReferenceMap.get(id);
+        if (value == null) {
+            IdReference reference = new IdReference(id, object, referenceQueue);
+            if (maximumSize == 0) {
+                idToReferenceMap.putIfAbsent(id, reference);
+            } else {
+                reference.lastAccess = accessCount.incrementAndGet();
+                if (idToReferenceMap.putIfAbsent(id, reference) == null && idToReferenceMap.size() > maximumSize) {
+                    evict();
                 }
             }
+        } else if (maximumSize != 0 && value instanceof IdReference) {
+            ((IdReference) value).lastAccess = accessCount.incrementAndGet();
         }
     }
-
+    
     /**
      * @see java.io.Serializable
      * 
@@ -148,8 +280,10 @@ implements Serializable {
     throws IOException, ClassNotFoundException {
         in.defaultReadObject();
         
-        idToReferenceMap = new HashMap();
+        idToReferenceMap = new ConcurrentHashMap();
         referenceQueue = new ReferenceQueue();
+        accessCount = new AtomicLong();
+        evictionCount = new AtomicLong();
        
         String id = (String) in.readObject();
         if (id != null) {
@@ -164,6 +298,16 @@ implements Serializable {
             }
         }
     }
+    
+    /**
+     * Returns the number of entries in the table, including entries whose
+     * objects have been garbage collected but not yet purged.
+     * 
+     * @return the number of entries
+     */
+    public int size() {
+        return idToReferenceMap.size();
+    }
 
     /**
      * @see java.io.Serializable
@@ -171,14 +315,18 @@ implements Serializable {
     private void writeObject(ObjectOutputStream out) 
     throws IOException {
         out.defaultWriteObject();
-        Iterator it = idToReferenceMap.keySet().iterator();
+        Iterator it = idToReferenceMap.entrySet().iterator();
         while (it.hasNext()) {
-            String id = (String) it.next();
-            out.writeObject(id);
-            Object object = idToReferenceMap.get(id);
+            Map.Entry entry = (Map.Entry) it.next();
+            Object object = entry.getValue();
             if (object instanceof WeakReference) {
                 object = ((WeakReference) object).get();
+                if (object == null) {
+                    // Garbage collected: do not write entry.
+                    continue;
+                }
             }
+            out.writeObject(entry.getKey());
             out.writeObject(object);
         }
         // Write null to specify end of object.
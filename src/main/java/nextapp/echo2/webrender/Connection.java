@@ -123,6 +123,27 @@ public class Connection {
         }
     }
     
+    /**
+     * Determines whether the client will accept a response using GZip
+     * content encoding.
+     * <p>
+     * Due to behavior detailed in Microsoft Knowledge Base Article Id 312496,
+     * all HTTP compression support is disabled for Internet Explorer.
+     * As <code>ClientProperties</code> information is not necessarily
+     * available when this method is invoked, browsers which provide 
+     * deceitful user-agent headers will also be affected.
+     * 
+     * @return true if a GZip-encoded response may be sent
+     */
+    public boolean isGZipEncodingAccepted() {
+        String userAgent = request.getHeader("user-agent");
+        if (userAgent == null || userAgent.indexOf("MSIE") != -1) {
+            return false;
+        }
+        String acceptEncoding = request.getHeader("accept-encoding");
+        return acceptEncoding != null && acceptEncoding.indexOf("gzip") != -1;
+    }
+    
     /**
      * Returns a property from the <code>Connection</code>-persistent 
      * property map.  (Properties are disposed of when <code>Connection</code>
@@ -0,0 +1,201 @@
+/* 
+ * This file is part of the Echo Web Application Framework (hereinafter "Echo").
+ * Copyright (C) 2002-2009 NextApp, Inc.
+ *
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ */
+
+
+package nextapp.echo2.webrender;
+
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+/**
+ * <code>HttpServletResponse</code> wrapper which counts the bytes written
+ * to the response, used to collect <code>ServiceMetrics</code>.
+ * Characters written to the <code>PrintWriter</code> are counted as their
+ * UTF-8 encoded length.
+ */
+class MeteredResponse extends HttpServletResponseWrapper {
+    
+    /**
+     * <code>ServletOutputStream</code> which counts the bytes written to
+     * the wrapped stream.
+     */
+    private class MeteredOutputStream extends ServletOutputStream {
+        
+        private ServletOutputStream out;
+        
+        /**
+         * Creates a new <code>MeteredOutputStream</code>.
+         * 
+         * @param out the wrapped stream
+         */
+        private MeteredOutputStream(ServletOutputStream out) {
+            super();
+            this.out = out;
+        }
+        
+        /**
+         * @see java.io.OutputStream#close()
+         */
+        public void close() throws IOException {
+            out.close();
+        }
+        
+        /**
+         * @see java.io.OutputStream#flush()
+         */
+        public void flush() throws IOException {
+            out.flush();
+        }
+        
+        /**
+         * @see java.io.OutputStream#write(byte[], int, int)
+         */
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            byteCount += len;
+        }
+        
+        /**
+         * @see java.io.OutputStream#write(int)
+         */
+        public void write(int b) throws IOException {
+            out.write(b);
+            ++byteCount;
+        }
+    }
+    
+    /**
+     * <code>Writer</code> which counts the UTF-8 encoded length of the 
+     * characters written to the wrapped writer.
+     */
+    private class MeteredWriter extends FilterWriter {
+        
+        /**
+         * Creates a new <code>MeteredWriter</code>.
+         * 
+         * @param out the wrapped writer
+         */
+        private MeteredWriter(PrintWriter out) {
+            super(out);
+        }
+        
+        /**
+         * Adds the UTF-8 encoded length of a character to the byte count.
+         * 
+         * @param c the character
+         */
+        private void count(int c) {
+            if (c < 0x80) {
+                ++byteCount;
+            } else if (c < 0x800 || (c >= 0xd800 && c < 0xe000)) {
+                // Surrogates: each half of a pair is counted as 2 of its 4 bytes.
+                byteCount += 2;
+            } else {
+                byteCount += 3;
+            }
+        }
+        
+        /**
+         * @see java.io.Writer#write(char[], int, int)
+         */
+        public void write(char[] cbuf, int off, int len) throws IOException {
+            out.write(cbuf, off, len);
+            for (int i = off + len - 1; i >= off; --i) {
+                count(cbuf[i]);
+            }
+        }
+        
+        /**
+         * @see java.io.Writer#write(int)
+         */
+        public void write(int c) throws IOException {
+            out.write(c);
+            count(c);
+        }
+        
+        /**
+         * @see java.io.Writer#write(java.lang.String, int, int)
+         */
+        public void write(String str, int off, int len) throws IOException {
+            out.write(str, off, len);
+            for (int i = off + len - 1; i >= off; --i) {
+                count(str.charAt(i));
+            }
+        }
+    }
+    
+    private long byteCount;
+    private ServletOutputStream outputStream;
+    private PrintWriter writer;
+    
+    /**
+     * Creates a new <code>MeteredResponse</code>.
+     * 
+     * @param response the wrapped response
+     */
+    MeteredResponse(HttpServletResponse response) {
+        super(response);
+    }
+    
+    /**
+     * Returns the number of bytes written to the response.
+     * 
+     * @return the number of bytes
+     */
+    long getByteCount() {
+        return byteCount;
+    }
+    
+    /**
+     * @see javax.servlet.ServletResponse#getOutputStream()
+     */
+    public ServletOutputStream getOutputStream() 
+    throws IOException {
+        if (outputStream == null) {
+            outputStream = new MeteredOutputStream(super.getOutputStream());
+        }
+        return outputStream;
+    }
+    
+    /**
+     * @see javax.servlet.ServletResponse#getWriter()
+     */
+    public PrintWriter getWriter() 
+    throws IOException {
+        if (writer == null) {
+            writer = new PrintWriter(new MeteredWriter(super.getWriter()));
+        }
+        return writer;
+    }
+}
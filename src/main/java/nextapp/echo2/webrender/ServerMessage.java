@@ -29,6 +29,8 @@
 
 package nextapp.echo2.webrender;
 
+import java.io.IOException;
+import java.io.PrintWriter;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -39,6 +41,7 @@ import org.w3c.dom.Element;
 import org.w3c.dom.NodeList;
 
 import nextapp.echo2.webrender.output.XmlDocument;
+import nextapp.echo2.webrender.service.JavaScriptBundleService;
 
 /**
  * The outgoing XML message which synchronizes the state of the client to that
@@ -219,6 +222,9 @@ public class ServerMessage extends XmlDocument {
 
     /**
      * Adds a JavaScript library service to be dynamically loaded.
+     * If the service is a registered <code>ContentHashService</code>, its
+     * content hash is provided to the client such that the library may be
+     * cached.
      * 
      * @param serviceId the id of the service to load (the service must return
      *        JavaScript code with content-type "text/javascript")
@@ -232,10 +238,37 @@ public class ServerMessage extends XmlDocument {
         }
         Element libraryElement = getDocument().createElement("library");
         libraryElement.setAttribute("service-id", serviceId);
+        Service service = WebRenderServlet.getServiceRegistry().get(serviceId);
+        if (service instanceof ContentHashService) {
+            libraryElement.setAttribute("content-hash", ((ContentHashService) service).getContentHash());
+        }
         librariesElement.appendChild(libraryElement);
         addedLibraries.add(serviceId);
     }
 
+    /**
+     * Provides a reference to a <code>JavaScriptBundleService</code> 
+     * containing all libraries of the message, such that a client which has
+     * not yet loaded several of them may retrieve them with a single request.
+     * Performs no operation if the message contains fewer than two libraries
+     * or the libraries cannot be bundled.
+     */
+    private void addLibraryBundle() {
+        if (addedLibraries == null || addedLibraries.size() < 2 || librariesElement.hasAttribute("bundle-service-id")) {
+            return;
+        }
+        NodeList libraryList = librariesElement.getElementsByTagName("library");
+        String[] serviceIds = new String[libraryList.getLength()];
+        for (int i = 0; i < serviceIds.length; ++i) {
+            serviceIds[i] = ((Element) libraryList.item(i)).getAttribute("service-id");
+        }
+        JavaScriptBundleService bundle = JavaScriptBundleService.forLibraries(serviceIds);
+        if (bundle != null) {
+            librariesElement.setAttribute("bundle-service-id", bundle.getId());
+            librariesElement.setAttribute("bundle-content-hash", bundle.getContentHash());
+        }
+    }
+
     /**
      * Adds a "group" to the document. Part groups enable certain groups of
      * operations, e.g., remove operations, to be performed before others, e.g.,
@@ -420,4 +453,16 @@ public class ServerMessage extends XmlDocument {
     public void setTransactionId(long transactionId) {
         serverMessageElement.setAttribute("trans-id", Long.toString(transactionId));
     }
-}
\ No newline at end of file
+
+    /**
+     * Renders the message, referencing a bundle of its libraries if 
+     * possible.
+     * 
+     * @see nextapp.echo2.webrender.output.XmlDocument#render(java.io.PrintWriter)
+     */
+    public void render(PrintWriter pw)
+    throws IOException {
+        addLibraryBundle();
+        super.render(pw);
+    }
+}
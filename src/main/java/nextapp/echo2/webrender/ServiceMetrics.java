@@ -0,0 +1,348 @@
+/* 
+ * This file is part of the Echo Web Application Framework (hereinafter "Echo").
+ * Copyright (C) 2002-2009 NextApp, Inc.
+ *
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ */
+
+
+package nextapp.echo2.webrender;
+
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Global registry of per-<code>Service</code> request statistics.
+ * <p>
+ * Metrics are disabled by default, in which case the overhead imposed on
+ * request processing is limited to a single flag test.  When enabled, 
+ * a <code>ServiceStatistics</code> object is maintained for each service
+ * identifier and registered with the platform <code>MBeanServer</code>
+ * under the name 
+ * <code>nextapp.echo2:type=ServiceStatistics,context=&lt;context&gt;,serviceId=&lt;id&gt;</code>,
+ * where the context identifies the web application.  Names already 
+ * registered by another party are left untouched, and only names 
+ * registered by this class are unregistered.
+ * 
+ * @see WebRenderServlet#INIT_PARAMETER_METRICS
+ */
+public class ServiceMetrics {
+    
+    /**
+     * An additional report rendered with the service statistics, used to
+     * publish metrics collected by higher-level modules.
+     * 
+     * @see ServiceMetrics#addReport(Report)
+     */
+    public static interface Report {
+        
+        /**
+         * Returns the name of the report.
+         * 
+         * @return the name
+         */
+        public String getName();
+        
+        /**
+         * Renders the report as plain text.
+         * 
+         * @param pw the <code>PrintWriter</code> to which the report should
+         *        be written
+         */
+        public void render(PrintWriter pw);
+    }
+    
+    /**
+     * JMX domain under which statistics are registered.
+     */
+    public static final String JMX_DOMAIN = "nextapp.echo2";
+    
+    /**
+     * <code>Comparator</code> ordering <code>ServiceStatistics</code> by
+     * service identifier.
+     */
+    private static final Comparator SERVICE_ID_COMPARATOR = new Comparator() {
+    
+        /**
+         * @see java.util.Comparator#compare(java.lang.Object, java.lang.Object)
+         */
+        public int compare(Object o1, Object o2) {
+            return ((ServiceStatistics) o1).getServiceId().compareTo(((ServiceStatistics) o2).getServiceId());
+        }
+    };
+    
+    /**
+     * Flag indicating whether metrics are enabled.
+     */
+    private static volatile boolean enabled = false;
+    
+    /**
+     * Number of servlets which have enabled metrics.
+     * Guarded by <code>statisticsMap</code>.
+     */
+    private static int enableCount = 0;
+    
+    /**
+     * Value of the "context" key of registered <code>ObjectName</code>s.
+     * Guarded by <code>statisticsMap</code>.
+     */
+    private static String context;
+    
+    /**
+     * <code>ObjectName</code>s registered with the platform 
+     * <code>MBeanServer</code> by this class.
+     * Guarded by <code>statisticsMap</code>.
+     */
+    private static final List registeredNames = new ArrayList();
+    
+    /**
+     * Mapping between service identifiers and <code>ServiceStatistics</code>.
+     * Guarded by itself.
+     */
+    private static final Map statisticsMap = new HashMap();
+    
+    /**
+     * Registered <code>Report</code>s.  Guarded by itself.
+     */
+    private static final List reports = new ArrayList();
+    
+    /**
+     * Registers a <code>Report</code> to be rendered with the service 
+     * statistics.
+     * 
+     * @param report the <code>Report</code> to add
+     */
+    public static void addReport(Report report) {
+        synchronized (reports) {
+            if (!reports.contains(report)) {
+                reports.add(report);
+            }
+        }
+    }
+    
+    /**
+     * Disables metrics on behalf of a servlet which previously invoked
+     * <code>enable()</code>.  Once every such servlet has disabled metrics,
+     * all statistics are discarded and unregistered from the platform
+     * <code>MBeanServer</code>.
+     */
+    public static void disable() {
+        synchronized (statisticsMap) {
+            if (enableCount == 0) {
+                return;
+            }
+            --enableCount;
+            if (enableCount == 0) {
+                enabled = false;
+                unregisterAll();
+            }
+        }
+    }
+    
+    /**
+     * Enables metrics on behalf of a servlet.  Each invocation must be 
+     * paired with an invocation of <code>disable()</code>.
+     * 
+     * @param context the name identifying the web application in the 
+     *        <code>ObjectName</code>s of registered statistics, e.g., its 
+     *        context path; the name provided by the first servlet to enable
+     *        metrics is used
+     */
+    public static void enable(String context) {
+        synchronized (statisticsMap) {
+            if (enableCount == 0) {
+                ServiceMetrics.context = context;
+                enabled = true;
+            }
+            ++enableCount;
+        }
+    }
+    
+    /**
+     * Returns the <code>ObjectName</code> under which the statistics of a
+     * service are registered.
+     * 
+     * @param serviceId the service identifier
+     * @return the <code>ObjectName</code>
+     * @throws JMException if the name is invalid
+     */
+    private static ObjectName getObjectName(String serviceId) 
+    throws JMException {
+        return new ObjectName(JMX_DOMAIN + ":type=ServiceStatistics,context=" + ObjectName.quote(context) 
+                + ",serviceId=" + ObjectName.quote(serviceId));
+    }
+    
+    /**
+     * Returns the registered <code>Report</code>s.
+     * 
+     * @return the <code>Report</code>s
+     */
+    public static Report[] getReports() {
+        synchronized (reports) {
+            return (Report[]) reports.toArray(new Report[reports.size()]);
+        }
+    }
+    
+    /**
+     * Returns the statistics of all services which have processed requests,
+     * ordered by service identifier.
+     * 
+     * @return the <code>ServiceStatistics</code>
+     */
+    public static ServiceStatistics[] getStatistics() {
+        ServiceStatistics[] statistics;
+        synchronized (statisticsMap) {
+            statistics = (ServiceStatistics[]) statisticsMap.values().toArray(new ServiceStatistics[statisticsMap.size()]);
+        }
+        Arrays.sort(statistics, SERVICE_ID_COMPARATOR);
+        return statistics;
+    }
+    
+    /**
+     * Returns the statistics of a specific service.
+     * 
+     * @param serviceId the service identifier
+     * @return the <code>ServiceStatistics</code>, or null if the service
+     *         has not processed any requests
+     */
+    public static ServiceStatistics getStatistics(String serviceId) {
+        synchronized (statisticsMap) {
+            return (ServiceStatistics) statisticsMap.get(serviceId);
+        }
+    }
+    
+    /**
+     * Determines whether metrics are enabled.
+     * 
+     * @return true if metrics are enabled
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+    
+    /**
+     * Records a request processed by a service.
+     * 
+     * @param serviceId the service identifier
+     * @param latency the request processing time, in nanoseconds
+     * @param bytes the number of bytes written in the response
+     * @param error true if the request failed with an exception
+     */
+    public static void record(String serviceId, long latency, long bytes, boolean error) {
+        if (!enabled) {
+            return;
+        }
+        ServiceStatistics statistics;
+        synchronized (statisticsMap) {
+            statistics = (ServiceStatistics) statisticsMap.get(serviceId);
+            if (statistics == null) {
+                statistics = new ServiceStatistics(serviceId);
+                statisticsMap.put(serviceId, statistics);
+                register(statistics);
+            }
+        }
+        statistics.record(latency, bytes, error);
+    }
+    
+    /**
+     * Registers <code>ServiceStatistics</code> with the platform 
+     * <code>MBeanServer</code>, unless the name is already in use.
+     * Must be invoked while holding the <code>statisticsMap</code> lock.
+     * 
+     * @param statistics the <code>ServiceStatistics</code>
+     */
+    private static void register(ServiceStatistics statistics) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = getObjectName(statistics.getServiceId());
+            if (server.isRegistered(name)) {
+                // Owned by another party: do not replace.
+                return;
+            }
+            server.registerMBean(statistics, name);
+            registeredNames.add(name);
+        } catch (JMException ex) {
+            // JMX registration is a convenience only: statistics remain available via getStatistics().
+        } catch (SecurityException ex) {
+            // JMX registration is a convenience only: statistics remain available via getStatistics().
+        }
+    }
+    
+    /**
+     * Unregisters a <code>Report</code>.
+     * 
+     * @param report the <code>Report</code> to remove
+     */
+    public static void removeReport(Report report) {
+        synchronized (reports) {
+            reports.remove(report);
+        }
+    }
+    
+    /**
+     * Resets the statistics of all services.
+     */
+    public static void reset() {
+        ServiceStatistics[] statistics = getStatistics();
+        for (int i = 0; i < statistics.length; ++i) {
+            statistics[i].reset();
+        }
+    }
+    
+    /**
+     * Discards all statistics and unregisters those registered by this 
+     * class from the platform <code>MBeanServer</code>.
+     * Must be invoked while holding the <code>statisticsMap</code> lock.
+     */
+    private static void unregisterAll() {
+        if (registeredNames.size() > 0) {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            Iterator it = registeredNames.iterator();
+            while (it.hasNext()) {
+                try {
+                    server.unregisterMBean((ObjectName) it.next());
+                } catch (JMException ex) {
+                    // Continue with remaining statistics.
+                }
+            }
+            registeredNames.clear();
+        }
+        statisticsMap.clear();
+    }
+    
+    /** Non-instantiable class. */
+    private ServiceMetrics() { }
+}
@@ -0,0 +1,196 @@
+/* 
+ * This file is part of the Echo Web Application Framework (hereinafter "Echo").
+ * Copyright (C) 2002-2009 NextApp, Inc.
+ *
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ */
+
+
+package nextapp.echo2.webrender;
+
+/**
+ * Statistics of the requests processed by a single <code>Service</code>:
+ * request and error counts, bytes written, and a latency histogram.
+ * <p>
+ * Latencies are recorded in a histogram of exponentially sized buckets, 
+ * bucket <i>n</i> containing latencies of less than 2<sup>n</sup> 
+ * microseconds.  Reported percentiles are thus accurate to within a factor
+ * of two.
+ * 
+ * @see ServiceMetrics
+ */
+public class ServiceStatistics 
+implements ServiceStatisticsMBean {
+    
+    /**
+     * Number of latency histogram buckets (the last bucket containing all
+     * latencies of 2<sup>38</sup> microseconds, i.e., several days, or more).
+     */
+    private static final int BUCKET_COUNT = 40;
+
+    private String serviceId;
+    private long count;
+    private long errorCount;
+    private long bytesOut;
+    private long totalLatency;
+    private long maxLatency;
+    private long[] latencyHistogram = new long[BUCKET_COUNT];
+    
+    /**
+     * Creates a new <code>ServiceStatistics</code>.
+     * 
+     * @param serviceId the identifier of the <code>Service</code>
+     */
+    ServiceStatistics(String serviceId) {
+        super();
+        this.serviceId = serviceId;
+    }
+    
+    /**
+     * Converts a latency from microseconds to milliseconds.
+     * 
+     * @param latency the latency, in microseconds
+     * @return the latency, in milliseconds
+     */
+    private static double toMillis(long latency) {
+        return latency / 1000d;
+    }
+    
+    /**
+     * @see nextapp.echo2.webrender.ServiceStatisticsMBean#getBytesOut()
+     */
+    public synchronized long getBytesOut() {
+        return bytesOut;
+    }
+    
+    /**
+     * @see nextapp.echo2.webrender.ServiceStatisticsMBean#getCount()
+     */
+    public synchronized long getCount() {
+        return count;
+    }
+    
+    /**
+     * @see nextapp.echo2.webrender.ServiceStatisticsMBean#getErrorCount()
+     */
+    public synchronized long getErrorCount() {
+        return errorCount;
+    }
+    
+    /**
+     * @see nextapp.echo2.webrender.ServiceStatisticsMBean#getMaxLatency()
+     */
+    public synchronized double getMaxLatency() {
+        return toMillis(maxLatency);
+    }
+    
+    /**
+     * @see nextapp.echo2.webrender.ServiceStatisticsMBean#getMeanLatency()
+     */
+    public synchronized double getMeanLatency() {
+        return count == 0 ? 0 : toMillis(totalLatency) / count;
+    }
+    
+    /**
+     * @see nextapp.echo2.webrender.ServiceStatisticsMBean#getP50Latency()
+     */
+    public double getP50Latency() {
+        return getPercentileLatency(50);
+    }
+    
+    /**
+     * @see nextapp.echo2.webrender.ServiceStatisticsMBean#getP99Latency()
+     */
+    public double getP99Latency() {
+        return getPercentileLatency(99);
+    }
+    
+    /**
+     * Returns the specified percentile of request processing time, as the 
+     * upper bound of the histogram bucket containing it (limited to the
+     * maximum recorded latency).
+     * 
+     * @param percentile the percentile (0-100)
+     * @return the latency, in milliseconds
+     */
+    public synchronized double getPercentileLatency(int percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (count * percentile + 99) / 100;
+        long cumulativeCount = 0;
+        for (int i = 0; i < BUCKET_COUNT; ++i) {
+            cumulativeCount += latencyHistogram[i];
+            if (cumulativeCount >= rank) {
+                return toMillis(Math.min(1L << i, maxLatency));
+            }
+        }
+        return toMillis(maxLatency);
+    }
+    
+    /**
+     * @see nextapp.echo2.webrender.ServiceStatisticsMBean#getServiceId()
+     */
+    public String getServiceId() {
+        return serviceId;
+    }
+    
+    /**
+     * Records a processed request.
+     * 
+     * @param latency the request processing time, in nanoseconds
+     * @param bytes the number of bytes written in the response
+     * @param error true if the request failed with an exception
+     */
+    synchronized void record(long latency, long bytes, boolean error) {
+        long micros = latency / 1000;
+        ++count;
+        if (error) {
+            ++errorCount;
+        }
+        bytesOut += bytes;
+        totalLatency += micros;
+        if (micros > maxLatency) {
+            maxLatency = micros;
+        }
+        // Bucket n contains latencies in the range [2^(n-1), 2^n) microseconds.
+        int bucket = 64 - Long.numberOfLeadingZeros(micros);
+        ++latencyHistogram[bucket < BUCKET_COUNT ? bucket : BUCKET_COUNT - 1];
+    }
+    
+    /**
+     * @see nextapp.echo2.webrender.ServiceStatisticsMBean#reset()
+     */
+    public synchronized void reset() {
+        count = 0;
+        errorCount = 0;
+        bytesOut = 0;
+        totalLatency = 0;
+        maxLatency = 0;
+        for (int i = 0; i < BUCKET_COUNT; ++i) {
+            latencyHistogram[i] = 0;
+        }
+    }
+}
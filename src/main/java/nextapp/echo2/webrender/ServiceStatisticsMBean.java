@@ -0,0 +1,99 @@
+/* 
+ * This file is part of the Echo Web Application Framework (hereinafter "Echo").
+ * Copyright (C) 2002-2009 NextApp, Inc.
+ *
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ */
+
+
+package nextapp.echo2.webrender;
+
+/**
+ * Management interface of <code>ServiceStatistics</code>, exposing the
+ * statistics of a single <code>Service</code> via JMX.
+ */
+public interface ServiceStatisticsMBean {
+    
+    /**
+     * Returns the identifier of the <code>Service</code>.
+     * 
+     * @return the service identifier
+     */
+    public String getServiceId();
+    
+    /**
+     * Returns the number of requests processed by the <code>Service</code>.
+     * 
+     * @return the request count
+     */
+    public long getCount();
+    
+    /**
+     * Returns the number of requests which failed with an exception.
+     * 
+     * @return the error count
+     */
+    public long getErrorCount();
+    
+    /**
+     * Returns the total number of bytes written in responses.
+     * 
+     * @return the number of bytes written
+     */
+    public long getBytesOut();
+    
+    /**
+     * Returns the mean request processing time, in milliseconds.
+     * 
+     * @return the mean latency
+     */
+    public double getMeanLatency();
+    
+    /**
+     * Returns the median request processing time, in milliseconds.
+     * 
+     * @return the median latency
+     */
+    public double getP50Latency();
+    
+    /**
+     * Returns the 99th percentile request processing time, in milliseconds.
+     * 
+     * @return the 99th percentile latency
+     */
+    public double getP99Latency();
+    
+    /**
+     * Returns the maximum request processing time, in milliseconds.
+     * 
+     * @return the maximum latency
+     */
+    public double getMaxLatency();
+    
+    /**
+     * Resets all statistics to zero.
+     */
+    public void reset();
+}
@@ -169,11 +169,17 @@ implements HttpSessionActivationListener, HttpSessionBindingListener /* , Serial
     
     /**
      * Determines the URI to invoke the specified <code>Service</code>.
+     * The URI of a <code>ContentHashService</code> includes its current
+     * content hash.
      * 
      * @param service the <code>Service</code>
      * @return the URI
      */
     public String getServiceUri(Service service) {
+        if (service instanceof ContentHashService) {
+            return servletUri + "?serviceId=" + service.getId() + "&" + WebRenderServlet.CONTENT_HASH_PARAMETER + "=" 
+                    + ((ContentHashService) service).getContentHash();
+        }
         return servletUri + "?serviceId=" + service.getId();
     }
 
@@ -197,6 +203,12 @@ implements HttpSessionActivationListener, HttpSessionBindingListener /* , Serial
         StringBuffer out = new StringBuffer(servletUri);
         out.append("?serviceId=");
         out.append(service.getId());
+        if (service instanceof ContentHashService) {
+            out.append("&");
+            out.append(WebRenderServlet.CONTENT_HASH_PARAMETER);
+            out.append("=");
+            out.append(((ContentHashService) service).getContentHash());
+        }
         for (int i = 0; i < parameterNames.length; ++i) {
             out.append("&");
             out.append(parameterNames[i]);
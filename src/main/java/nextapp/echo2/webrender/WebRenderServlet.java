@@ -30,14 +30,19 @@
 package nextapp.echo2.webrender;
 
 import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import nextapp.echo2.webrender.service.AsyncMonitorService;
 import nextapp.echo2.webrender.service.CoreServices;
 import nextapp.echo2.webrender.service.DebugPaneService;
+import nextapp.echo2.webrender.service.ServiceMetricsService;
+import nextapp.echo2.webrender.service.SynchronizeService;
 
 /**
  * Echo <code>HttpServlet</code> implementation.
@@ -62,6 +67,29 @@ public abstract class WebRenderServlet extends HttpServlet {
      */
     public static final String SERVICE_ID_PARAMETER = "serviceId";
     
+    /**
+     * Request parameter identifying the content hash of a requested
+     * <code>ContentHashService</code>.
+     */
+    public static final String CONTENT_HASH_PARAMETER = "v";
+    
+    /**
+     * Maximum age, in seconds, of cached responses of 
+     * <code>ContentHashService</code>s requested with their current
+     * content hash (one year).
+     */
+    private static final int CONTENT_HASH_MAX_AGE = 31536000;
+    
+    /**
+     * Servlet initialization parameter which, if set to "true", enables the
+     * collection of per-service request statistics.
+     * Statistics are exposed via JMX and the <code>Echo.Metrics</code> 
+     * service.
+     * 
+     * @see ServiceMetrics
+     */
+    public static final String INIT_PARAMETER_METRICS = "echo2.metrics";
+    
     /**
      * <code>Service</code> identifier of the 'default' service. 
      * The 'default' service is rendered when a client makes a request
@@ -101,6 +129,25 @@ public abstract class WebRenderServlet extends HttpServlet {
         services.add(DebugPaneService.INSTANCE);
     }
     
+    /**
+     * Value of <code>intInitParameterMap</code> entries of integer 
+     * initialization parameters which are not set.
+     */
+    private static final Object NOT_SET = new Object();
+    
+    /**
+     * Parsed values of integer initialization parameters (or 
+     * <code>NOT_SET</code>), keyed by name.
+     * 
+     * @see #getIntInitParameter(java.lang.String, int)
+     */
+    private final Map intInitParameterMap = new ConcurrentHashMap();
+    
+    /**
+     * Flag indicating whether this servlet enabled request statistics.
+     */
+    private boolean metricsEnabled = false;
+    
     /**
      * An interface implemented by a supporting object that will handle 
      * multipart/form-data encoded HTTP requests.  This type of request is
@@ -235,6 +282,217 @@ public abstract class WebRenderServlet extends HttpServlet {
         return services;
     }
     
+    /**
+     * Sets the caching directives for a request to a 
+     * <code>ContentHashService</code>.  A request bearing the current content
+     * hash of the service is marked as cacheable indefinitely, other requests
+     * must be revalidated by the client every time.  In both cases the content
+     * hash is provided as the entity tag of the response, and a 
+     * <code>304 Not Modified</code> response is sent if the client already
+     * has the current content.
+     * 
+     * @param request the incoming <code>HttpServletRequest</code>
+     * @param response the outgoing <code>HttpServletResponse</code>
+     * @param service the requested <code>ContentHashService</code>
+     * @return true if a <code>304 Not Modified</code> response has been sent,
+     *         in which case the service should not be invoked
+     */
+    private static boolean processContentHashCaching(HttpServletRequest request, HttpServletResponse response, 
+            ContentHashService service) {
+        String contentHash = service.getContentHash();
+        String eTag = "W/\"" + contentHash + "\"";
+        if (contentHash.equals(request.getParameter(CONTENT_HASH_PARAMETER))) {
+            response.setHeader("Cache-Control", "public, max-age=" + CONTENT_HASH_MAX_AGE + ", immutable");
+            response.setDateHeader("Expires", System.currentTimeMillis() + CONTENT_HASH_MAX_AGE * 1000L);
+        } else {
+            response.setHeader("Cache-Control", "no-cache");
+        }
+        response.setHeader("ETag", eTag);
+        response.setHeader("Vary", "Accept-Encoding");
+        
+        if (isNotModified(request, contentHash, -1)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return true;
+        }
+        return false;
+    }
+    
+    /**
+     * Determines whether a conditional request may be answered with a 
+     * <code>304 Not Modified</code> response.  The 
+     * <code>If-None-Match</code> header, if present, takes precedence over 
+     * the <code>If-Modified-Since</code> header.
+     * 
+     * @param request the incoming <code>HttpServletRequest</code>
+     * @param entityTag the opaque entity tag of the current content, or null
+     *        if none is available
+     * @param lastModified the modification date of the current content, or
+     *        -1 if unknown
+     * @return true if the client's copy of the content is current
+     */
+    private static boolean isNotModified(HttpServletRequest request, String entityTag, long lastModified) {
+        String ifNoneMatch = request.getHeader("If-None-Match");
+        if (ifNoneMatch != null) {
+            return entityTag != null && matchesEntityTag(ifNoneMatch, entityTag);
+        }
+        if (lastModified == -1) {
+            return false;
+        }
+        long ifModifiedSince;
+        try {
+            ifModifiedSince = request.getDateHeader("If-Modified-Since");
+        } catch (IllegalArgumentException ex) {
+            // Malformed date.
+            return false;
+        }
+        // HTTP dates have a resolution of one second.
+        return ifModifiedSince != -1 && lastModified / 1000 <= ifModifiedSince / 1000;
+    }
+    
+    /**
+     * Determines whether an <code>If-None-Match</code> header matches an
+     * entity tag, using the weak comparison function.
+     * 
+     * @param ifNoneMatch the value of the <code>If-None-Match</code> header
+     * @param entityTag the opaque entity tag of the current content
+     * @return true if the header contains the entity tag or is "*"
+     */
+    private static boolean matchesEntityTag(String ifNoneMatch, String entityTag) {
+        String[] tags = ifNoneMatch.split(",");
+        for (int i = 0; i < tags.length; ++i) {
+            String tag = tags[i].trim();
+            if ("*".equals(tag)) {
+                return true;
+            }
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.length() == entityTag.length() + 2 && tag.charAt(0) == '"' && tag.endsWith("\"") 
+                    && tag.regionMatches(1, entityTag, 0, entityTag.length())) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Releases this servlet's hold on the collection of request statistics,
+     * if it enabled them.  Statistics remain enabled while any other servlet
+     * has enabled them.
+     * 
+     * @see javax.servlet.GenericServlet#destroy()
+     */
+    public void destroy() {
+        if (metricsEnabled) {
+            metricsEnabled = false;
+            ServiceMetrics.disable();
+            if (!ServiceMetrics.isEnabled()) {
+                services.remove(ServiceMetricsService.INSTANCE);
+            }
+        }
+        super.destroy();
+    }
+    
+    /**
+     * Returns the value of an integer initialization parameter.  
+     * Parameters validated by <code>initIntParameter()</code> are retrieved
+     * from the values parsed when the servlet was initialized.  Other 
+     * parameters are parsed on first access, their values being retained
+     * for the lifetime of the servlet.
+     * 
+     * @param name the name of the initialization parameter
+     * @param defaultValue the value to return if the parameter is not set
+     * @return the parameter value
+     * @throws IllegalArgumentException if the parameter was not validated
+     *         during initialization and is not an integer
+     * @see #initIntParameter(java.lang.String, int, int)
+     */
+    public int getIntInitParameter(String name, int defaultValue) {
+        Object value = intInitParameterMap.get(name);
+        if (value == null) {
+            try {
+                value = parseIntInitParameter(name, Integer.MIN_VALUE, Integer.MAX_VALUE);
+            } catch (ServletException ex) {
+                throw new IllegalArgumentException(ex.getMessage());
+            }
+            intInitParameterMap.put(name, value);
+        }
+        return value == NOT_SET ? defaultValue : ((Integer) value).intValue();
+    }
+    
+    /**
+     * Enables the collection of request statistics if specified by the
+     * <code>INIT_PARAMETER_METRICS</code> initialization parameter.
+     * 
+     * @see javax.servlet.GenericServlet#init()
+     */
+    public void init() 
+    throws ServletException {
+        super.init();
+        initIntParameter(AsyncMonitorService.INIT_PARAMETER_LONG_POLL_TIMEOUT, Integer.MIN_VALUE, Integer.MAX_VALUE);
+        initIntParameter(AsyncMonitorService.INIT_PARAMETER_LONG_POLL_MAX_WAITING, 0, Integer.MAX_VALUE);
+        initIntParameter(SynchronizeService.INIT_PARAMETER_SYNC_MAX_WAITING, 0, Integer.MAX_VALUE);
+        initIntParameter(SynchronizeService.INIT_PARAMETER_COMPRESSION_THRESHOLD, Integer.MIN_VALUE, Integer.MAX_VALUE);
+        initIntParameter(SynchronizeService.INIT_PARAMETER_COMPRESSION_LEVEL, -1, 9);
+        initIntParameter(SynchronizeService.INIT_PARAMETER_SYNC_WAIT_TIMEOUT, 0, Integer.MAX_VALUE);
+        if ("true".equals(getInitParameter(INIT_PARAMETER_METRICS))) {
+            String contextPath = getServletContext().getContextPath();
+            ServiceMetrics.enable(contextPath.length() == 0 ? "/" : contextPath);
+            services.add(ServiceMetricsService.INSTANCE);
+            metricsEnabled = true;
+        }
+    }
+    
+    /**
+     * Parses and validates an integer initialization parameter, retaining 
+     * its value to be returned by <code>getIntInitParameter()</code>.
+     * Servlets should invoke this method from <code>init()</code> for each 
+     * integer initialization parameter they use, such that invalid values
+     * are reported when the servlet is initialized rather than on each
+     * request.
+     * 
+     * @param name the name of the initialization parameter
+     * @param minimum the minimum valid value
+     * @param maximum the maximum valid value
+     * @throws ServletException if the parameter is set to a value which is
+     *         not an integer or is out of range
+     * @see #getIntInitParameter(java.lang.String, int)
+     */
+    protected void initIntParameter(String name, int minimum, int maximum) 
+    throws ServletException {
+        intInitParameterMap.put(name, parseIntInitParameter(name, minimum, maximum));
+    }
+    
+    /**
+     * Parses an integer initialization parameter.
+     * 
+     * @param name the name of the initialization parameter
+     * @param minimum the minimum valid value
+     * @param maximum the maximum valid value
+     * @return the value as an <code>Integer</code>, or <code>NOT_SET</code>
+     *         if the parameter is not set
+     * @throws ServletException if the parameter is set to a value which is
+     *         not an integer or is out of range
+     */
+    private Object parseIntInitParameter(String name, int minimum, int maximum) 
+    throws ServletException {
+        String text = getInitParameter(name);
+        if (text == null) {
+            return NOT_SET;
+        }
+        int value;
+        try {
+            value = Integer.parseInt(text.trim());
+        } catch (NumberFormatException ex) {
+            throw new ServletException("Invalid value for initialization parameter \"" + name + "\": " + text);
+        }
+        if (value < minimum || value > maximum) {
+            throw new ServletException("Invalid value for initialization parameter \"" + name + "\": " + text 
+                    + " (must be between " + minimum + " and " + maximum + ")");
+        }
+        return new Integer(value);
+    }
+    
     /**
      * Processes a HTTP request and generates a response.
      * 
@@ -243,19 +501,32 @@ public abstract class WebRenderServlet extends HttpServlet {
      */
     protected void process(HttpServletRequest request, HttpServletResponse response) 
     throws IOException, ServletException {
+        MeteredResponse meteredResponse = null;
+        long startTime = 0;
+        if (ServiceMetrics.isEnabled()) {
+            meteredResponse = new MeteredResponse(response);
+            response = meteredResponse;
+            startTime = System.nanoTime();
+        }
         Connection conn = null;
+        Service service = null;
+        boolean failed = false;
         try {
             conn = new Connection(this, request, response);
             activeConnection.set(conn);
             String serviceId = request.getParameter(SERVICE_ID_PARAMETER);
-            Service service = getService(conn.getUserInstance(), serviceId);
+            service = getService(conn.getUserInstance(), serviceId);
             if (service == null) {
                 throw new ServletException("Service id \"" + serviceId + "\" not registered.");
             }
             int version = service.getVersion();
             
             // Set caching directives.
-            if ((!DISABLE_CACHING) && version != Service.DO_NOT_CACHE) {
+            if ((!DISABLE_CACHING) && service instanceof ContentHashService) {
+                if (processContentHashCaching(request, response, (ContentHashService) service)) {
+                    return;
+                }
+            } else if ((!DISABLE_CACHING) && version != Service.DO_NOT_CACHE) {
                 // Setting all of the following (possibly with the exception of "Expires")
                 // are *absolutely critical* in order to ensure proper caching of resources
                 // with Internet Explorer 6.  Without "Last-Modified", IE6 appears to not
@@ -264,6 +535,19 @@ public abstract class WebRenderServlet extends HttpServlet {
                 response.setHeader("Cache-Control", "max-age=3600");
                 response.setDateHeader("Expires", System.currentTimeMillis() + (86400000));
                 response.setDateHeader("Last-Modified", startupTime);
+                
+                // Answer conditional requests without invoking the service if the client's copy is current.
+                String entityTag = null;
+                if (service instanceof EntityTagService) {
+                    entityTag = ((EntityTagService) service).getEntityTag(conn);
+                    if (entityTag != null) {
+                        response.setHeader("ETag", "\"" + entityTag + "\"");
+                    }
+                }
+                if (isNotModified(request, entityTag, startupTime)) {
+                    response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                    return;
+                }
             } else {
                 response.setHeader("Pragma", "no-cache");
                 response.setHeader("Cache-Control", "no-store");
@@ -273,22 +557,28 @@ public abstract class WebRenderServlet extends HttpServlet {
             service.service(conn);
             
         } catch (ServletException ex) {
+            failed = true;
             if (conn != null) {
                 conn.disposeUserInstance();
             }
             throw(ex);
         } catch (IOException ex) {
+            failed = true;
             if (conn != null) {
                 conn.disposeUserInstance();
             }
             throw(ex);
         } catch (RuntimeException ex) {
+            failed = true;
             if (conn != null) {
                 conn.disposeUserInstance();
             }
             throw(ex);
         } finally {
             activeConnection.set(null);
+            if (meteredResponse != null && service != null) {
+                ServiceMetrics.record(service.getId(), System.nanoTime() - startTime, meteredResponse.getByteCount(), failed);
+            }
         }
     }
 }
@@ -84,11 +84,19 @@ public class XmlDocument {
     
     /**
      * Renders the document to a <code>PrintWriter</code>.
+     * Documents without output properties are written directly by the
+     * <code>XmlSerializer</code>, other documents are rendered using a 
+     * JAXP <code>Transformer</code>.
      * 
      * @param pw the <code>PrintWriter</code>
      */
     public void render(PrintWriter pw)
     throws IOException {
+        DocumentType docType = document.getDoctype();
+        if (outputProperties == null && (docType == null || docType.getSystemId() == null)) {
+            XmlSerializer.serialize(document, pw);
+            return;
+        }
         try {
             TransformerFactory tFactory = DomUtil.getTransformerFactory();
             Transformer transformer = tFactory.newTransformer();
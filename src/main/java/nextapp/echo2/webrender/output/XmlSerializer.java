@@ -0,0 +1,624 @@
+/* 
+ * This file is part of the Echo Web Application Framework (hereinafter "Echo").
+ * Copyright (C) 2002-2009 NextApp, Inc.
+ *
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ */
+
+
+package nextapp.echo2.webrender.output;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+/**
+ * A streaming serializer which writes a W3C DOM <code>Document</code> 
+ * directly to a <code>Writer</code>, without the overhead of creating a 
+ * JAXP <code>Transformer</code> for every rendered document.
+ * <p>
+ * The generated output is identical to that of the JAXP identity transform
+ * with default output properties, i.e., an XML declaration followed by the 
+ * un-indented document, encoded as UTF-8 with characters escaped in the 
+ * same manner.  Document type declarations and output properties are not 
+ * supported: documents which require them should be rendered using a
+ * <code>Transformer</code>.
+ * <p>
+ * Output is accumulated in a thread-specific character buffer which is 
+ * flushed to the target <code>Writer</code> when full, such that the
+ * target is written in large blocks.
+ */
+public class XmlSerializer {
+    
+    /**
+     * The XML declaration written at the beginning of each document.
+     */
+    private static final String XML_DECLARATION = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>";
+    
+    /**
+     * The line separator written for newline characters in content, as the
+     * JAXP serializer does.
+     */
+    private static final String LINE_SEPARATOR = System.getProperty("line.separator", "\n");
+    
+    /**
+     * Character written in place of unpaired surrogates, which can neither
+     * be encoded in UTF-8 nor be written as character references in a 
+     * well-formed document.
+     */
+    private static final char REPLACEMENT_CHARACTER = '\ufffd';
+    
+    /**
+     * Size of the thread-specific output buffers, in characters.
+     */
+    private static final int BUFFER_SIZE = 8192;
+    
+    /**
+     * ThreadLocal cache of <code>XmlSerializer</code> instances.
+     */
+    private static final ThreadLocal serializers = new ThreadLocal() {
+    
+        /**
+         * @see java.lang.ThreadLocal#initialValue()
+         */
+        protected Object initialValue() {
+            return new XmlSerializer();
+        }
+    };
+    
+    /**
+     * Serializes a <code>Document</code> to a <code>Writer</code>.
+     * The <code>Writer</code> is not flushed or closed.
+     * 
+     * @param document the <code>Document</code> to serialize
+     * @param writer the target <code>Writer</code>
+     * @throws IOException if the <code>Writer</code> throws an 
+     *         <code>IOException</code>
+     */
+    public static void serialize(Document document, Writer writer) 
+    throws IOException {
+        XmlSerializer serializer = (XmlSerializer) serializers.get();
+        serializer.writer = writer;
+        try {
+            serializer.write(XML_DECLARATION);
+            serializer.writeChildren(document);
+            serializer.flush();
+        } finally {
+            serializer.reset();
+        }
+    }
+
+    /** The output buffer. */
+    private char[] buffer = new char[BUFFER_SIZE];
+    
+    /** The number of characters currently stored in the output buffer. */
+    private int bufferLength;
+    
+    /** The target <code>Writer</code>. */
+    private Writer writer;
+    
+    /** 
+     * Stack of in-scope namespace prefixes, the empty string representing the
+     * default namespace. 
+     */
+    private String[] namespacePrefixes = new String[8];
+    
+    /** Stack of namespace URIs, parallel to <code>namespacePrefixes</code>. */
+    private String[] namespaceUris = new String[8];
+    
+    /** The number of namespace bindings currently in scope. */
+    private int namespaceCount;
+    
+    /** Qualified names of the attributes of the start tag being written. */
+    private String[] attributeNames = new String[8];
+    
+    /** Attribute values, parallel to <code>attributeNames</code>. */
+    private String[] attributeValues = new String[8];
+    
+    /** The number of attributes of the start tag being written. */
+    private int attributeCount;
+    
+    /** 
+     * Flag indicating whether the start tag of the current element has not 
+     * yet been closed, i.e., no content has been written for it. 
+     */
+    private boolean startTagOpen;
+    
+    /** Flag indicating whether a CDATA section is open. */
+    private boolean cdataOpen;
+    
+    /**
+     * Creates a new <code>XmlSerializer</code>.
+     */
+    private XmlSerializer() {
+        super();
+    }
+    
+    /**
+     * Closes the start tag of the current element, if it is open, such that
+     * content may be written.
+     */
+    private void closeStartTag()
+    throws IOException {
+        if (startTagOpen) {
+            write('>');
+            startTagOpen = false;
+        }
+    }
+    
+    /**
+     * Closes the current CDATA section, if one is open.
+     */
+    private void closeCData()
+    throws IOException {
+        if (cdataOpen) {
+            write("]]>");
+            cdataOpen = false;
+        }
+    }
+    
+    /**
+     * Adds an attribute to the start tag of the element currently being 
+     * written.
+     * 
+     * @param name the qualified name of the attribute
+     * @param value the attribute value
+     */
+    private void addAttribute(String name, String value) {
+        if (attributeCount == attributeNames.length) {
+            String[] newNames = new String[attributeCount * 2];
+            System.arraycopy(attributeNames, 0, newNames, 0, attributeCount);
+            attributeNames = newNames;
+            String[] newValues = new String[attributeCount * 2];
+            System.arraycopy(attributeValues, 0, newValues, 0, attributeCount);
+            attributeValues = newValues;
+        }
+        attributeNames[attributeCount] = name;
+        attributeValues[attributeCount] = value;
+        ++attributeCount;
+    }
+    
+    /**
+     * Declares a namespace prefix binding for the element currently being 
+     * written.  A declaration attribute is added only if the prefix is not 
+     * already bound to the same URI.  If the prefix has already been declared
+     * by the same element, the existing declaration is replaced.
+     * 
+     * @param prefix the prefix, or an empty string for the default namespace
+     * @param uri the namespace URI
+     * @param namespaceMark the index of the first namespace binding declared 
+     *        by the element currently being written
+     */
+    private void declareNamespace(String prefix, String uri, int namespaceMark) {
+        for (int i = namespaceCount - 1; i >= namespaceMark; --i) {
+            if (namespacePrefixes[i].equals(prefix)) {
+                if (!namespaceUris[i].equals(uri)) {
+                    namespaceUris[i] = uri;
+                    String name = prefix.length() == 0 ? "xmlns" : "xmlns:" + prefix;
+                    for (int j = 0; j < attributeCount; ++j) {
+                        if (attributeNames[j].equals(name)) {
+                            attributeValues[j] = uri;
+                        }
+                    }
+                }
+                return;
+            }
+        }
+        
+        String currentUri = getNamespaceUri(prefix);
+        if (currentUri == null ? uri.length() == 0 : currentUri.equals(uri)) {
+            return;
+        }
+        if (namespaceCount == namespacePrefixes.length) {
+            String[] newPrefixes = new String[namespaceCount * 2];
+            System.arraycopy(namespacePrefixes, 0, newPrefixes, 0, namespaceCount);
+            namespacePrefixes = newPrefixes;
+            String[] newUris = new String[namespaceCount * 2];
+            System.arraycopy(namespaceUris, 0, newUris, 0, namespaceCount);
+            namespaceUris = newUris;
+        }
+        namespacePrefixes[namespaceCount] = prefix;
+        namespaceUris[namespaceCount] = uri;
+        ++namespaceCount;
+        
+        addAttribute(prefix.length() == 0 ? "xmlns" : "xmlns:" + prefix, uri);
+    }
+    
+    /**
+     * Writes any buffered output to the target <code>Writer</code>.
+     */
+    private void flush() 
+    throws IOException {
+        if (bufferLength > 0) {
+            writer.write(buffer, 0, bufferLength);
+            bufferLength = 0;
+        }
+    }
+    
+    /**
+     * Returns the URI to which a namespace prefix is currently bound.
+     * 
+     * @param prefix the prefix, or an empty string for the default namespace
+     * @return the URI, or null if the prefix is not bound
+     */
+    private String getNamespaceUri(String prefix) {
+        for (int i = namespaceCount - 1; i >= 0; --i) {
+            if (namespacePrefixes[i].equals(prefix)) {
+                return namespaceUris[i];
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * Determines whether a character may be written literally, i.e., without
+     * being escaped as a character reference.
+     * 
+     * @param c the character
+     * @return true if the character may be written literally
+     */
+    private static boolean isLiteral(char c) {
+        return c >= 0x20 || c == '\n' || c == '\r' || c == '\t';
+    }
+    
+    /**
+     * Releases references to the target <code>Writer</code> and namespace
+     * state such that the serializer may be reused.
+     */
+    private void reset() {
+        writer = null;
+        bufferLength = 0;
+        startTagOpen = false;
+        cdataOpen = false;
+        for (int i = 0; i < attributeCount; ++i) {
+            attributeNames[i] = null;
+            attributeValues[i] = null;
+        }
+        attributeCount = 0;
+        for (int i = 0; i < namespaceCount; ++i) {
+            namespacePrefixes[i] = null;
+            namespaceUris[i] = null;
+        }
+        namespaceCount = 0;
+    }
+    
+    /**
+     * Writes a single character.
+     * 
+     * @param c the character
+     */
+    private void write(char c) 
+    throws IOException {
+        if (bufferLength == buffer.length) {
+            flush();
+        }
+        buffer[bufferLength++] = c;
+    }
+    
+    /**
+     * Writes a <code>String</code> without escaping.
+     * 
+     * @param s the <code>String</code>
+     */
+    private void write(String s) 
+    throws IOException {
+        int length = s.length();
+        int offset = 0;
+        while (offset < length) {
+            if (bufferLength == buffer.length) {
+                flush();
+            }
+            int count = Math.min(length - offset, buffer.length - bufferLength);
+            s.getChars(offset, offset + count, buffer, bufferLength);
+            bufferLength += count;
+            offset += count;
+        }
+    }
+    
+    /**
+     * Writes a CDATA section.  Characters
+     * which may not appear literally in the output are written as character
+     * references outside of the section, and occurrences of the 
+     * <code>]]&gt;</code> terminator are split across two sections.
+     * 
+     * @param data the content of the CDATA section
+     */
+    private void writeCData(String data) 
+    throws IOException {
+        int length = data.length();
+        if (length > 0 && !cdataOpen && isLiteral(data.charAt(0))) {
+            write("<![CDATA[");
+            cdataOpen = true;
+        }
+        for (int i = 0; i < length; ++i) {
+            char c = data.charAt(i);
+            if (c == '\n') {
+                write(LINE_SEPARATOR);
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(data.charAt(i + 1))) {
+                write(c);
+                write(data.charAt(++i));
+            } else if (c >= 0xd800 && c <= 0xdfff) {
+                if (!cdataOpen) {
+                    write("<![CDATA[");
+                    cdataOpen = true;
+                }
+                write(REPLACEMENT_CHARACTER);
+            } else if (!isLiteral(c)) {
+                closeCData();
+                writeCharacterReference(c);
+            } else if (c == ']' && i < length - 2 && data.charAt(i + 1) == ']' && data.charAt(i + 2) == '>') {
+                write("]]]]><![CDATA[>");
+                i += 2;
+            } else {
+                if (!cdataOpen) {
+                    write("<![CDATA[");
+                    cdataOpen = true;
+                }
+                write(c);
+            }
+        }
+        closeCData();
+    }
+    
+    /**
+     * Writes the children of a node.
+     * 
+     * @param node the node
+     */
+    private void writeChildren(Node node)
+    throws IOException {
+        for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+            writeNode(child);
+        }
+    }
+    
+    /**
+     * Writes an element, its attributes, any required namespace declarations
+     * and its content.
+     * 
+     * @param element the element
+     */
+    private void writeElement(Element element)
+    throws IOException {
+        closeStartTag();
+        int namespaceMark = namespaceCount;
+        NamedNodeMap attributes = element.getAttributes();
+        int length = attributes.getLength();
+        
+        // Namespace declarations.
+        for (int i = 0; i < length; ++i) {
+            Attr attr = (Attr) attributes.item(i);
+            String name = attr.getName();
+            if (name.startsWith("xmlns")) {
+                if (name.length() == 5) {
+                    declareNamespace("", attr.getValue(), namespaceMark);
+                } else if (name.charAt(5) == ':') {
+                    declareNamespace(name.substring(6), attr.getValue(), namespaceMark);
+                }
+            }
+        }
+        
+        // Attributes.
+        for (int i = 0; i < length; ++i) {
+            Attr attr = (Attr) attributes.item(i);
+            String name = attr.getName();
+            if (name.startsWith("xmlns") && (name.length() == 5 || name.charAt(5) == ':')) {
+                continue;
+            }
+            String uri = attr.getNamespaceURI();
+            if (uri != null && attr.getLocalName() != null) {
+                String prefix = attr.getPrefix();
+                declareNamespace(prefix == null ? "" : prefix, uri, namespaceMark);
+            }
+            addAttribute(name, attr.getValue());
+        }
+        
+        // Namespace of element itself (DOM Level 1 elements have no namespace information).
+        if (element.getLocalName() != null) {
+            String uri = element.getNamespaceURI();
+            String prefix = element.getPrefix();
+            declareNamespace(prefix == null ? "" : prefix, uri == null ? "" : uri, namespaceMark);
+        }
+        
+        String tagName = element.getTagName();
+        write('<');
+        write(tagName);
+        for (int i = 0; i < attributeCount; ++i) {
+            write(' ');
+            write(attributeNames[i]);
+            write("=\"");
+            writeAttributeValue(attributeValues[i]);
+            write('"');
+            attributeNames[i] = null;
+            attributeValues[i] = null;
+        }
+        attributeCount = 0;
+        
+        startTagOpen = true;
+        writeChildren(element);
+        if (startTagOpen) {
+            write("/>");
+            startTagOpen = false;
+        } else {
+            write("</");
+            write(tagName);
+            write('>');
+        }
+        
+        for (int i = namespaceMark; i < namespaceCount; ++i) {
+            namespacePrefixes[i] = null;
+            namespaceUris[i] = null;
+        }
+        namespaceCount = namespaceMark;
+    }
+    
+    /**
+     * Writes an attribute value, escaping markup characters, quotes,
+     * whitespace other than spaces and characters which may not appear
+     * literally in the output.
+     * 
+     * @param s the attribute value
+     */
+    private void writeAttributeValue(String s)
+    throws IOException {
+        int length = s.length();
+        for (int i = 0; i < length; ++i) {
+            char c = s.charAt(i);
+            switch (c) {
+            case '&':
+                write("&amp;");
+                break;
+            case '<':
+                write("&lt;");
+                break;
+            case '>':
+                write("&gt;");
+                break;
+            case '"':
+                write("&quot;");
+                break;
+            default:
+                if (c < 0x20) {
+                    writeCharacterReference(c);
+                } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(s.charAt(i + 1))) {
+                    writeCharacterReference(Character.toCodePoint(c, s.charAt(++i)));
+                } else if (c >= 0xd800 && c <= 0xdfff) {
+                    write(REPLACEMENT_CHARACTER);
+                } else {
+                    write(c);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Writes text content, escaping markup characters and characters which 
+     * may not appear literally in the output.
+     * 
+     * @param s the text
+     */
+    private void writeText(String s)
+    throws IOException {
+        int length = s.length();
+        for (int i = 0; i < length; ++i) {
+            char c = s.charAt(i);
+            switch (c) {
+            case '&':
+                write("&amp;");
+                break;
+            case '<':
+                write("&lt;");
+                break;
+            case '>':
+                write("&gt;");
+                break;
+            case '\n':
+                write(LINE_SEPARATOR);
+                break;
+            case '\t':
+                write(c);
+                break;
+            default:
+                if (c < 0x20 || (c >= 0x7f && c <= 0x9f)) {
+                    writeCharacterReference(c);
+                } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(s.charAt(i + 1))) {
+                    writeCharacterReference(Character.toCodePoint(c, s.charAt(++i)));
+                } else if (c >= 0xd800 && c <= 0xdfff) {
+                    write(REPLACEMENT_CHARACTER);
+                } else {
+                    write(c);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Writes a numeric character reference.
+     * 
+     * @param codePoint the code point of the referenced character
+     */
+    private void writeCharacterReference(int codePoint)
+    throws IOException {
+        write("&#");
+        write(Integer.toString(codePoint));
+        write(';');
+    }
+    
+    /**
+     * Writes a node.
+     * 
+     * @param node the node
+     */
+    private void writeNode(Node node) 
+    throws IOException {
+        switch (node.getNodeType()) {
+        case Node.ELEMENT_NODE:
+            writeElement((Element) node);
+            break;
+        case Node.TEXT_NODE:
+            String text = node.getNodeValue();
+            if (text.length() > 0) {
+                closeStartTag();
+                writeText(text);
+            }
+            break;
+        case Node.CDATA_SECTION_NODE:
+            String data = node.getNodeValue();
+            if (data.length() > 0) {
+                closeStartTag();
+                writeCData(data);
+            }
+            break;
+        case Node.COMMENT_NODE:
+            closeStartTag();
+            write("<!--");
+            write(node.getNodeValue());
+            write("-->");
+            break;
+        case Node.PROCESSING_INSTRUCTION_NODE:
+            closeStartTag();
+            write("<?");
+            write(node.getNodeName());
+            String instruction = node.getNodeValue();
+            if (instruction != null && instruction.length() > 0) {
+                write(' ');
+                write(instruction);
+            }
+            write("?>");
+            break;
+        case Node.DOCUMENT_FRAGMENT_NODE:
+        case Node.ENTITY_REFERENCE_NODE:
+            writeChildren(node);
+            break;
+        default:
+            // Document type declarations are not rendered.
+        }
+    }
+}
@@ -44,6 +44,12 @@ import nextapp.echo2.webrender.UserInstance;
  * <p>
  * An instance of this service must be registered with the 
  * <code>ServiceRegistry</code> if asynchronous polling is required.
+ * <p>
+ * When the <code>echo2.asyncLongPollTimeout</code> servlet initialization
+ * parameter is set, poll requests are held open ("long-polling") until 
+ * synchronization is required or the timeout elapses, such that 
+ * server-initiated updates reach the client without waiting for the next
+ * poll interval and idle clients issue far fewer requests.
  */
 public abstract class AsyncMonitorService 
 implements Service {
@@ -53,6 +59,32 @@ implements Service {
      */
     public static final String SERVICE_ID = "Echo.AsyncMonitor";
     
+    /**
+     * Servlet initialization parameter specifying the maximum time, in 
+     * milliseconds, that a poll request will be held open waiting for 
+     * synchronization to become required.  Long-polling is disabled if the
+     * value is zero (the default).
+     */
+    public static final String INIT_PARAMETER_LONG_POLL_TIMEOUT = "echo2.asyncLongPollTimeout";
+    
+    /**
+     * Servlet initialization parameter specifying the maximum number of poll
+     * requests that may be held open simultaneously.  Poll requests received
+     * while this number of requests are waiting are answered immediately, 
+     * such that long-polling clients cannot exhaust the servlet container's
+     * request processing threads.
+     */
+    public static final String INIT_PARAMETER_LONG_POLL_MAX_WAITING = "echo2.asyncLongPollMaxWaiting";
+    
+    private static final int DEFAULT_LONG_POLL_TIMEOUT = 0;
+    private static final int DEFAULT_LONG_POLL_MAX_WAITING = 64;
+    
+    /**
+     * Number of poll requests currently being held open.
+     * Guarded by <code>this</code>.
+     */
+    private int waitingCount = 0;
+    
     /**
      * @see nextapp.echo2.webrender.Service#getId()
      */
@@ -77,12 +109,67 @@ implements Service {
      */
     protected abstract boolean isSynchronizationRequired(UserInstance userInstance);
     
+    /**
+     * Blocks until the specified <code>UserInstance</code> requires 
+     * synchronization or the specified timeout elapses.
+     * <p>
+     * The default implementation does not block and simply returns the
+     * value of <code>isSynchronizationRequired()</code>.  Implementations 
+     * which are able to be notified of asynchronous operations should 
+     * override this method to support long-polling.
+     * 
+     * @param userInstance the <code>UserInstance</code>
+     * @param timeout the maximum time to wait, in milliseconds
+     * @return true if the <code>UserInstance</code> requires immediate 
+     *         client-server synchronization
+     * @throws InterruptedException if the calling thread is interrupted 
+     *         while waiting
+     */
+    protected boolean waitForSynchronizationRequired(UserInstance userInstance, long timeout) 
+    throws InterruptedException {
+        return isSynchronizationRequired(userInstance);
+    }
+    
+    /**
+     * Determines if the specified <code>UserInstance</code> requires 
+     * synchronization, holding the request open for up to the configured
+     * long-poll timeout if possible.
+     * 
+     * @param conn the <code>Connection</code> being serviced
+     * @return true if the <code>UserInstance</code> requires immediate 
+     *         client-server synchronization
+     */
+    private boolean pollSynchronizationRequired(Connection conn) {
+        UserInstance userInstance = conn.getUserInstance();
+        int timeout = conn.getServlet().getIntInitParameter(INIT_PARAMETER_LONG_POLL_TIMEOUT, DEFAULT_LONG_POLL_TIMEOUT);
+        if (timeout <= 0) {
+            return isSynchronizationRequired(userInstance);
+        }
+        int maxWaiting = conn.getServlet().getIntInitParameter(INIT_PARAMETER_LONG_POLL_MAX_WAITING, DEFAULT_LONG_POLL_MAX_WAITING);
+        synchronized (this) {
+            if (waitingCount >= maxWaiting) {
+                return isSynchronizationRequired(userInstance);
+            }
+            ++waitingCount;
+        }
+        try {
+            return waitForSynchronizationRequired(userInstance, timeout);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return isSynchronizationRequired(userInstance);
+        } finally {
+            synchronized (this) {
+                --waitingCount;
+            }
+        }
+    }
+    
     /**
      * @see nextapp.echo2.webrender.Service#service(nextapp.echo2.webrender.Connection)
      */
     public void service(Connection conn) throws IOException {
         conn.setContentType(ContentType.TEXT_XML);
-        if (isSynchronizationRequired(conn.getUserInstance())) {
+        if (pollSynchronizationRequired(conn)) {
             conn.getWriter().write("<async-monitor request-sync=\"true\"/>");
         } else {
             conn.getWriter().write("<async-monitor request-sync=\"false\"/>");
@@ -0,0 +1,266 @@
+/* 
+ * This file is part of the Echo Web Application Framework (hereinafter "Echo").
+ * Copyright (C) 2002-2009 NextApp, Inc.
+ *
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ */
+
+
+package nextapp.echo2.webrender.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import nextapp.echo2.webrender.util.DomUtil;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+/**
+ * Streaming reader of "ClientMessage" XML documents.
+ * <p>
+ * Only the root element of the ClientMessage (including its attributes) is
+ * parsed when the reader is created.  The <code>message-part</code> elements
+ * are then read one at a time by <code>nextMessagePart()</code>, such that
+ * each may be processed and discarded before the next is parsed.  Message 
+ * parts are created by the reader's <code>Document</code> but are not 
+ * appended to its root element.
+ * <p>
+ * Reading stops at the end of the root element, thus any trailing content
+ * (e.g., whitespace appended by Konqueror/KHTML browsers) is never parsed.
+ */
+class ClientMessageReader {
+    
+    /**
+     * Key of the <code>Document</code> user data containing the 
+     * <code>ClientMessageReader</code> which created the document.
+     */
+    static final String USER_DATA_KEY = ClientMessageReader.class.getName();
+    
+    /**
+     * The name of ClientMessage message part elements.
+     */
+    private static final String MESSAGE_PART = "message-part";
+    
+    private static final String XMLNS_NAMESPACE_URI = "http://www.w3.org/2000/xmlns/";
+    
+    /**
+     * Shared <code>XMLInputFactory</code>, configured to reject DTDs and 
+     * external entities.  Factories are thread-safe once configured.
+     */
+    private static final XMLInputFactory inputFactory;
+    static {
+        inputFactory = XMLInputFactory.newInstance();
+        inputFactory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE);
+        inputFactory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+        inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+        inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+    }
+    
+    private InputStream in;
+    private XMLStreamReader reader;
+    private Document document;
+    
+    /**
+     * Flag indicating whether the end of the root element has been reached.
+     */
+    private boolean complete;
+    
+    /**
+     * Creates a new <code>ClientMessageReader</code> and parses the root
+     * element of the ClientMessage.
+     * 
+     * @param in the <code>InputStream</code> from which the ClientMessage 
+     *        will be read
+     * @throws IOException if the input is invalid
+     */
+    ClientMessageReader(InputStream in) 
+    throws IOException {
+        super();
+        this.in = in;
+        try {
+            reader = inputFactory.createXMLStreamReader(in);
+            // Skip prolog.
+            while (reader.getEventType() != XMLStreamConstants.START_ELEMENT) {
+                if (!reader.hasNext()) {
+                    throw new XMLStreamException("No root element.");
+                }
+                reader.next();
+            }
+            document = DomUtil.getDocumentBuilder().newDocument();
+            document.appendChild(createElement());
+            document.setUserData(USER_DATA_KEY, this, null);
+        } catch (XMLStreamException ex) {
+            close();
+            throw new IOException("Provided InputStream cannot be parsed: " + ex, ex);
+        }
+    }
+    
+    /**
+     * Releases the parser and closes the underlying <code>InputStream</code>.
+     */
+    void close() {
+        complete = true;
+        if (reader != null) {
+            try { reader.close(); } catch (XMLStreamException ex) { }
+            reader = null;
+        }
+        if (in != null) { 
+            try { in.close(); } catch (IOException ex) { } 
+            in = null;
+        }
+    }
+    
+    /**
+     * Creates a DOM <code>Element</code> representing the element at the
+     * current position of the parser, including its attributes and 
+     * namespace declarations.
+     * 
+     * @return the created <code>Element</code>
+     */
+    private Element createElement() {
+        Element element = document.createElementNS(emptyToNull(reader.getNamespaceURI()), 
+                getQualifiedName(reader.getPrefix(), reader.getLocalName()));
+        int namespaceCount = reader.getNamespaceCount();
+        for (int i = 0; i < namespaceCount; ++i) {
+            String prefix = reader.getNamespacePrefix(i);
+            String uri = reader.getNamespaceURI(i);
+            element.setAttributeNS(XMLNS_NAMESPACE_URI, prefix == null || prefix.length() == 0 ? "xmlns" : "xmlns:" + prefix, 
+                    uri == null ? "" : uri);
+        }
+        int attributeCount = reader.getAttributeCount();
+        for (int i = 0; i < attributeCount; ++i) {
+            element.setAttributeNS(emptyToNull(reader.getAttributeNamespace(i)), 
+                    getQualifiedName(reader.getAttributePrefix(i), reader.getAttributeLocalName(i)), 
+                    reader.getAttributeValue(i));
+        }
+        return element;
+    }
+    
+    /**
+     * Returns the <code>Document</code> containing the root element of the 
+     * ClientMessage.
+     * 
+     * @return the <code>Document</code>
+     */
+    Document getDocument() {
+        return document;
+    }
+    
+    /**
+     * Reads the next <code>message-part</code> element of the ClientMessage.
+     * Other child elements of the root element are skipped.
+     * 
+     * @return the <code>message-part</code> element, or null if no further
+     *         message parts are present
+     * @throws IOException if the input is invalid
+     */
+    Element nextMessagePart() 
+    throws IOException {
+        if (complete) {
+            return null;
+        }
+        try {
+            while (true) {
+                switch (reader.next()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    Element element = readElement();
+                    if (MESSAGE_PART.equals(element.getNodeName())) {
+                        return element;
+                    }
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    // End of root element.
+                    close();
+                    return null;
+                }
+            }
+        } catch (XMLStreamException ex) {
+            close();
+            throw new IOException("Provided InputStream cannot be parsed: " + ex, ex);
+        }
+    }
+    
+    /**
+     * Reads the element at the current position of the parser, including 
+     * its descendants.  The parser is left positioned at the end of the 
+     * element.
+     * 
+     * @return the <code>Element</code>
+     * @throws XMLStreamException if the input is invalid
+     */
+    private Element readElement() 
+    throws XMLStreamException {
+        Element element = createElement();
+        Node parent = element;
+        while (true) {
+            switch (reader.next()) {
+            case XMLStreamConstants.START_ELEMENT:
+                Element child = createElement();
+                parent.appendChild(child);
+                parent = child;
+                break;
+            case XMLStreamConstants.END_ELEMENT:
+                if (parent == element) {
+                    return element;
+                }
+                parent = parent.getParentNode();
+                break;
+            case XMLStreamConstants.CHARACTERS:
+            case XMLStreamConstants.CDATA:
+            case XMLStreamConstants.SPACE:
+                parent.appendChild(document.createTextNode(reader.getText()));
+                break;
+            }
+        }
+    }
+    
+    /**
+     * Returns null for an empty namespace URI, as required by the DOM.
+     * 
+     * @param namespaceUri the namespace URI
+     * @return the namespace URI, or null if it is empty
+     */
+    private static String emptyToNull(String namespaceUri) {
+        return namespaceUri == null || namespaceUri.length() == 0 ? null : namespaceUri;
+    }
+    
+    /**
+     * Returns the qualified name of an element or attribute.
+     * 
+     * @param prefix the namespace prefix, if any
+     * @param localName the local name
+     * @return the qualified name
+     */
+    private static String getQualifiedName(String prefix, String localName) {
+        return prefix == null || prefix.length() == 0 ? localName : prefix + ":" + localName;
+    }
+}
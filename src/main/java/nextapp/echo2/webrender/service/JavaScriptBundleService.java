@@ -0,0 +1,254 @@
+/* 
+ * This file is part of the Echo Web Application Framework (hereinafter "Echo").
+ * Copyright (C) 2002-2009 NextApp, Inc.
+ *
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ */
+
+
+package nextapp.echo2.webrender.service;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.UnsupportedEncodingException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import nextapp.echo2.webrender.Connection;
+import nextapp.echo2.webrender.ContentHashService;
+import nextapp.echo2.webrender.Service;
+import nextapp.echo2.webrender.ServiceRegistry;
+import nextapp.echo2.webrender.WebRenderServlet;
+import nextapp.echo2.webrender.util.GZipCompressor;
+import nextapp.echo2.webrender.util.HashUtil;
+
+/**
+ * A service which renders an ordered set of <code>JavaScriptService</code>
+ * libraries in a single response, such that a client requiring several
+ * libraries may retrieve them with a single request.
+ * <p>
+ * The response contains, for each library, the library's service id and the
+ * length of its content (in characters), each followed by a newline, followed
+ * by the content itself.
+ * <p>
+ * Bundles are created on demand by <code>forLibraries()</code> and registered
+ * in the global <code>ServiceRegistry</code>.  As the content of a bundle
+ * does not change, bundles are <code>ContentHashService</code>s which may be
+ * cached by the client.  Bundles retain only their GZip compressed content,
+ * the plain content being assembled from the libraries when requested by a
+ * client which does not accept GZip encoding.  The total size of the 
+ * compressed content of all bundles is bounded: the least recently used 
+ * bundles are discarded and unregistered when the bound is exceeded.
+ */
+public class JavaScriptBundleService 
+implements ContentHashService {
+    
+    /** Prefix of bundle <code>Service</code> identifiers. */
+    private static final String SERVICE_ID_PREFIX = "Echo.Bundle.";
+    
+    /** 
+     * Maximum total size, in bytes, of the compressed content of all 
+     * bundles.
+     */
+    private static final long MAXIMUM_SIZE = 4 * 1024 * 1024;
+    
+    /** 
+     * Maps bundle keys (the ids of the bundled libraries) to bundles, in 
+     * least to most recently used order.  Guarded by itself, as is 
+     * <code>size</code>.
+     */
+    private static final Map keyToBundleMap = new LinkedHashMap(16, 0.75f, true);
+    
+    /** Total size, in bytes, of the compressed content of all bundles. */
+    private static long size = 0;
+    
+    /**
+     * Returns a bundle of the specified libraries, creating and registering
+     * it with the global <code>ServiceRegistry</code> if required.
+     * 
+     * @param serviceIds the ids of the <code>JavaScriptService</code>s to 
+     *        bundle, in the order in which they must be installed
+     * @return the bundle, or null if the libraries cannot be bundled (i.e.,
+     *         if any is not a registered <code>JavaScriptService</code> or
+     *         the compressed bundle would exceed the maximum total size)
+     */
+    public static JavaScriptBundleService forLibraries(String[] serviceIds) {
+        StringBuffer keyBuffer = new StringBuffer();
+        for (int i = 0; i < serviceIds.length; ++i) {
+            if (i > 0) {
+                keyBuffer.append(',');
+            }
+            keyBuffer.append(serviceIds[i]);
+        }
+        String key = keyBuffer.toString();
+        
+        synchronized (keyToBundleMap) {
+            JavaScriptBundleService bundle = (JavaScriptBundleService) keyToBundleMap.get(key);
+            if (bundle != null) {
+                return bundle;
+            }
+        }
+        
+        // Create the bundle without holding the lock, as compressing it is expensive.
+        ServiceRegistry services = WebRenderServlet.getServiceRegistry();
+        JavaScriptService[] libraries = new JavaScriptService[serviceIds.length];
+        for (int i = 0; i < serviceIds.length; ++i) {
+            Service service = services.get(serviceIds[i]);
+            if (!(service instanceof JavaScriptService)) {
+                return null;
+            }
+            libraries[i] = (JavaScriptService) service;
+        }
+        JavaScriptBundleService bundle;
+        try {
+            bundle = new JavaScriptBundleService(SERVICE_ID_PREFIX + HashUtil.hash(key.getBytes("UTF-8")), libraries);
+        } catch (UnsupportedEncodingException ex) {
+            // Should not occur.
+            throw new RuntimeException("UTF-8 encoding not supported.", ex);
+        }
+        if (bundle.gzipContent.length > MAXIMUM_SIZE) {
+            return null;
+        }
+        
+        synchronized (keyToBundleMap) {
+            JavaScriptBundleService existingBundle = (JavaScriptBundleService) keyToBundleMap.get(key);
+            if (existingBundle != null) {
+                // Created concurrently by another thread.
+                return existingBundle;
+            }
+            keyToBundleMap.put(key, bundle);
+            size += bundle.gzipContent.length;
+            services.add(bundle);
+            
+            // Evict least recently used bundles.
+            Iterator it = keyToBundleMap.values().iterator();
+            while (size > MAXIMUM_SIZE && it.hasNext()) {
+                JavaScriptBundleService evictedBundle = (JavaScriptBundleService) it.next();
+                it.remove();
+                size -= evictedBundle.gzipContent.length;
+                services.remove(evictedBundle);
+            }
+            return bundle;
+        }
+    }
+    
+    /** <code>Service</code> identifier. */
+    private String id;
+    
+    /** The bundled libraries. */
+    private JavaScriptService[] libraries;
+    
+    /** The bundle content in GZip compressed form. */
+    private byte[] gzipContent;
+    
+    /** Hash of the GZip compressed content. */
+    private String contentHash;
+    
+    /**
+     * Creates a new <code>JavaScriptBundleService</code>.
+     * 
+     * @param id the <code>Service</code> id
+     * @param libraries the bundled libraries
+     */
+    private JavaScriptBundleService(String id, JavaScriptService[] libraries) {
+        super();
+        this.id = id;
+        this.libraries = libraries;
+        try {
+            byte[] data = getContent().getBytes("UTF-8");
+            gzipContent = GZipCompressor.compress(data, data.length, 9);
+        } catch (UnsupportedEncodingException ex) {
+            // Should not occur.
+            throw new RuntimeException("UTF-8 encoding not supported.", ex);
+        } catch (IOException ex) {
+            // Should not occur.
+            throw new RuntimeException("Exception compressing JavaScript bundle.", ex);
+        }
+        contentHash = HashUtil.hash(gzipContent);
+    }
+    
+    /**
+     * Assembles the bundle content in plain text.
+     * 
+     * @return the content
+     */
+    private String getContent() {
+        StringBuffer out = new StringBuffer();
+        for (int i = 0; i < libraries.length; ++i) {
+            String libraryContent = libraries[i].getContent();
+            out.append(libraries[i].getId());
+            out.append('\n');
+            out.append(libraryContent.length());
+            out.append('\n');
+            out.append(libraryContent);
+        }
+        return out.toString();
+    }
+    
+    /**
+     * @see nextapp.echo2.webrender.ContentHashService#getContentHash()
+     */
+    public String getContentHash() {
+        return contentHash;
+    }
+    
+    /**
+     * @see nextapp.echo2.webrender.Service#getId()
+     */
+    public String getId() {
+        return id;
+    }
+    
+    /**
+     * @see nextapp.echo2.webrender.Service#getVersion()
+     */
+    public int getVersion() {
+        return DO_NOT_CACHE;
+    }
+    
+    /**
+     * @see nextapp.echo2.webrender.Service#service(nextapp.echo2.webrender.Connection)
+     */
+    public void service(Connection conn) 
+    throws IOException {
+        conn.getResponse().setContentType("text/plain; charset=UTF-8");
+        if (conn.isGZipEncodingAccepted()) {
+            conn.getResponse().setHeader("Content-Encoding", "gzip");
+            conn.getResponse().setContentLength(gzipContent.length);
+            conn.getOutputStream().write(gzipContent);
+        } else {
+            PrintWriter pw = conn.getWriter();
+            for (int i = 0; i < libraries.length; ++i) {
+                String libraryContent = libraries[i].getContent();
+                pw.print(libraries[i].getId());
+                pw.print('\n');
+                pw.print(libraryContent.length());
+                pw.print('\n');
+                pw.print(libraryContent);
+            }
+        }
+    }
+}
@@ -32,8 +32,9 @@ package nextapp.echo2.webrender.service;
 import java.io.IOException;
 
 import nextapp.echo2.webrender.Connection;
-import nextapp.echo2.webrender.Service;
+import nextapp.echo2.webrender.ContentHashService;
 import nextapp.echo2.webrender.util.GZipCompressor;
+import nextapp.echo2.webrender.util.HashUtil;
 import nextapp.echo2.webrender.util.JavaScriptCompressor;
 import nextapp.echo2.webrender.util.Resource;
 
@@ -41,7 +42,7 @@ import nextapp.echo2.webrender.util.Resource;
  * A service which renders <code>JavaScript</code> resource files.
  */
 public class JavaScriptService 
-implements Service {
+implements ContentHashService {
     
     /**
      * Creates a new <code>JavaScript</code> service from the specified
@@ -66,6 +67,9 @@ implements Service {
     /** The JavaScript content in GZip compressed form. */
     private byte[] gzipContent;
     
+    /** Hash of the GZip compressed content. */
+    private String contentHash;
+    
     /**
      * Creates a new <code>JavaScriptService</code>.
      * 
@@ -82,6 +86,25 @@ implements Service {
             // Should not occur.
             throw new RuntimeException("Exception compressing JavaScript source.", ex);
         }
+        contentHash = HashUtil.hash(gzipContent);
+    }
+    
+    /**
+     * Returns the (compressed) JavaScript content in plain text.
+     * 
+     * @return the content
+     */
+    String getContent() {
+        return content;
+    }
+    
+    /**
+     * Returns a hash of the compressed JavaScript content.
+     * 
+     * @see nextapp.echo2.webrender.ContentHashService#getContentHash()
+     */
+    public String getContentHash() {
+        return contentHash;
     }
     
     /**
@@ -94,7 +117,9 @@ implements Service {
     /**
      * <code>DO_NOT_CACHE</code> is returned for <code>JavaScript</code>
      * to avoid possibility of ever running out-of-date JavaScript in the
-     * event an application is updated and redeployed. 
+     * event an application is updated and redeployed.  Requests bearing the
+     * current content hash are nonetheless cached by the client, as the URI 
+     * changes with the content.
      * 
      * @see nextapp.echo2.webrender.Service#getVersion()
      */
@@ -107,21 +132,10 @@ implements Service {
      */
     public void service(Connection conn) 
     throws IOException {
-        String userAgent = conn.getRequest().getHeader("user-agent");
-        if (userAgent == null || userAgent.indexOf("MSIE") != -1) {
-            // Due to behavior detailed Microsoft Knowledge Base Article Id 312496, 
-            // all HTTP compression support is disabled for this browser.
-            // Due to the fact that ClientProperties information is not necessarily 
-            // available at this stage, browsers which provide deceitful user-agent 
-            // headers will also be affected.
-            servicePlain(conn);
+        if (conn.isGZipEncodingAccepted()) {
+            serviceGZipCompressed(conn);
         } else {
-            String acceptEncoding = conn.getRequest().getHeader("accept-encoding");
-            if (acceptEncoding != null && acceptEncoding.indexOf("gzip") != -1) {
-                serviceGZipCompressed(conn);
-            } else {
-                servicePlain(conn);
-            }
+            servicePlain(conn);
         }
     }
     
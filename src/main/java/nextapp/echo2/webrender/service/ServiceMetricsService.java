@@ -0,0 +1,128 @@
+/* 
+ * This file is part of the Echo Web Application Framework (hereinafter "Echo").
+ * Copyright (C) 2002-2009 NextApp, Inc.
+ *
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ */
+
+
+package nextapp.echo2.webrender.service;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import nextapp.echo2.webrender.Connection;
+import nextapp.echo2.webrender.ContentType;
+import nextapp.echo2.webrender.Service;
+import nextapp.echo2.webrender.ServiceMetrics;
+import nextapp.echo2.webrender.ServiceStatistics;
+
+/**
+ * <code>Service</code> which renders the collected 
+ * <code>ServiceMetrics</code> as plain text, one line per service, 
+ * followed by any registered <code>ServiceMetrics.Report</code>s.
+ * Latencies are reported in milliseconds.
+ * <p>
+ * This service is only registered when metrics are enabled.
+ */
+public class ServiceMetricsService 
+implements Service {
+    
+    /**
+     * <code>Service</code> identifier.
+     */
+    public static final String SERVICE_ID = "Echo.Metrics";
+    
+    /**
+     * Singleton instance.
+     */
+    public static final Service INSTANCE = new ServiceMetricsService();
+    
+    /**
+     * Creates a new <code>ServiceMetricsService</code>.
+     */
+    private ServiceMetricsService() {
+        super();
+    }
+    
+    /**
+     * @see nextapp.echo2.webrender.Service#getId()
+     */
+    public String getId() {
+        return SERVICE_ID;
+    }
+    
+    /**
+     * @see nextapp.echo2.webrender.Service#getVersion()
+     */
+    public int getVersion() {
+        return DO_NOT_CACHE;
+    }
+    
+    /**
+     * Formats a latency value.
+     * 
+     * @param latency the latency, in milliseconds
+     * @return the formatted value
+     */
+    private static String formatLatency(double latency) {
+        return Long.toString(Math.round(latency * 1000) / 1000) + "." 
+                + Long.toString(1000 + Math.round(latency * 1000) % 1000).substring(1);
+    }
+    
+    /**
+     * @see nextapp.echo2.webrender.Service#service(nextapp.echo2.webrender.Connection)
+     */
+    public void service(Connection conn) 
+    throws IOException {
+        conn.setContentType(ContentType.TEXT_PLAIN);
+        PrintWriter pw = conn.getWriter();
+        pw.println("service\tcount\terrors\tbytes\tmean\tp50\tp99\tmax");
+        ServiceStatistics[] statistics = ServiceMetrics.getStatistics();
+        for (int i = 0; i < statistics.length; ++i) {
+            pw.print(statistics[i].getServiceId());
+            pw.print('\t');
+            pw.print(statistics[i].getCount());
+            pw.print('\t');
+            pw.print(statistics[i].getErrorCount());
+            pw.print('\t');
+            pw.print(statistics[i].getBytesOut());
+            pw.print('\t');
+            pw.print(formatLatency(statistics[i].getMeanLatency()));
+            pw.print('\t');
+            pw.print(formatLatency(statistics[i].getP50Latency()));
+            pw.print('\t');
+            pw.print(formatLatency(statistics[i].getP99Latency()));
+            pw.print('\t');
+            pw.println(formatLatency(statistics[i].getMaxLatency()));
+        }
+        ServiceMetrics.Report[] reports = ServiceMetrics.getReports();
+        for (int i = 0; i < reports.length; ++i) {
+            pw.println();
+            pw.println("# " + reports[i].getName());
+            reports[i].render(pw);
+        }
+    }
+}
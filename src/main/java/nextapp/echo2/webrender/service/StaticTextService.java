@@ -30,16 +30,18 @@
 package nextapp.echo2.webrender.service;
 
 import java.io.IOException;
+import java.io.UnsupportedEncodingException;
 
 import nextapp.echo2.webrender.Connection;
-import nextapp.echo2.webrender.Service;
+import nextapp.echo2.webrender.EntityTagService;
+import nextapp.echo2.webrender.util.HashUtil;
 import nextapp.echo2.webrender.util.Resource;
 
 /**
  * A service which renders a text resource, such as a text or XML document.
  */
 public class StaticTextService 
-implements Service {
+implements EntityTagService {
     
     /**
      * Creates a new <code>StaticTextService</code> based on the content in the
@@ -61,6 +63,7 @@ implements Service {
     private String id;
     private String content;
     private String contentType;
+    private String entityTag;
     
     /**
      * Creates a new <code>StaticTextService</code>.
@@ -74,6 +77,21 @@ implements Service {
         this.id = id;
         this.contentType = contentType;
         this.content = content;
+        try {
+            entityTag = HashUtil.hash(content.getBytes("UTF-8"));
+        } catch (UnsupportedEncodingException ex) {
+            // Should not occur.
+            throw new RuntimeException("UTF-8 encoding not supported.", ex);
+        }
+    }
+    
+    /**
+     * Returns a hash of the content.
+     * 
+     * @see nextapp.echo2.webrender.EntityTagService#getEntityTag(nextapp.echo2.webrender.Connection)
+     */
+    public String getEntityTag(Connection conn) {
+        return entityTag;
     }
     
     /**
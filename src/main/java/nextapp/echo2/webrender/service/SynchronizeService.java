@@ -29,18 +29,19 @@
 
 package nextapp.echo2.webrender.service;
 
-import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.zip.Deflater;
 
 import javax.servlet.http.HttpServletRequest;
 
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
-import org.xml.sax.SAXException;
 
 import nextapp.echo2.webrender.ClientAnalyzerProcessor;
 import nextapp.echo2.webrender.Connection;
@@ -52,7 +53,9 @@ import nextapp.echo2.webrender.UserInstanceUpdateManager;
 import nextapp.echo2.webrender.servermessage.ClientConfigurationUpdate;
 import nextapp.echo2.webrender.servermessage.ClientPropertiesStore;
 import nextapp.echo2.webrender.servermessage.ServerDelayMessageUpdate;
+import nextapp.echo2.webrender.servermessage.WindowUpdate;
 import nextapp.echo2.webrender.util.DomUtil;
+import nextapp.echo2.webrender.util.GZipCompressor;
 
 /**
  * A service which synchronizes the state of the client with that of the server.
@@ -101,11 +104,102 @@ implements Service {
      */
     public static final String SERVICE_ID = "Echo.Synchronize";
 
+    /**
+     * Servlet initialization parameter specifying the minimum size, in bytes,
+     * of a <code>ServerMessage</code> for it to be sent to the client 
+     * GZip-compressed.  A negative value disables compression of
+     * <code>ServerMessage</code>s.
+     */
+    public static final String INIT_PARAMETER_COMPRESSION_THRESHOLD = "echo2.syncCompressionThreshold";
+    
+    /**
+     * Servlet initialization parameter specifying the GZip compression level
+     * (0-9) of compressed <code>ServerMessage</code>s.
+     */
+    public static final String INIT_PARAMETER_COMPRESSION_LEVEL = "echo2.syncCompressionLevel";
+    
+    /**
+     * Default minimum size, in bytes, of a compressed <code>ServerMessage</code>.
+     */
+    private static final int DEFAULT_COMPRESSION_THRESHOLD = 4096;
+    
+    /**
+     * Initial size of the buffer in which <code>ServerMessage</code>s are 
+     * rendered before being compressed.
+     */
+    private static final int COMPRESSION_BUFFER_SIZE = 16384;
+    
+    /**
+     * Servlet initialization parameter specifying the maximum time, in 
+     * milliseconds, that a synchronization request will wait for another 
+     * request of the same <code>UserInstance</code> to complete before the
+     * client is instructed to retry it.
+     */
+    public static final String INIT_PARAMETER_SYNC_WAIT_TIMEOUT = "echo2.syncWaitTimeout";
+    
+    /**
+     * Servlet initialization parameter specifying the maximum number of 
+     * synchronization requests of a single <code>UserInstance</code> which
+     * may wait while another of its requests is being processed.  Requests
+     * exceeding this number are immediately instructed to retry.
+     */
+    public static final String INIT_PARAMETER_SYNC_MAX_WAITING = "echo2.syncMaxWaiting";
+    
+    private static final int DEFAULT_SYNC_WAIT_TIMEOUT = 10000;
+    private static final int DEFAULT_SYNC_MAX_WAITING = 2;
+    
+    /**
+     * Interval, in milliseconds, after which the client should retry a 
+     * request which could not be processed because the
+     * <code>UserInstance</code> was busy.
+     */
+    private static final int BUSY_RETRY_INTERVAL = 500;
+
+    /**
+     * Result of <code>enter()</code>: request may be processed.
+     */
+    private static final int ENTER_ADMITTED = 0;
+    
+    /**
+     * Result of <code>enter()</code>: <code>UserInstance</code> is busy,
+     * client should retry the request.
+     */
+    private static final int ENTER_BUSY = 1;
+    
+    /**
+     * Result of <code>enter()</code>: request was superseded by another 
+     * request of the <code>UserInstance</code> while waiting.
+     */
+    private static final int ENTER_SUPERSEDED = 2;
+    
+    /**
+     * Admission state of the synchronization requests of a single
+     * <code>UserInstance</code>.  Guarded by itself.
+     */
+    private static class RequestGate {
+        
+        /**
+         * Flag indicating whether a request is being processed.
+         */
+        private boolean busy;
+        
+        /**
+         * Number of requests waiting to be processed.
+         */
+        private int waiting;
+    }
+    
     /**
      * Map containing registered <code>ClientMessagePartProcessor</code>s.
      */
     private Map clientMessagePartProcessorMap = new HashMap(); 
     
+    /**
+     * Mapping between <code>UserInstance</code>s and their 
+     * <code>RequestGate</code>s.  Guarded by itself.
+     */
+    private Map requestGateMap = new WeakHashMap();
+    
     /**
      * Creates a new <code>SynchronizeService</code>.
      */
@@ -115,39 +209,87 @@ implements Service {
     }
     
     /**
-     * Trims an XML <code>InputStream</code> to work around the issue 
-     * of the XML parser crashing on trailing whitespace.   This issue is present 
-     * with requests from Konqueror/KHTML browsers. 
+     * Waits until a synchronization request of a <code>UserInstance</code>
+     * may be processed.  If admitted, the caller must invoke 
+     * <code>exit()</code> once processing is complete.
+     * <p>
+     * Only a single request per <code>UserInstance</code> is processed at 
+     * a time.  Others wait, up to the configured timeout and number of
+     * waiting requests.  A waiting request whose transaction id is no longer
+     * current once another request completes has been superseded and is not
+     * processed.
      * 
-     * @param in the <code>InputStream</code>
-     * @param characterEncoding the character encoding of the stream 
-     * @return a cleaned version of the stream, as a 
-     *         <code>ByteArrayInputStream</code>.
-     */
-    private InputStream cleanXmlInputStream(InputStream in, String characterEncoding) 
-    throws IOException{
-        ByteArrayOutputStream byteOut = new ByteArrayOutputStream();
-        
-        byte[] buffer = new byte[4096];
-        int bytesRead = 0;
-        
-        try {
-            do {
-                bytesRead = in.read(buffer);
-                if (bytesRead > 0) {
-                    byteOut.write(buffer, 0, bytesRead);
+     * @param conn the relevant <code>Connection</code>
+     * @param gate the <code>RequestGate</code> of the <code>UserInstance</code>
+     * @param clientMessageDocument the ClientMessage XML document
+     * @return <code>ENTER_ADMITTED</code>, <code>ENTER_BUSY</code>, or
+     *         <code>ENTER_SUPERSEDED</code>
+     */
+    private int enter(Connection conn, RequestGate gate, Document clientMessageDocument) {
+        int maxWaiting = conn.getServlet().getIntInitParameter(INIT_PARAMETER_SYNC_MAX_WAITING, DEFAULT_SYNC_MAX_WAITING);
+        int waitTimeout = conn.getServlet().getIntInitParameter(INIT_PARAMETER_SYNC_WAIT_TIMEOUT, DEFAULT_SYNC_WAIT_TIMEOUT);
+        synchronized (gate) {
+            if (!gate.busy) {
+                gate.busy = true;
+                return ENTER_ADMITTED;
+            }
+            if (gate.waiting >= maxWaiting) {
+                return ENTER_BUSY;
+            }
+            boolean initialize = "initialize".equals(clientMessageDocument.getDocumentElement().getAttribute("type"));
+            long endTime = System.currentTimeMillis() + waitTimeout;
+            ++gate.waiting;
+            try {
+                while (gate.busy) {
+                    long remaining = endTime - System.currentTimeMillis();
+                    if (remaining <= 0) {
+                        return ENTER_BUSY;
+                    }
+                    gate.wait(remaining);
+                    if (!initialize && !validateTransactionId(conn.getUserInstance(), clientMessageDocument)) {
+                        return ENTER_SUPERSEDED;
+                    }
                 }
-            } while (bytesRead > 0);
-        } finally {
-            if (in != null) { try { in.close(); } catch (IOException ex) { } } 
+                gate.busy = true;
+                return ENTER_ADMITTED;
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return ENTER_BUSY;
+            } finally {
+                --gate.waiting;
+            }
+        }
+    }
+    
+    /**
+     * Completes the processing of a request admitted by <code>enter()</code>,
+     * allowing the next waiting request to proceed.
+     * 
+     * @param gate the <code>RequestGate</code> of the <code>UserInstance</code>
+     */
+    private void exit(RequestGate gate) {
+        synchronized (gate) {
+            gate.busy = false;
+            gate.notifyAll();
+        }
+    }
+    
+    /**
+     * Retrieves the <code>RequestGate</code> of a <code>UserInstance</code>,
+     * creating it if necessary.
+     * 
+     * @param userInstance the <code>UserInstance</code>
+     * @return the <code>RequestGate</code>
+     */
+    private RequestGate getRequestGate(UserInstance userInstance) {
+        synchronized (requestGateMap) {
+            RequestGate gate = (RequestGate) requestGateMap.get(userInstance);
+            if (gate == null) {
+                gate = new RequestGate();
+                requestGateMap.put(userInstance, gate);
+            }
+            return gate;
         }
-        
-        in.close();
-        
-        byte[] data = byteOut.toByteArray();
-        data = new String(data, characterEncoding).trim().getBytes(characterEncoding);
-        
-        return new ByteArrayInputStream(data);
     }
     
     /**
@@ -165,35 +307,35 @@ implements Service {
     }
     
     /**
-     * Generates a DOM representation of the XML input POSTed to this service.
+     * Creates a <code>ClientMessageReader</code> to read the XML input
+     * POSTed to this service.
      * 
      * @param conn the relevant <code>Connection</code>
-     * @return a DOM representation of the POSTed XML input
+     * @return the <code>ClientMessageReader</code>, positioned after the
+     *         start of the root element
      * @throws IOException if the input is invalid
      */
-    private Document parseRequestDocument(Connection conn) 
+    private ClientMessageReader createClientMessageReader(Connection conn) 
     throws IOException {
         HttpServletRequest request = conn.getRequest();
-        InputStream in = null;
-        try {
-            String userAgent = conn.getRequest().getHeader("user-agent");
-            if (userAgent != null && userAgent.indexOf("onqueror") != -1) {
-                // Invoke XML 'cleaner', but only for  user agents that contain the string "onqueror",
-                // such as Konqueror, for example.
-                in = cleanXmlInputStream(request.getInputStream(), conn.getUserInstance().getCharacterEncoding());
-            } else {
-                in = request.getInputStream();
-            }
-            return DomUtil.getDocumentBuilder().parse(in);
-        } catch (SAXException ex) {
-            throw new IOException("Provided InputStream cannot be parsed: " + ex);
-        } catch (IOException ex) {
-            throw new IOException("Provided InputStream cannot be parsed: " + ex);
-        } finally {
-            if (in != null) { try { in.close(); } catch (IOException ex) { } }
-        }
+        return new ClientMessageReader(request.getInputStream());
     }
 
+    /**
+     * Writes a response instructing the client to retry its request after
+     * a delay, the <code>UserInstance</code> being busy processing another
+     * request.  The client continues to display its 
+     * <code>ServerDelayMessage</code> in the meantime.
+     * 
+     * @param conn the relevant <code>Connection</code>
+     * @throws IOException if the response cannot be written
+     */
+    private void renderBusy(Connection conn) 
+    throws IOException {
+        conn.setContentType(ContentType.TEXT_XML);
+        conn.getWriter().write("<server-busy retry-interval=\"" + BUSY_RETRY_INTERVAL + "\"/>");
+    }
+    
     /**
      * Processes a "ClientMessage" XML document containing application UI state 
      * change information from the client.  This method will parse the
@@ -206,18 +348,42 @@ implements Service {
      */
     protected void processClientMessage(Connection conn, Document clientMessageDocument) {
         UserInstance userInstance = conn.getUserInstance();
-        Element[] messageParts = DomUtil.getChildElementsByTagName(clientMessageDocument.getDocumentElement(), 
-                "message-part");
-        for (int i = 0; i < messageParts.length; ++i) {
-            ClientMessagePartProcessor processor = 
-                    (ClientMessagePartProcessor) clientMessagePartProcessorMap.get(messageParts[i].getAttribute("processor"));
-            if (processor == null) {
-                throw new RuntimeException("Invalid processor name \"" + messageParts[i].getAttribute("processor") + "\".");
+        ClientMessageReader reader = (ClientMessageReader) clientMessageDocument.getUserData(ClientMessageReader.USER_DATA_KEY);
+        if (reader == null) {
+            Element[] messageParts = DomUtil.getChildElementsByTagName(clientMessageDocument.getDocumentElement(), 
+                    "message-part");
+            for (int i = 0; i < messageParts.length; ++i) {
+                processMessagePart(userInstance, messageParts[i]);
+            }
+        } else {
+            // Message parts are streamed from the request: process each as it is read.
+            try {
+                Element messagePart;
+                while ((messagePart = reader.nextMessagePart()) != null) {
+                    processMessagePart(userInstance, messagePart);
+                }
+            } catch (IOException ex) {
+                throw new RuntimeException("Exception reading ClientMessage part.", ex);
             }
-            processor.process(userInstance, messageParts[i]);
         }
     }
     
+    /**
+     * Invokes the <code>ClientMessagePartProcessor</code> registered to
+     * process a message part.
+     * 
+     * @param userInstance the relevant <code>UserInstance</code>
+     * @param messagePartElement the <code>message-part</code> element
+     */
+    private void processMessagePart(UserInstance userInstance, Element messagePartElement) {
+        ClientMessagePartProcessor processor = 
+                (ClientMessagePartProcessor) clientMessagePartProcessorMap.get(messagePartElement.getAttribute("processor"));
+        if (processor == null) {
+            throw new RuntimeException("Invalid processor name \"" + messagePartElement.getAttribute("processor") + "\".");
+        }
+        processor.process(userInstance, messagePartElement);
+    }
+    
     /**
      * Registers a <code>ClientMessagePartProcessor</code> to handle a
      * specific type of message part.
@@ -234,6 +400,21 @@ implements Service {
         clientMessagePartProcessorMap.put(processor.getName(), processor);
     }
     
+    /**
+     * Renders a <code>ServerMessage</code> in response to a synchronization
+     * request which has been superseded by another request of the same
+     * <code>UserInstance</code>.  The client is instructed to reload, as is
+     * done for any request having an invalid transaction id.
+     * 
+     * @param conn the relevant <code>Connection</code>
+     * @return the generated <code>ServerMessage</code>
+     */
+    protected ServerMessage renderSuperseded(Connection conn) {
+        ServerMessage serverMessage = new ServerMessage();
+        WindowUpdate.renderReload(serverMessage);
+        return serverMessage;
+    }
+    
     /**
      * Renders a <code>ServerMessage</code> in response to the initial
      * synchronization.
@@ -260,17 +441,49 @@ implements Service {
     public void service(Connection conn) 
     throws IOException {
         UserInstance userInstance = conn.getUserInstance();
-        synchronized(userInstance) {
-            Document clientMessageDocument = parseRequestDocument(conn);
-            String messageType = clientMessageDocument.getDocumentElement().getAttribute("type");
-            ServerMessage serverMessage;
-            
+        ClientMessageReader reader = createClientMessageReader(conn);
+        Document clientMessageDocument = reader.getDocument();
+        RequestGate gate = getRequestGate(userInstance);
+        switch (enter(conn, gate, clientMessageDocument)) {
+        case ENTER_BUSY:
+            reader.close();
+            renderBusy(conn);
+            return;
+        case ENTER_SUPERSEDED:
+            reader.close();
+            renderServerMessage(conn, renderSuperseded(conn));
+            return;
+        }
+        try {
+            synchronized(userInstance) {
+                processRequest(conn, reader);
+            }
+        } finally {
+            exit(gate);
+        }
+    }
+    
+    /**
+     * Processes a synchronization request admitted by <code>enter()</code>.
+     * 
+     * @param conn the relevant <code>Connection</code>
+     * @param reader the <code>ClientMessageReader</code> reading the request
+     * @throws IOException if the response cannot be written
+     */
+    private void processRequest(Connection conn, ClientMessageReader reader) 
+    throws IOException {
+        UserInstance userInstance = conn.getUserInstance();
+        Document clientMessageDocument = reader.getDocument();
+        String messageType = clientMessageDocument.getDocumentElement().getAttribute("type");
+        ServerMessage serverMessage;
+        
+        try {
             if ("initialize".equals(messageType)) {
                 serverMessage = renderInit(conn, clientMessageDocument);
                 ClientPropertiesStore.renderStoreDirective(serverMessage, userInstance.getClientProperties());
                 ClientConfigurationUpdate.renderUpdateDirective(serverMessage, userInstance.getClientConfiguration());
                 ServerDelayMessageUpdate.renderUpdateDirective(serverMessage, userInstance.getServerDelayMessage());
-                
+            
                 // Add "test attribute" used by ClientEngine to determine if browser is correctly (un)escaping
                 // attribute values.  Safari does not do this correctly and a workaround is thus employed if such
                 // bugs are detected.
@@ -279,9 +492,66 @@ implements Service {
                 serverMessage = renderUpdate(conn, clientMessageDocument);
                 processUserInstanceUpdates(userInstance, serverMessage);
             }
-            serverMessage.setTransactionId(userInstance.getNextTransactionId());
-            conn.setContentType(ContentType.TEXT_XML);
+        } finally {
+            reader.close();
+        }
+        serverMessage.setTransactionId(userInstance.getNextTransactionId());
+        renderServerMessage(conn, serverMessage);
+    }
+    
+    /**
+     * Determines if the transaction id of a ClientMessage matches the 
+     * current transaction id of the <code>UserInstance</code>.
+     * 
+     * @param userInstance the relevant <code>UserInstance</code>
+     * @param clientMessageDocument the incoming client message
+     * @return true if the transaction id is valid
+     */
+    protected boolean validateTransactionId(UserInstance userInstance, Document clientMessageDocument) {
+        try {
+            long clientTransactionId = Long.parseLong(clientMessageDocument.getDocumentElement().getAttribute("trans-id"));
+            return userInstance.getCurrentTransactionId() == clientTransactionId;
+        } catch (NumberFormatException ex) {
+            // Client has not provided a transaction id at all, return true.
+            // This should not occur.
+            return true;
+        }
+    }
+    
+    /**
+     * Writes a <code>ServerMessage</code> to the response.  The message is
+     * GZip-compressed if the client accepts GZip content encoding and the
+     * size of the message is at least the configured compression threshold.
+     * 
+     * @param conn the relevant <code>Connection</code>
+     * @param serverMessage the <code>ServerMessage</code> to write
+     * @see #INIT_PARAMETER_COMPRESSION_THRESHOLD
+     * @see #INIT_PARAMETER_COMPRESSION_LEVEL
+     */
+    private void renderServerMessage(Connection conn, ServerMessage serverMessage)
+    throws IOException {
+        conn.setContentType(ContentType.TEXT_XML);
+        int threshold = conn.getServlet().getIntInitParameter(INIT_PARAMETER_COMPRESSION_THRESHOLD, DEFAULT_COMPRESSION_THRESHOLD);
+        if (threshold < 0 || !conn.isGZipEncodingAccepted()) {
             serverMessage.render(conn.getWriter());
+            return;
+        }
+        
+        ByteArrayOutputStream byteOut = new ByteArrayOutputStream(COMPRESSION_BUFFER_SIZE);
+        PrintWriter pw = new PrintWriter(new OutputStreamWriter(byteOut, conn.getUserInstance().getCharacterEncoding()));
+        serverMessage.render(pw);
+        pw.flush();
+        
+        conn.getResponse().setHeader("Vary", "Accept-Encoding");
+        if (byteOut.size() < threshold) {
+            conn.getResponse().setContentLength(byteOut.size());
+            byteOut.writeTo(conn.getOutputStream());
+        } else {
+            int level = conn.getServlet().getIntInitParameter(INIT_PARAMETER_COMPRESSION_LEVEL, Deflater.DEFAULT_COMPRESSION);
+            byte[] gzipContent = GZipCompressor.compress(byteOut.toByteArray(), byteOut.size(), level);
+            conn.getResponse().setHeader("Content-Encoding", "gzip");
+            conn.getResponse().setContentLength(gzipContent.length);
+            conn.getOutputStream().write(gzipContent);
         }
     }
     
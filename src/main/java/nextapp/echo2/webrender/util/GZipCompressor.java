@@ -54,4 +54,31 @@ public class GZipCompressor {
         byteOut.close();
         return byteOut.toByteArray();
     }
+    
+    /**
+     * Compresses an array of bytes using the specified compression level.
+     * 
+     * @param data the data to compress
+     * @param length the number of bytes of <code>data</code> to compress
+     * @param level the compression level, 0-9, or 
+     *        <code>Deflater.DEFAULT_COMPRESSION</code>
+     * @return an array of bytes containing GZip-compression output
+     * @throws IOException
+     */
+    public static byte[] compress(byte[] data, int length, final int level)
+    throws IOException {
+        ByteArrayOutputStream byteOut = new ByteArrayOutputStream(length / 4 + 64);
+        GZIPOutputStream gZipOut = new GZIPOutputStream(byteOut) {
+            {
+                def.setLevel(level);
+            }
+        };
+        try {
+            gZipOut.write(data, 0, length);
+            gZipOut.finish();
+        } finally {
+            gZipOut.close();
+        }
+        return byteOut.toByteArray();
+    }
 }
@@ -0,0 +1,73 @@
+/* 
+ * This file is part of the Echo Web Application Framework (hereinafter "Echo").
+ * Copyright (C) 2002-2009 NextApp, Inc.
+ *
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ */
+
+
+package nextapp.echo2.webrender.util;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Utility class for computing content hashes.
+ */
+public class HashUtil {
+    
+    /** Hexadecimal digits. */
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    
+    /** Number of bytes of the digest represented in a hash. */
+    private static final int HASH_LENGTH = 8;
+    
+    /**
+     * Computes a hash of an array of bytes.
+     * The hash is a hexadecimal representation of the leading bytes of the
+     * MD5 digest of the data, suitable for use in URIs and HTTP entity tags.
+     * 
+     * @param data the data
+     * @return the hash
+     */
+    public static String hash(byte[] data) {
+        byte[] digest;
+        try {
+            digest = MessageDigest.getInstance("MD5").digest(data);
+        } catch (NoSuchAlgorithmException ex) {
+            // Should not occur.
+            throw new RuntimeException("MD5 digest algorithm not available.", ex);
+        }
+        char[] out = new char[HASH_LENGTH * 2];
+        for (int i = 0; i < HASH_LENGTH; ++i) {
+            out[i * 2] = HEX_DIGITS[(digest[i] >> 4) & 0xf];
+            out[i * 2 + 1] = HEX_DIGITS[digest[i] & 0xf];
+        }
+        return new String(out);
+    }
+    
+    /** Non-instantiable class. */
+    private HashUtil() { }
+}
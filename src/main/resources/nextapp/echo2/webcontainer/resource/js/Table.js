@@ -37,6 +37,13 @@
 EchoTable = Core.extend({
 
     $static: {
+    
+        /**
+         * Delay (in milliseconds) after the last scroll event before rows
+         * outside the rendered rows of a table with a viewport are retrieved
+         * from the server.
+         */
+        SCROLL_DELAY: 150,
 
         /**
          * Returns the Table data object instance based on the root element 
@@ -101,6 +108,38 @@ EchoTable = Core.extend({
             var componentId = EchoDomUtil.getComponentId(echoEvent.registeredTarget.id);
             var table = EchoTable.getComponent(componentId);
             table.processRolloverExit(echoEvent);
+        },
+        
+        /**
+         * Processes a viewport scroll event.
+         * Finds the appropriate <code>EchoTable</code> instance and
+         * delegates processing to it.
+         *
+         * @param echoEvent the event, preprocessed by the 
+         *        <code>EchoEventProcessor</code>
+         */
+        processScroll: function(echoEvent) {
+            var table = EchoTable.getComponent(echoEvent.registeredTarget.id);
+            table.processScroll(echoEvent);
+        },
+        
+        /**
+         * Retrieves rows from the server once scrolling of a viewport has 
+         * settled.  Invoked by a timeout set by <code>processScroll()</code>.
+         *
+         * @param elementId the id of the Table
+         */
+        processScrollTimeout: function(elementId) {
+            var table = EchoTable.getComponent(elementId);
+            if (!table) {
+                return;
+            }
+            table.scrollTimeoutId = null;
+            if (!EchoServerTransaction.connect()) {
+                // Retry once the active transaction has completed.
+                table.scrollTimeoutId = window.setTimeout("EchoTable.processScrollTimeout(\"" + elementId + "\");", 
+                        EchoTable.SCROLL_DELAY);
+            }
         }
     },
 
@@ -121,13 +160,20 @@ EchoTable = Core.extend({
         this.selectionState = null;
         this.headerVisible = false;
         this.lastSelectedIndex = -1;
+        this.viewportRowCount = 0;
+        this.firstVisibleRow = 0;
+        this.rowOffset = 0;
+        this.modelRowCount = 0;
+        this.rowHeight = 0;
+        this.autoHeight = false;
+        this.scrollTimeoutId = null;
     },
     
     /**
      * Deselects all selected rows in a Table.
      */
     clearSelected: function() {
-        for (var i = 0; i < this.rowCount; ++i) {
+        for (var i = 0; i < this.selectionState.length; ++i) {
             if (this.isSelected(i)) {
                 this.setSelected(i, false);
             }
@@ -140,6 +186,15 @@ EchoTable = Core.extend({
      */
     dispose: function() {
         var element = this.getElement();
+        var rootElement = document.getElementById(this.elementId);
+        
+        if (this.viewportRowCount) {
+            EchoEventProcessor.removeHandler(rootElement, "scroll");
+            if (this.scrollTimeoutId) {
+                window.clearTimeout(this.scrollTimeoutId);
+                this.scrollTimeoutId = null;
+            }
+        }
         
         if (this.rolloverEnabled || this.selectionEnabled) {
             var mouseEnterLeaveSupport = EchoClientProperties.get("proprietaryEventMouseEnterLeaveSupported");
@@ -161,7 +216,7 @@ EchoTable = Core.extend({
             }
         }
         
-        EchoDomPropertyStore.dispose(element);
+        EchoDomPropertyStore.dispose(rootElement);
     },
     
     /**
@@ -172,6 +227,10 @@ EchoTable = Core.extend({
     drawRowStyle: function(rowIndex) {
         var selected = this.isSelected(rowIndex);
         var trElement = this.getRowElement(rowIndex);
+        if (!trElement) {
+            // Row is not rendered.
+            return;
+        }
         
         for (var i = 0; i < trElement.cells.length; ++i) {
             if (selected) {
@@ -185,9 +244,11 @@ EchoTable = Core.extend({
     
     /**
      * Returns the table DOM element.
+     * The table element is contained in a scrollable viewport element
+     * (bearing the Table's id) if the Table has a viewport.
      */
     getElement: function() {
-        return document.getElementById(this.elementId);
+        return document.getElementById(this.viewportRowCount ? this.elementId + "_table" : this.elementId);
     },
     
     /**
@@ -199,15 +260,16 @@ EchoTable = Core.extend({
      */
     getRowElement: function(rowIndex) {
         var element = this.getElement();
+        var renderedRowIndex = rowIndex - this.rowOffset;
         if (this.headerVisible) {
             if (rowIndex == -1) {
                 return element.rows[0];
-            } else if (rowIndex >= 0 && rowIndex < this.rowCount) {
-                return element.rows[rowIndex + 1];
+            } else if (renderedRowIndex >= 0 && renderedRowIndex < this.rowCount) {
+                return element.rows[renderedRowIndex + 1];
             }
         } else {
-            if (rowIndex >= 0 && rowIndex < this.rowCount) {
-                return element.rows[rowIndex];
+            if (rowIndex != -1 && renderedRowIndex >= 0 && renderedRowIndex < this.rowCount) {
+                return element.rows[renderedRowIndex];
             }
         }
         return null;
@@ -242,27 +304,67 @@ EchoTable = Core.extend({
         this.selectionState = [];
         this.rowCount = element.rows.length - (this.headerVisible ? 1 : 0); 
         
-        if (this.rolloverEnabled || this.selectionEnabled) {
-            var mouseEnterLeaveSupport = EchoClientProperties.get("proprietaryEventMouseEnterLeaveSupported");
-            for (var rowIndex = 0; rowIndex < this.rowCount; ++rowIndex) {
-                var trElement = element.rows[rowIndex + (this.headerVisible ? 1 : 0)];
-                if (this.rolloverEnabled) {
-                    if (mouseEnterLeaveSupport) {
-                        EchoEventProcessor.addHandler(trElement, "mouseenter", "EchoTable.processRolloverEnter");
-                        EchoEventProcessor.addHandler(trElement, "mouseleave", "EchoTable.processRolloverExit");
-                    } else {
-                        EchoEventProcessor.addHandler(trElement, "mouseout", "EchoTable.processRolloverExit");
-                        EchoEventProcessor.addHandler(trElement, "mouseover", "EchoTable.processRolloverEnter");
-                    }
+        var mouseEnterLeaveSupport = EchoClientProperties.get("proprietaryEventMouseEnterLeaveSupported");
+        for (var rowIndex = 0; rowIndex < this.rowCount; ++rowIndex) {
+            var trElement = element.rows[rowIndex + (this.headerVisible ? 1 : 0)];
+            // Row identifiers are renumbered, as rows may have been inserted or removed since last initialized.
+            trElement.id = this.elementId + "_tr_" + (this.rowOffset + rowIndex);
+            if (this.rolloverEnabled) {
+                if (mouseEnterLeaveSupport) {
+                    EchoEventProcessor.addHandler(trElement, "mouseenter", "EchoTable.processRolloverEnter");
+                    EchoEventProcessor.addHandler(trElement, "mouseleave", "EchoTable.processRolloverExit");
+                } else {
+                    EchoEventProcessor.addHandler(trElement, "mouseout", "EchoTable.processRolloverExit");
+                    EchoEventProcessor.addHandler(trElement, "mouseover", "EchoTable.processRolloverEnter");
                 }
-                if (this.selectionEnabled) {
-                    EchoEventProcessor.addHandler(trElement, "click", "EchoTable.processClick");
-                    EchoEventProcessor.addHandler(trElement, "mousedown", "EchoTable.processMouseDown");
+            }
+            if (this.selectionEnabled) {
+                // Clear selection style remaining from previous initialization.
+                for (var i = 0; i < trElement.cells.length; ++i) {
+                    EchoCssUtil.restoreOriginalStyle(trElement.cells[i]);
                 }
+                EchoEventProcessor.addHandler(trElement, "click", "EchoTable.processClick");
+                EchoEventProcessor.addHandler(trElement, "mousedown", "EchoTable.processMouseDown");
             }
         }
         
-        EchoDomPropertyStore.setPropertyValue(element, "component", this);
+        if (this.viewportRowCount) {
+            this.initViewport();
+        }
+        
+        EchoDomPropertyStore.setPropertyValue(document.getElementById(this.elementId), "component", this);
+    },
+    
+    /**
+     * Initializes the viewport of a Table with a viewport.  The height of 
+     * unrendered rows is estimated from the height of the rendered rows and
+     * is represented by padding above and beneath the table element.
+     */
+    initViewport: function() {
+        var element = this.getElement();
+        var rootElement = document.getElementById(this.elementId);
+        
+        if (this.rowCount > 0) {
+            var firstTrElement = element.rows[this.headerVisible ? 1 : 0];
+            var lastTrElement = element.rows[element.rows.length - 1];
+            this.rowHeight = (lastTrElement.offsetTop + lastTrElement.offsetHeight - firstTrElement.offsetTop) / this.rowCount;
+        }
+        
+        if (this.rowHeight) {
+            var windowElement = document.getElementById(this.elementId + "_window");
+            windowElement.style.paddingTop = Math.round(this.rowOffset * this.rowHeight) + "px";
+            windowElement.style.paddingBottom 
+                    = Math.round((this.modelRowCount - this.rowOffset - this.rowCount) * this.rowHeight) + "px";
+            if (this.autoHeight) {
+                var headerHeight = this.headerVisible ? element.rows[0].offsetHeight : 0;
+                rootElement.style.height = Math.round(this.viewportRowCount * this.rowHeight + headerHeight) + "px";
+            }
+            if (Math.floor(rootElement.scrollTop / this.rowHeight) != this.firstVisibleRow) {
+                rootElement.scrollTop = Math.round(this.firstVisibleRow * this.rowHeight);
+            }
+        }
+        
+        EchoEventProcessor.addHandler(rootElement, "scroll", "EchoTable.processScroll");
     },
     
     /**
@@ -379,6 +481,38 @@ EchoTable = Core.extend({
         this.drawRowStyle(rowIndex);
     },
     
+    /**
+     * Processes a viewport scroll event.
+     * Stores the first visible row in the outgoing <code>ClientMessage</code>, 
+     * and schedules retrieval of rows from the server if the viewport has 
+     * been scrolled beyond the rendered rows.
+     *
+     * @param echoEvent the event, preprocessed by the 
+     *        <code>EchoEventProcessor</code>
+     */
+    processScroll: function(echoEvent) {
+        if (!this.rowHeight || !EchoClientEngine.verifyInput(echoEvent.registeredTarget, true)) {
+            return;
+        }
+        
+        var firstVisibleRow = Math.floor(echoEvent.registeredTarget.scrollTop / this.rowHeight);
+        if (firstVisibleRow == this.firstVisibleRow) {
+            return;
+        }
+        this.firstVisibleRow = firstVisibleRow;
+        EchoClientMessage.setPropertyValue(this.elementId, "firstVisibleRow", firstVisibleRow);
+        
+        var renderedRowEnd = this.rowOffset + this.rowCount;
+        if (firstVisibleRow < this.rowOffset 
+                || (firstVisibleRow + this.viewportRowCount > renderedRowEnd && renderedRowEnd < this.modelRowCount)) {
+            if (this.scrollTimeoutId) {
+                window.clearTimeout(this.scrollTimeoutId);
+            }
+            this.scrollTimeoutId = window.setTimeout("EchoTable.processScrollTimeout(\"" + this.elementId + "\");", 
+                    EchoTable.SCROLL_DELAY);
+        }
+    },
+    
     /**
      * Sets the selection state of a table row.
      *
@@ -405,7 +539,7 @@ EchoTable = Core.extend({
             propertyElement.removeChild(propertyElement.firstChild);
         }
         
-        for (var i = 0; i < this.rowCount; ++i) {
+        for (var i = 0; i < this.selectionState.length; ++i) {
             if (this.isSelected(i)) {
                 var rowElement = EchoClientMessage.messageDocument.createElement("row");
                 rowElement.setAttribute("index", i);
@@ -439,6 +573,12 @@ EchoTable.MessageProcessor = {
                 case "dispose":
                     EchoTable.MessageProcessor.processDispose(messagePartElement.childNodes[i]);
                     break;
+                case "insert-row":
+                    EchoTable.MessageProcessor.processInsertRow(messagePartElement.childNodes[i]);
+                    break;
+                case "remove-rows":
+                    EchoTable.MessageProcessor.processRemoveRows(messagePartElement.childNodes[i]);
+                    break;
                 }
             }
         }
@@ -460,6 +600,50 @@ EchoTable.MessageProcessor = {
         }
     },
     
+    /**
+     * Processes an <code>insert-row</code> message to insert one or more 
+     * consecutive rendered rows into a Table at a specific index.  The 
+     * Table's state is re-initialized by a subsequent <code>init</code> 
+     * message, which renumbers the identifiers of the rows following the 
+     * inserted rows and restores the selection.
+     *
+     * @param insertRowMessageElement the <code>insert-row</code> element to process
+     */
+    processInsertRow: function(insertRowMessageElement) {
+        var tbodyElement = document.getElementById(insertRowMessageElement.getAttribute("eid") + "_tbody");
+        var index = parseInt(insertRowMessageElement.getAttribute("index"), 10);
+        for (var node = insertRowMessageElement.firstChild; node; node = node.nextSibling) {
+            if (node.nodeType == 1) {
+                var trElement = EchoDomUtil.importNode(document, node, true);
+                if (index < tbodyElement.rows.length) {
+                    tbodyElement.insertBefore(trElement, tbodyElement.rows[index]);
+                } else {
+                    tbodyElement.appendChild(trElement);
+                }
+                ++index;
+            }
+        }
+    },
+    
+    /**
+     * Processes a <code>remove-rows</code> message to remove the rows 
+     * containing specific cells from a Table.  Cells which are not present
+     * (e.g., because their row has already been removed) are ignored.
+     * As with <code>insert-row</code>, the identifiers of the following rows
+     * are renumbered by the subsequent <code>init</code> message.
+     *
+     * @param removeRowsMessageElement the <code>remove-rows</code> element to process
+     */
+    processRemoveRows: function(removeRowsMessageElement) {
+        for (var item = removeRowsMessageElement.firstChild; item; item = item.nextSibling) {
+            var tdElement = document.getElementById(item.getAttribute("id"));
+            if (tdElement) {
+                var trElement = tdElement.parentNode;
+                trElement.parentNode.removeChild(trElement);
+            }
+        }
+    },
+    
     /**
      * Processes an <code>init</code> message to initialize the state of a 
      * Table component that is being added.
@@ -486,6 +670,13 @@ EchoTable.MessageProcessor = {
                 table.multipleSelect = item.getAttribute("selection-mode") == "multiple";
                 table.serverNotify = item.getAttribute("server-notify") == "true";
             }
+            if (item.getAttribute("viewport-rows")) {
+                table.viewportRowCount = parseInt(item.getAttribute("viewport-rows"), 10);
+                table.firstVisibleRow = parseInt(item.getAttribute("first-visible-row"), 10);
+                table.rowOffset = parseInt(item.getAttribute("row-offset"), 10);
+                table.modelRowCount = parseInt(item.getAttribute("model-row-count"), 10);
+                table.autoHeight = item.getAttribute("auto-height") == "true";
+            }
             
             table.init();
             
@@ -153,4 +153,53 @@ EchoCoreProperties.Insets = Core.extend({
             return this.top + "px " + this.right + "px " + this.bottom + "px " + this.left + "px";
         }
     }
-});
\ No newline at end of file
+});
+//_________________________
+// Object EchoRenderProfile
+
+/**
+ * Static object/namespace for processing render profiles generated by the
+ * server when render profiling is enabled.  Profiles are written to the
+ * console of the debug pane.
+ */
+EchoRenderProfile = {
+
+    /**
+     * MessageProcessor process() implementation.
+     */
+    process: function(messagePartElement) {
+        for (var i = 0; i < messagePartElement.childNodes.length; ++i) {
+            if (messagePartElement.childNodes[i].nodeType == 1 && messagePartElement.childNodes[i].tagName == "profile") {
+                EchoRenderProfile.processProfile(messagePartElement.childNodes[i]);
+            }
+        }
+    },
+    
+    /**
+     * Writes a render profile to the debug pane console.
+     *
+     * @param profileElement the <code>profile</code> element
+     */
+    processProfile: function(profileElement) {
+        EchoDebugManager.consoleWrite("Render time: " + profileElement.getAttribute("time") + "ms");
+        for (var i = 0; i < profileElement.childNodes.length; ++i) {
+            var element = profileElement.childNodes[i];
+            if (element.nodeType != 1) {
+                continue;
+            }
+            switch (element.tagName) {
+            case "peer":
+                EchoDebugManager.consoleWrite("  " + element.getAttribute("name") + "." + element.getAttribute("operation") 
+                        + " x" + element.getAttribute("count") + ": " + element.getAttribute("self") + "ms self, "
+                        + element.getAttribute("time") + "ms total, " + element.getAttribute("nodes") + " nodes, "
+                        + element.getAttribute("bytes") + " bytes");
+                break;
+            case "component":
+                EchoDebugManager.consoleWrite("  " + element.getAttribute("id") + " (" + element.getAttribute("type") + "): "
+                        + element.getAttribute("self") + "ms self, " + element.getAttribute("nodes") + " nodes, "
+                        + element.getAttribute("bytes") + " bytes");
+                break;
+            }
+        }
+    }
+};
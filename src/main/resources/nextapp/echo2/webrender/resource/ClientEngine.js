@@ -436,11 +436,20 @@ EchoAsyncMonitor = {
      */
     timeoutId: null,
     
+    /**
+     * Flag indicating whether a poll request is in progress.  The server may
+     * hold poll requests open (long-polling), thus a new request must not be
+     * started until the outstanding one has completed.
+     */
+    pending: false,
+    
     /**
      * Initiates an HTTP request to the asynchronous monitor poll service to
      * determine if the server has the need to update the client.
      */
     connect: function() {
+        EchoAsyncMonitor.timeoutId = null;
+        EchoAsyncMonitor.pending = true;
         var conn = new EchoHttpConnection(EchoClientEngine.baseServerUri + EchoAsyncMonitor.pollServiceRequest, "GET");
         conn.responseHandler = EchoAsyncMonitor.responseHandler;
         conn.invalidResponseHandler = EchoAsyncMonitor.invalidResponseHandler;
@@ -451,6 +460,7 @@ EchoAsyncMonitor = {
      * Processes an invalid response to the poll request.
      */
     invalidResponseHandler: function() {
+        EchoAsyncMonitor.pending = false;
         alert("Invalid response from server to asynchronous polling connection.");
     },
     
@@ -458,7 +468,7 @@ EchoAsyncMonitor = {
      * Starts the countdown to the next poll request.
      */
     start: function() {
-        if (!EchoServerTransaction.active) {
+        if (!EchoServerTransaction.active && !EchoAsyncMonitor.pending && !EchoAsyncMonitor.timeoutId) {
             EchoAsyncMonitor.timeoutId = window.setTimeout("EchoAsyncMonitor.connect();", 
                     EchoAsyncMonitor.timeInterval);
         }
@@ -481,6 +491,12 @@ EchoAsyncMonitor = {
      * @param conn the EchoHttpConnection containing the response information.
      */
     responseHandler: function(conn) {
+        EchoAsyncMonitor.pending = false;
+        if (EchoServerTransaction.active) {
+            // Poll request was held open by the server while a transaction was started:
+            // the monitor will be restarted when the transaction completes.
+            return;
+        }
         if ("true" == conn.getResponseXml().documentElement.getAttribute("request-sync")) {
             // Server is requesting synchronization: Initiate server transaction.
             EchoServerTransaction.connect();
@@ -2887,14 +2903,20 @@ EchoScriptLibraryManager = {
      * Loads a JavaScript library and stores it for execution.
      *
      * @param serviceId the server service identifier of the library
+     * @param contentHash the content hash of the library (optional), 
+     *        allowing the library to be cached by the browser
      */
-    loadLibrary: function(serviceId) {
+    loadLibrary: function(serviceId, contentHash) {
         if (EchoScriptLibraryManager.getState(serviceId)) {
             // Library already present.
             return;
         }
     
-        var conn = new EchoHttpConnection(EchoClientEngine.baseServerUri + "?serviceId=" + serviceId, "GET");
+        var uri = EchoClientEngine.baseServerUri + "?serviceId=" + serviceId;
+        if (contentHash) {
+            uri += "&v=" + contentHash;
+        }
+        var conn = new EchoHttpConnection(uri, "GET");
         conn.serviceId = serviceId;
         conn.responseHandler = EchoScriptLibraryManager.responseHandler;
         conn.connect();
@@ -2903,6 +2925,81 @@ EchoScriptLibraryManager = {
         EchoScriptLibraryManager.libraryLoadStateMap[serviceId] = EchoScriptLibraryManager.STATE_REQUESTED;
     },
     
+    /**
+     * Loads a bundle of JavaScript libraries with a single request and stores
+     * the libraries for execution.
+     *
+     * @param bundleServiceId the server service identifier of the bundle
+     * @param contentHash the content hash of the bundle
+     * @param serviceIds an array containing the server service identifiers
+     *        of the libraries contained in the bundle
+     * @param contentHashes an array containing the content hashes of the 
+     *        libraries contained in the bundle, used should the libraries
+     *        need to be loaded individually
+     */
+    loadBundle: function(bundleServiceId, contentHash, serviceIds, contentHashes) {
+        var uri = EchoClientEngine.baseServerUri + "?serviceId=" + bundleServiceId;
+        if (contentHash) {
+            uri += "&v=" + contentHash;
+        }
+        var conn = new EchoHttpConnection(uri, "GET");
+        conn.serviceIds = serviceIds;
+        conn.contentHashes = contentHashes;
+        conn.responseHandler = EchoScriptLibraryManager.bundleResponseHandler;
+        conn.invalidResponseHandler = EchoScriptLibraryManager.bundleInvalidResponseHandler;
+        conn.connect();
+        
+        // Mark state as "requested" so that application will wait for libraries to load.
+        for (var i = 0; i < serviceIds.length; ++i) {
+            if (!EchoScriptLibraryManager.getState(serviceIds[i])) {
+                EchoScriptLibraryManager.libraryLoadStateMap[serviceIds[i]] = EchoScriptLibraryManager.STATE_REQUESTED;
+            }
+        }
+    },
+    
+    /**
+     * Processes a valid response from the server to a bundle request.
+     * The response contains, for each library, the service identifier and 
+     * the length of the library source, each followed by a newline, followed
+     * by the library source.
+     *
+     * @param conn the EchoHttpConnection containing the response information.
+     */
+    bundleResponseHandler: function(conn) {
+        var text = conn.getResponseText();
+        var position = 0;
+        while (position < text.length) {
+            var idEnd = text.indexOf("\n", position);
+            var serviceId = text.substring(position, idEnd);
+            var lengthEnd = text.indexOf("\n", idEnd + 1);
+            var length = parseInt(text.substring(idEnd + 1, lengthEnd), 10);
+            position = lengthEnd + 1 + length;
+            if (EchoScriptLibraryManager.getState(serviceId) == EchoScriptLibraryManager.STATE_REQUESTED) {
+                EchoScriptLibraryManager.librarySourceMap[serviceId] = text.substring(lengthEnd + 1, position);
+                EchoScriptLibraryManager.libraryLoadStateMap[serviceId] = EchoScriptLibraryManager.STATE_LOADED;
+                EchoClientEngine.incrementLoadStatus();
+            }
+        }
+    },
+    
+    /**
+     * Processes an invalid response from the server to a bundle request.
+     * The server discards least recently used bundles, thus a bundle may no
+     * longer be available when requested.  The libraries of the bundle which
+     * have not yet been loaded are requested individually.
+     *
+     * @param conn the EchoHttpConnection containing the response information.
+     */
+    bundleInvalidResponseHandler: function(conn) {
+        for (var i = 0; i < conn.serviceIds.length; ++i) {
+            var serviceId = conn.serviceIds[i];
+            if (EchoScriptLibraryManager.getState(serviceId) == EchoScriptLibraryManager.STATE_REQUESTED) {
+                delete EchoScriptLibraryManager.libraryLoadStateMap[serviceId];
+                EchoScriptLibraryManager.loadLibrary(serviceId, conn.contentHashes[i]);
+            }
+        }
+    },
+    
     /**
      * Processes a valid response from the server.
      *
@@ -3174,9 +3271,31 @@ EchoServerMessage = {
             return;
         }
         var libraryElements = librariesElement.getElementsByTagName("library");
+        
+        // Retrieve the libraries with a single request if several of them have not yet been loaded.
+        var bundleServiceId = librariesElement.getAttribute("bundle-service-id");
+        if (bundleServiceId) {
+            var serviceIds = [];
+            var contentHashes = [];
+            var missingCount = 0;
+            for (var i = 0; i < libraryElements.length; ++i) {
+                serviceIds.push(libraryElements.item(i).getAttribute("service-id"));
+                contentHashes.push(libraryElements.item(i).getAttribute("content-hash"));
+                if (!EchoScriptLibraryManager.getState(serviceIds[i])) {
+                    ++missingCount;
+                }
+            }
+            if (missingCount > 1) {
+                EchoScriptLibraryManager.loadBundle(bundleServiceId, librariesElement.getAttribute("bundle-content-hash"),
+                        serviceIds, contentHashes);
+                return;
+            }
+        }
+        
         for (var i = 0; i < libraryElements.length; ++i) {
             var serviceId = libraryElements.item(i).getAttribute("service-id");
-            EchoScriptLibraryManager.loadLibrary(serviceId);
+            var contentHash = libraryElements.item(i).getAttribute("content-hash");
+            EchoScriptLibraryManager.loadLibrary(serviceId, contentHash);
         }
     },
     
@@ -3397,6 +3516,12 @@ EchoServerTransaction = {
      */
     synchronizeServiceRequest: "?serviceId=Echo.Synchronize",
     
+    /**
+     * The ClientMessage document sent by the active transaction, retained
+     * such that it may be resent should the server be busy.
+     */
+    messageDocument: null,
+    
     /**
      * Initiates a client-server transaction my making a request to the server.
      * This operation is asynchronous; this method will return before the server
@@ -3415,12 +3540,9 @@ EchoServerTransaction = {
         if (EchoClientProperties.get("quirkSafariUnescapedXHR")) {
             EchoDomUtil.fixSafariEscaping(EchoClientMessage.messageDocument);
         }
-        var conn = new EchoHttpConnection(EchoClientEngine.baseServerUri + EchoServerTransaction.synchronizeServiceRequest, 
-                "POST", EchoClientMessage.messageDocument, "text/xml");
-        conn.responseHandler = EchoServerTransaction.responseHandler;
-        conn.invalidResponseHandler = EchoServerTransaction.invalidResponseHandler;
+        EchoServerTransaction.messageDocument = EchoClientMessage.messageDocument;
         EchoServerTransaction.active = true;
-        conn.connect();
+        EchoServerTransaction.send();
         
         // Reset client message.
         EchoClientMessage.reset();
@@ -3428,6 +3550,17 @@ EchoServerTransaction = {
         return true;
     },
     
+    /**
+     * Sends the ClientMessage of the active transaction to the server.
+     */
+    send: function() {
+        var conn = new EchoHttpConnection(EchoClientEngine.baseServerUri + EchoServerTransaction.synchronizeServiceRequest, 
+                "POST", EchoServerTransaction.messageDocument, "text/xml");
+        conn.responseHandler = EchoServerTransaction.responseHandler;
+        conn.invalidResponseHandler = EchoServerTransaction.invalidResponseHandler;
+        conn.connect();
+    },
+    
     /**
      * Processes an invalid HTTP response to the synchronize request.
      *
@@ -3450,6 +3583,7 @@ EchoServerTransaction = {
      */
     postProcess: function() {
         EchoServerDelayMessage.deactivate();
+        EchoServerTransaction.messageDocument = null;
         EchoServerTransaction.active = false;
     },
     
@@ -3459,6 +3593,14 @@ EchoServerTransaction = {
      * @param conn the EchoHttpConnection containing the response information.
      */
     responseHandler: function(conn) {
+        var documentElement = conn.getResponseXml().documentElement;
+        if (documentElement.nodeName == "server-busy") {
+            // Server is processing another request of this session: resend the message after the specified interval,
+            // leaving the transaction (and delay message) active.
+            var retryInterval = parseInt(documentElement.getAttribute("retry-interval"), 10);
+            window.setTimeout("EchoServerTransaction.send();", isNaN(retryInterval) ? 500 : retryInterval);
+            return;
+        }
         EchoServerTransaction.timer = new Date().getTime();
         EchoServerMessage.init(conn.getResponseXml(), EchoServerTransaction.postProcess);
         EchoServerMessage.process();